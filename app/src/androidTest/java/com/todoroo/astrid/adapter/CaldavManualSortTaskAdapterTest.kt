@@ -17,6 +17,7 @@ import org.tasks.LocalBroadcastManager
 import org.tasks.R
 import org.tasks.data.CaldavCalendar
 import org.tasks.data.CaldavDao
+import org.tasks.data.CaldavDao.Companion.ORDER_GAP
 import org.tasks.data.GoogleTaskDao
 import org.tasks.data.TaskContainer
 import org.tasks.data.TaskListQuery.getQuery
@@ -112,8 +113,8 @@ class CaldavManualSortTaskAdapterTest : InjectingTestCase() {
         checkOrder(null, 1)
         checkOrder(null, 2)
         checkOrder(created.plusSeconds(3), 0)
-        checkOrder(created.plusSeconds(4), 3)
-        checkOrder(created.plusSeconds(5), 4)
+        checkOrder(created.plusSeconds(3).toAppleEpoch() + ORDER_GAP, 3)
+        checkOrder(created.plusSeconds(3).toAppleEpoch() + 2 * ORDER_GAP, 4)
     }
 
     @Test
@@ -166,6 +167,36 @@ class CaldavManualSortTaskAdapterTest : InjectingTestCase() {
         checkOrder(null, 3)
     }
 
+    @Test
+    fun moveIntoGap() {
+        val created = DateTime(2020, 5, 17, 9, 53, 17)
+        addTask(with(CREATION_TIME, created))
+        addTask(with(CREATION_TIME, created.plusSeconds(1)))
+        addTask(with(CREATION_TIME, created.plusSeconds(9)))
+
+        move(0, 1)
+
+        checkOrder(null, 1)
+        checkOrder(created.plusSeconds(5), 0)
+        checkOrder(null, 2)
+    }
+
+    @Test
+    fun spreadOnlyUntilNextGap() {
+        val created = DateTime(2020, 5, 17, 9, 53, 17)
+        addTask(with(CREATION_TIME, created))
+        addTask(with(CREATION_TIME, created.plusSeconds(1)))
+        addTask(with(CREATION_TIME, created.plusSeconds(2)))
+        addTask(with(CREATION_TIME, created.plusSeconds(9)))
+
+        move(0, 1)
+
+        checkOrder(null, 1)
+        checkOrder(created.plusSeconds(2), 0)
+        checkOrder(created.plusSeconds(5), 2)
+        checkOrder(null, 3)
+    }
+
     @Test
     fun moveToNewSubtask() {
         val created = DateTime(2020, 5, 17, 9, 53, 17)
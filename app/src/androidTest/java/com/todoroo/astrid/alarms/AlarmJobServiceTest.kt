@@ -93,6 +93,36 @@ class AlarmJobServiceTest : InjectingTestCase() {
         verify(AlarmEntry(alarm, task, now.plusMonths(12).millis, TYPE_SNOOZE))
     }
 
+    @Test
+    fun scheduleAlarmsForTasks() = runBlocking {
+        val first = taskDao.createNew(newTask())
+        val second = taskDao.createNew(newTask())
+        val firstAlarm = insertAlarm(Alarm(first, DateTime(2017, 9, 24, 19, 57).millis, TYPE_DATE_TIME))
+        val secondAlarm = insertAlarm(Alarm(second, DateTime(2017, 9, 25, 19, 57).millis, TYPE_DATE_TIME))
+
+        alarmService.scheduleAlarms(listOf(first, second))
+
+        assertEquals(
+            listOf(
+                AlarmEntry(firstAlarm, first, DateTime(2017, 9, 24, 19, 57).millis, TYPE_DATE_TIME),
+                AlarmEntry(secondAlarm, second, DateTime(2017, 9, 25, 19, 57).millis, TYPE_DATE_TIME),
+            ),
+            jobs.getJobs()
+        )
+    }
+
+    @Test
+    fun rescheduleRemovesAlarmsForCompletedTasks() = runBlocking {
+        val task = taskDao.createNew(newTask())
+        insertAlarm(Alarm(task, DateTime(2017, 9, 24, 19, 57).millis, TYPE_DATE_TIME))
+        alarmService.scheduleAlarms(listOf(task))
+        taskDao.update(taskDao.fetch(task)!!.apply { completionDate = DateTime(2017, 9, 23).millis })
+
+        alarmService.scheduleAlarms(listOf(task))
+
+        assertEquals(emptyList<AlarmEntry>(), jobs.getJobs())
+    }
+
     private suspend fun insertAlarm(alarm: Alarm): Long {
         alarm.id = alarmDao.insert(alarm)
         return alarm.id
@@ -0,0 +1,75 @@
+package com.todoroo.astrid.api
+
+import com.natpryce.makeiteasy.MakeItEasy.with
+import dagger.hilt.android.testing.HiltAndroidTest
+import dagger.hilt.android.testing.UninstallModules
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.tasks.data.TaskDao
+import org.tasks.injection.InjectingTestCase
+import org.tasks.injection.ProductionModule
+import org.tasks.makers.TaskMaker.DESCRIPTION
+import org.tasks.makers.TaskMaker.TITLE
+import org.tasks.makers.TaskMaker.newTask
+import javax.inject.Inject
+
+@UninstallModules(ProductionModule::class)
+@HiltAndroidTest
+class SearchFilterTest : InjectingTestCase() {
+    @Inject lateinit var taskDao: TaskDao
+
+    @Test
+    fun matchWordPrefix() = runBlocking {
+        val task = taskDao.createNew(newTask(with(TITLE, "Buy milk")))
+
+        assertEquals(listOf(task), search("mil"))
+    }
+
+    @Test
+    fun matchNotes() = runBlocking {
+        val task = taskDao.createNew(newTask(with(DESCRIPTION, "Buy milk")))
+
+        assertEquals(listOf(task), search("milk"))
+    }
+
+    @Test
+    fun matchWordsInOrder() = runBlocking {
+        val task = taskDao.createNew(newTask(with(TITLE, "Buy milk")))
+        taskDao.createNew(newTask(with(TITLE, "Milk to buy")))
+
+        assertEquals(listOf(task), search("buy milk"))
+    }
+
+    @Test
+    fun wordsMustBeInSameColumn() = runBlocking {
+        taskDao.createNew(newTask(with(TITLE, "Buy"), with(DESCRIPTION, "milk")))
+
+        assertEquals(emptyList<Long>(), search("buy milk"))
+    }
+
+    @Test
+    fun fallBackToSubstringMatch() = runBlocking {
+        val task = taskDao.createNew(newTask(with(TITLE, "Buy milk")))
+
+        assertEquals(listOf(task), search("ilk"))
+    }
+
+    @Test
+    fun noSubstringMatchWhenIndexMatches() = runBlocking {
+        val milk = taskDao.createNew(newTask(with(TITLE, "Buy milk")))
+        taskDao.createNew(newTask(with(TITLE, "Buttermilk")))
+
+        assertEquals(listOf(milk), search("milk"))
+    }
+
+    @Test
+    fun substringMatchWithoutWords() = runBlocking {
+        val task = taskDao.createNew(newTask(with(TITLE, "50% off")))
+
+        assertEquals(listOf(task), search("%"))
+    }
+
+    private suspend fun search(query: String) =
+        taskDao.fetchFiltered(SearchFilter("", query)).map { it.id }
+}
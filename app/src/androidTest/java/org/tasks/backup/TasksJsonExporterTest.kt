@@ -0,0 +1,97 @@
+package org.tasks.backup
+
+import android.net.Uri
+import androidx.test.InstrumentationRegistry
+import com.google.gson.Gson
+import com.google.gson.JsonObject
+import com.todoroo.astrid.dao.TaskDao
+import com.todoroo.astrid.data.Task
+import dagger.hilt.android.testing.HiltAndroidTest
+import dagger.hilt.android.testing.UninstallModules
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.tasks.R
+import org.tasks.backup.TasksJsonExporter.ExportType
+import org.tasks.data.Alarm
+import org.tasks.data.Alarm.Companion.TYPE_DATE_TIME
+import org.tasks.data.AlarmDao
+import org.tasks.data.Tag
+import org.tasks.data.TagDao
+import org.tasks.data.UserActivity
+import org.tasks.data.UserActivityDao
+import org.tasks.injection.InjectingTestCase
+import org.tasks.injection.ProductionModule
+import org.tasks.preferences.Preferences
+import java.io.File
+import java.nio.file.Files
+import javax.inject.Inject
+
+@UninstallModules(ProductionModule::class)
+@HiltAndroidTest
+class TasksJsonExporterTest : InjectingTestCase() {
+    @Inject lateinit var jsonExporter: TasksJsonExporter
+    @Inject lateinit var taskDao: TaskDao
+    @Inject lateinit var alarmDao: AlarmDao
+    @Inject lateinit var tagDao: TagDao
+    @Inject lateinit var userActivityDao: UserActivityDao
+    @Inject lateinit var preferences: Preferences
+    private lateinit var directory: File
+
+    @Before
+    override fun setUp() {
+        super.setUp()
+        directory = Files.createTempDirectory("backup").toFile()
+        preferences.setUri(R.string.p_backup_dir, Uri.fromFile(directory))
+    }
+
+    @After
+    fun tearDown() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun exportTasksAcrossChunks() = runBlocking {
+        val tasks = (1..1200).map { i ->
+            Task().apply {
+                title = "task $i"
+                taskDao.createNew(this)
+                alarmDao.insert(Alarm(id, i.toLong(), TYPE_DATE_TIME))
+                if (i % 100 == 0) {
+                    tagDao.insert(Tag(this, "tag", "tag-uid"))
+                    userActivityDao.createNew(UserActivity().apply {
+                        message = "comment $i"
+                        targetId = uuid
+                    })
+                }
+            }
+        }
+
+        val backup = export()
+
+        assertEquals(tasks.size, backup.tasks!!.size)
+        backup.tasks!!.forEachIndexed { index, taskBackup ->
+            val i = index + 1
+            assertEquals("task $i", taskBackup.task.title)
+            assertEquals(listOf(i.toLong()), taskBackup.alarms.map { it.time })
+            assertEquals(if (i % 100 == 0) 1 else 0, taskBackup.tags.size)
+            assertEquals(
+                if (i % 100 == 0) listOf("comment $i") else emptyList(),
+                taskBackup.comments.map { it.message }
+            )
+        }
+    }
+
+    private suspend fun export(): BackupContainer {
+        jsonExporter.exportTasks(
+            InstrumentationRegistry.getTargetContext(),
+            ExportType.EXPORT_TYPE_SERVICE,
+            null
+        )
+        val file = directory.listFiles()!!.single()
+        val json = Gson().fromJson(file.readText(), JsonObject::class.java)
+        return Gson().fromJson(json["data"], BackupContainer::class.java)
+    }
+}
@@ -0,0 +1,80 @@
+package org.tasks.caldav
+
+import dagger.hilt.android.testing.HiltAndroidTest
+import dagger.hilt.android.testing.UninstallModules
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.tasks.data.CaldavAccount
+import org.tasks.data.CaldavCalendar
+import org.tasks.data.CaldavDao
+import org.tasks.data.CaldavTask
+import org.tasks.injection.InjectingTestCase
+import org.tasks.injection.ProductionModule
+import javax.inject.Inject
+
+@UninstallModules(ProductionModule::class)
+@HiltAndroidTest
+class VtodoCacheTest : InjectingTestCase() {
+    @Inject lateinit var vtodoCache: VtodoCache
+    @Inject lateinit var caldavDao: CaldavDao
+
+    @Test
+    fun putAndGet() = runBlocking {
+        vtodoCache.putVtodo(CALENDAR_1, task("1.ics"), "vtodo")
+
+        assertEquals("vtodo", vtodoCache.getVtodo(CALENDAR_1, task("1.ics")))
+    }
+
+    @Test
+    fun blankRemovesEntry() = runBlocking {
+        vtodoCache.putVtodo(CALENDAR_1, task("1.ics"), "vtodo")
+        vtodoCache.putVtodo(CALENDAR_1, task("1.ics"), "")
+
+        assertNull(vtodoCache.getVtodo(CALENDAR_1, task("1.ics")))
+    }
+
+    @Test
+    fun batchGet() = runBlocking {
+        vtodoCache.putVtodos("calendar1", mapOf("1.ics" to "one", "2.ics" to "two"))
+
+        assertEquals(
+            mapOf("1.ics" to "one", "2.ics" to "two"),
+            vtodoCache.getVtodos("calendar1", listOf("1.ics", "2.ics", "3.ics"))
+        )
+    }
+
+    @Test
+    fun move() = runBlocking {
+        vtodoCache.putVtodo(CALENDAR_1, task("1.ics"), "vtodo")
+
+        vtodoCache.move(CALENDAR_1, CALENDAR_2, task("1.ics"))
+
+        assertNull(vtodoCache.getVtodo(CALENDAR_1, task("1.ics")))
+        assertEquals("vtodo", vtodoCache.getVtodo(CALENDAR_2, task("1.ics", "calendar2")))
+    }
+
+    @Test
+    fun deleteAccount() = runBlocking {
+        val account = CaldavAccount().apply { uuid = "account" }
+        caldavDao.insert(account)
+        caldavDao.insert(CALENDAR_1)
+        caldavDao.insert(CALENDAR_2)
+        vtodoCache.putVtodo(CALENDAR_1, task("1.ics"), "one")
+        vtodoCache.putVtodo(CALENDAR_2, task("2.ics", "calendar2"), "two")
+
+        vtodoCache.delete(account)
+
+        assertNull(vtodoCache.getVtodo(CALENDAR_1, task("1.ics")))
+        assertEquals("two", vtodoCache.getVtodo(CALENDAR_2, task("2.ics", "calendar2")))
+    }
+
+    companion object {
+        private val CALENDAR_1 = CaldavCalendar(account = "account", uuid = "calendar1")
+        private val CALENDAR_2 = CaldavCalendar(account = "other", uuid = "calendar2")
+
+        private fun task(obj: String, calendar: String = "calendar1") =
+            CaldavTask(task = 1, calendar = calendar, `object` = obj)
+    }
+}
@@ -43,7 +43,7 @@ class CaldavDaoTests : InjectingTestCase() {
         caldavDao.insert(second, CaldavTask(task = second.id, calendar = "calendar"), true)
 
         checkOrder(null, first.id)
-        checkOrder(created.minusSeconds(1), second.id)
+        checkOrder(created.toAppleEpoch() - CaldavDao.ORDER_GAP, second.id)
     }
 
     @Test
@@ -71,7 +71,7 @@ class CaldavDaoTests : InjectingTestCase() {
         caldavDao.insert(second, CaldavTask(task = second.id, calendar = "calendar"), false)
 
         checkOrder(null, first.id)
-        checkOrder(created.plusSeconds(1), second.id)
+        checkOrder(created.toAppleEpoch() + CaldavDao.ORDER_GAP, second.id)
     }
 
     @Test
@@ -0,0 +1,167 @@
+package org.tasks.data
+
+import com.natpryce.makeiteasy.MakeItEasy.with
+import com.todoroo.andlib.utility.DateUtilities.now
+import com.todoroo.astrid.dao.TaskDao
+import dagger.hilt.android.testing.HiltAndroidTest
+import dagger.hilt.android.testing.UninstallModules
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.tasks.data.FilterCount.Companion.TYPE_LIST
+import org.tasks.data.FilterCount.Companion.TYPE_PLACE
+import org.tasks.data.FilterCount.Companion.TYPE_TAG
+import org.tasks.date.DateTimeUtils.newDateTime
+import org.tasks.injection.InjectingTestCase
+import org.tasks.injection.ProductionModule
+import org.tasks.makers.CaldavTaskMaker.CALENDAR
+import org.tasks.makers.CaldavTaskMaker.newCaldavTask
+import org.tasks.makers.TagDataMaker.NAME
+import org.tasks.makers.TagDataMaker.newTagData
+import org.tasks.makers.TagMaker.TAGDATA
+import org.tasks.makers.TagMaker.TASK
+import org.tasks.makers.TagMaker.newTag
+import org.tasks.makers.TaskMaker.COMPLETION_TIME
+import org.tasks.makers.TaskMaker.START_DATE
+import org.tasks.makers.TaskMaker.newTask
+import javax.inject.Inject
+import org.tasks.makers.CaldavTaskMaker.TASK as CALDAV_TASK
+
+@UninstallModules(ProductionModule::class)
+@HiltAndroidTest
+class FilterCountDaoTest : InjectingTestCase() {
+    @Inject lateinit var filterCountDao: FilterCountDao
+    @Inject lateinit var taskDao: TaskDao
+    @Inject lateinit var tagDao: TagDao
+    @Inject lateinit var tagDataDao: TagDataDao
+    @Inject lateinit var caldavDao: CaldavDao
+    @Inject lateinit var locationDao: LocationDao
+    @Inject lateinit var deletionDao: DeletionDao
+
+    @Test
+    fun countTaggedTask() = runBlocking {
+        val tag = newTagData(with(NAME, "tag")).also { tagDataDao.createNew(it) }
+        val task = newTask().also { taskDao.createNew(it) }
+        tagDao.insert(newTag(with(TAGDATA, tag), with(TASK, task)))
+
+        assertEquals(listOf(FilterCount(TYPE_TAG, tag.remoteId!!, 1)), filterCountDao.getCounts())
+        assertConsistent()
+    }
+
+    @Test
+    fun completeAndUncompleteTask() = runBlocking {
+        val task = newTask().also { taskDao.createNew(it) }
+        caldavDao.insert(newCaldavTask(with(CALDAV_TASK, task.id), with(CALENDAR, "calendar")))
+
+        task.completionDate = now()
+        taskDao.save(task)
+        assertConsistent()
+
+        task.completionDate = 0
+        taskDao.save(task)
+        assertEquals(listOf(FilterCount(TYPE_LIST, "calendar", 1)), filterCountDao.getCounts())
+        assertConsistent()
+    }
+
+    @Test
+    fun uncompleteTaggedCompletedTask() = runBlocking {
+        val tag = newTagData(with(NAME, "tag")).also { tagDataDao.createNew(it) }
+        val task = newTask(with(COMPLETION_TIME, newDateTime())).also { taskDao.createNew(it) }
+        tagDao.insert(newTag(with(TAGDATA, tag), with(TASK, task)))
+
+        task.completionDate = 0
+        taskDao.save(task)
+
+        assertEquals(listOf(FilterCount(TYPE_TAG, tag.remoteId!!, 1)), filterCountDao.getCounts())
+        assertConsistent()
+    }
+
+    @Test
+    fun markTaskDeleted() = runBlocking {
+        val task = newTask().also { taskDao.createNew(it) }
+        caldavDao.insert(newCaldavTask(with(CALDAV_TASK, task.id), with(CALENDAR, "calendar")))
+
+        deletionDao.markDeleted(listOf(task.id))
+
+        assertConsistent()
+    }
+
+    @Test
+    fun deleteTaskCascadesOnce() = runBlocking {
+        val tag = newTagData(with(NAME, "tag")).also { tagDataDao.createNew(it) }
+        val tasks = (1..3).map { newTask().also { task -> taskDao.createNew(task) } }
+        tasks.forEach {
+            tagDao.insert(newTag(with(TAGDATA, tag), with(TASK, it)))
+            caldavDao.insert(newCaldavTask(with(CALDAV_TASK, it.id), with(CALENDAR, "calendar")))
+            locationDao.insert(Geofence(task = it.id, place = "place"))
+        }
+
+        deletionDao.delete(listOf(tasks[0].id))
+
+        assertEquals(
+            setOf(
+                FilterCount(TYPE_TAG, tag.remoteId!!, 2),
+                FilterCount(TYPE_PLACE, "place", 2),
+                FilterCount(TYPE_LIST, "calendar", 2),
+            ),
+            filterCountDao.getCounts().toSet()
+        )
+        assertConsistent()
+    }
+
+    @Test
+    fun moveTaskBetweenLists() = runBlocking {
+        val task = newTask().also { taskDao.createNew(it) }
+        val caldavTask = newCaldavTask(with(CALDAV_TASK, task.id), with(CALENDAR, "list1"))
+        val id = caldavDao.insert(caldavTask)
+
+        caldavDao.update(caldavTask.copy(id = id, calendar = "list2"))
+
+        assertEquals(listOf(FilterCount(TYPE_LIST, "list2", 1)), filterCountDao.getCounts())
+        assertConsistent()
+    }
+
+    @Test
+    fun ignoreDeletedCaldavTask() = runBlocking {
+        val task = newTask().also { taskDao.createNew(it) }
+        val caldavTask = newCaldavTask(with(CALDAV_TASK, task.id), with(CALENDAR, "calendar"))
+        val id = caldavDao.insert(caldavTask)
+
+        caldavDao.update(caldavTask.copy(id = id, deleted = now()))
+
+        assertConsistent()
+    }
+
+    @Test
+    fun removeTagAndGeofence() = runBlocking {
+        val tag = newTagData(with(NAME, "tag")).also { tagDataDao.createNew(it) }
+        val task = newTask().also { taskDao.createNew(it) }
+        tagDao.insert(newTag(with(TAGDATA, tag), with(TASK, task)))
+        locationDao.insert(Geofence(task = task.id, place = "place"))
+
+        tagDao.delete(tagDao.getTagsForTask(task.id))
+        locationDao.deleteGeofencesByPlace("place")
+
+        assertConsistent()
+    }
+
+    @Test
+    fun hiddenTasksAreCountedButNotShown() = runBlocking {
+        val tag = newTagData(with(NAME, "tag")).also { tagDataDao.createNew(it) }
+        val visible = newTask().also { taskDao.createNew(it) }
+        val hidden = newTask(with(START_DATE, newDateTime().plusDays(1))).also { taskDao.createNew(it) }
+        tagDao.insert(newTag(with(TAGDATA, tag), with(TASK, visible)))
+        tagDao.insert(newTag(with(TAGDATA, tag), with(TASK, hidden)))
+
+        assertEquals(listOf(FilterCount(TYPE_TAG, tag.remoteId!!, 2)), filterCountDao.getCounts())
+        assertEquals(1, tagDataDao.getTagFilters().single().count)
+        assertConsistent()
+    }
+
+    private suspend fun assertConsistent() {
+        assertEquals(
+            filterCountDao.getAggregateCounts().toSet(),
+            filterCountDao.getCounts().toSet(),
+        )
+    }
+}
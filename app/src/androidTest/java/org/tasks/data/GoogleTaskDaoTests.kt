@@ -73,6 +73,14 @@ class GoogleTaskDaoTests : InjectingTestCase() {
         assertEquals("1234", googleTaskDao.getPrevious("calendar", 0, 1))
     }
 
+    @Test
+    fun getPreviousTaskWithoutRemoteId() = runBlocking {
+        insertTop(newCaldavTask())
+        insertTop(newCaldavTask())
+        val top = googleTaskDao.getByLocalOrder("calendar").first()
+        assertEquals(top.id, googleTaskDao.getPreviousTask("calendar", 0, 1))
+    }
+
     @Test
     fun insertAtTopOfList() = runBlocking {
         insertTop(newCaldavTask(with(REMOTE_ID, "1234")))
@@ -202,6 +210,24 @@ class GoogleTaskDaoTests : InjectingTestCase() {
         assertEquals(1, taskDao.fetch(2)!!.parent)
     }
 
+    @Test
+    fun getParentChangesByList() = runBlocking {
+        insert(newCaldavTask(with(TASK, 1), with(REMOTE_ID, "123")))
+        insert(newCaldavTask(with(TASK, 2), with(REMOTE_PARENT, "123")))
+
+        assertEquals(listOf(2L), caldavDao.getParentChanges("calendar"))
+    }
+
+    @Test
+    fun noParentChangesAfterUpdate() = runBlocking {
+        insert(newCaldavTask(with(TASK, 1), with(REMOTE_ID, "123")))
+        insert(newCaldavTask(with(TASK, 2), with(REMOTE_PARENT, "123")))
+
+        caldavDao.updateParents("calendar")
+
+        assertEquals(emptyList<Long>(), caldavDao.getParentChanges("calendar"))
+    }
+
     @Test
     fun updateParentsMustMatchList() = runBlocking {
         insert(newCaldavTask(with(TASK, 1), with(REMOTE_ID, "123")))
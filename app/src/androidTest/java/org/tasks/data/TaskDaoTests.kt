@@ -122,6 +122,39 @@ class TaskDaoTests : InjectingTestCase() {
         assertEquals(listOf(child, grandchild), taskDao.getChildren(listOf(parent, grandchild)))
     }
 
+    @Test
+    fun findChildrenAfterMovingSubtree() = runBlocking {
+        val parent = taskDao.createNew(newTask())
+        val child = taskDao.createNew(newTask(with(PARENT, parent)))
+        val grandchild = taskDao.createNew(newTask(with(PARENT, child)))
+        val newParent = taskDao.createNew(newTask())
+
+        taskDao.setParent(newParent, listOf(child))
+
+        assertEquals(emptyList<Long>(), taskDao.getChildren(parent))
+        assertEquals(listOf(child, grandchild), taskDao.getChildren(newParent))
+    }
+
+    @Test
+    fun findParents() = runBlocking {
+        val parent = taskDao.createNew(newTask())
+        val child = taskDao.createNew(newTask(with(PARENT, parent)))
+        val grandchild = taskDao.createNew(newTask(with(PARENT, child)))
+
+        assertEquals(setOf(grandchild, child, parent), taskDao.getParents(grandchild).toSet())
+    }
+
+    @Test
+    fun deletingParentDetachesDescendants() = runBlocking {
+        val parent = taskDao.createNew(newTask())
+        val child = taskDao.createNew(newTask(with(PARENT, parent)))
+        val grandchild = taskDao.createNew(newTask(with(PARENT, child)))
+
+        taskDeleter.delete(listOf(parent))
+
+        assertEquals(setOf(grandchild, child), taskDao.getParents(grandchild).toSet())
+    }
+
     @Test
     fun dontSetParentToSelf() = runBlocking {
         val parent = taskDao.createNew(newTask())
@@ -132,4 +165,18 @@ class TaskDaoTests : InjectingTestCase() {
         assertEquals(0, taskDao.fetch(parent)!!.parent)
         assertEquals(parent, taskDao.fetch(child)!!.parent)
     }
+
+    @Test
+    fun setOrdersOnlyUpdatesGivenTasks() = runBlocking {
+        val first = taskDao.createNew(newTask())
+        val second = taskDao.createNew(newTask())
+        val untouched = taskDao.createNew(newTask())
+        taskDao.setOrders(mapOf(untouched to 7L))
+
+        taskDao.setOrders(mapOf(first to 1L, second to 0L))
+
+        assertEquals(1L, taskDao.fetch(first)!!.order)
+        assertEquals(0L, taskDao.fetch(second)!!.order)
+        assertEquals(7L, taskDao.fetch(untouched)!!.order)
+    }
 }
\ No newline at end of file
@@ -0,0 +1,204 @@
+package org.tasks.db
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider.getApplicationContext
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.todoroo.astrid.api.CaldavFilter
+import com.todoroo.astrid.api.Filter
+import com.todoroo.astrid.api.GtasksFilter
+import com.todoroo.astrid.core.BuiltInFilterExposer
+import com.todoroo.astrid.dao.Database
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.tasks.TestUtilities.newPreferences
+import org.tasks.data.CaldavCalendar
+import org.tasks.preferences.Preferences
+import java.util.Collections
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the statements issued by hot DAO methods and list queries, and fails
+ * if any of them scans a table that grows with the number of tasks
+ */
+@RunWith(AndroidJUnit4::class)
+class QueryPlanTest {
+    private val statements = Collections.synchronizedList(ArrayList<Pair<String, List<Any?>>>())
+    @Volatile private var recording = false
+    private lateinit var db: Database
+    private lateinit var preferences: Preferences
+
+    @Before
+    fun setUp() {
+        db = Room.inMemoryDatabaseBuilder(getApplicationContext(), Database::class.java)
+            .addCallback(Database.CALLBACK)
+            .setQueryCallback({ sql, args -> if (recording) statements.add(sql to args) }, Runnable::run)
+            .build()
+        preferences = newPreferences(getApplicationContext())
+        preferences.clear()
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    @Test
+    fun taskDao() = assertNoScans {
+        with(db.taskDao) {
+            fetch(1)
+            fetch(listOf(1L, 2L))
+            fetch("remote")
+            getChildren(1)
+            getParents(1)
+            setParent(1, listOf(2L, 3L))
+            getCaldavTasksToPush("calendar")
+            touch(listOf(1L))
+        }
+    }
+
+    @Test
+    fun caldavDao() = assertNoScans {
+        with(db.caldavDao) {
+            getTask(1)
+            getTasks(listOf(1L, 2L))
+            getTask("calendar", "1.ics")
+            getTaskByRemoteId("calendar", "remote")
+            getTasksByRemoteId("calendar", listOf("remote"))
+            getCaldavTasksByRemoteId("calendar", listOf("remote"))
+            getCaldavTasksByObject("calendar", listOf("1.ics"))
+            getRemoteObjects("calendar")
+            getMoved("calendar")
+            getCalendars(listOf(1L))
+            updateParents("calendar")
+            shiftDown("calendar", 0, 1)
+        }
+    }
+
+    @Test
+    fun googleTaskDao() = assertNoScans {
+        with(db.googleTaskDao) {
+            getByTaskId(1)
+            getByRemoteId("remote")
+            getTask("remote")
+            getBottom("list", 0)
+            getPrevious("list", 0, 1)
+            getPreviousTask("list", 0, 1)
+            getLists(listOf(1L))
+            shiftDown("list", 0, 1)
+            shiftUp("list", 0, 1)
+            updatePosition("remote", "parent", "00001")
+        }
+    }
+
+    @Test
+    fun alarmDao() = assertNoScans {
+        with(db.alarmDao) {
+            getActiveAlarms(1)
+            getAlarms(1)
+            getAlarms(listOf(1L, 2L))
+            getSnoozed(listOf(1L))
+        }
+    }
+
+    @Test
+    fun locationDao() = assertNoScans {
+        with(db.locationDao) {
+            getGeofences(1)
+            getGeofences(listOf(1L, 2L))
+            getGeofencesForTask(1)
+            getActiveGeofences(1)
+            getPlaceForTask(1)
+        }
+    }
+
+    @Test
+    fun drawerCounts() = assertNoScans {
+        db.tagDataDao.getTagFilters()
+        db.locationDao.getPlaceFilters()
+        db.caldavDao.getCaldavFilters("account")
+        db.googleTaskListDao.getGoogleTaskFilters("account")
+    }
+
+    @Test
+    fun caldavListQuery() = assertListQuery(CaldavFilter(CaldavCalendar(name = "calendar", uuid = "1234")))
+
+    @Test
+    fun caldavManualSortListQuery() {
+        preferences.isManualSort = true
+        assertListQuery(CaldavFilter(CaldavCalendar(name = "calendar", uuid = "1234")))
+    }
+
+    @Test
+    fun googleTaskManualSortListQuery() {
+        preferences.isManualSort = true
+        assertListQuery(GtasksFilter(CaldavCalendar(name = "list", uuid = "1234")))
+    }
+
+    @Test
+    fun todayListQuery() =
+        assertListQuery(BuiltInFilterExposer.getTodayFilter(getApplicationContext<Context>().resources))
+
+    /**
+     * List queries may drive from a full pass over one table, e.g. to find root tasks or to walk
+     * the temporary result table, but every other table in the statement must be searched
+     */
+    private fun assertListQuery(filter: Filter) =
+        assertScans(maxPerStatement = 1) { db.taskDao.fetchTasks(preferences, filter) }
+
+    private fun assertNoScans(block: suspend () -> Unit) = assertScans(maxPerStatement = 0, block)
+
+    private fun assertScans(maxPerStatement: Int, block: suspend () -> Unit) = runBlocking {
+        statements.clear()
+        recording = true
+        try {
+            block()
+        } finally {
+            recording = false
+        }
+        val failures = statements
+            .filter { (sql, _) -> sql.isQuery() }
+            .mapNotNull { (sql, args) ->
+                val scans = scans(sql, args)
+                if (scans.size > maxPerStatement) "$scans\n$sql" else null
+            }
+        assertTrue(failures.joinToString("\n\n"), failures.isEmpty())
+    }
+
+    private fun scans(sql: String, args: List<Any?>): List<String> {
+        val tables = tables(sql)
+        return db.query("EXPLAIN QUERY PLAN $sql", args.toTypedArray()).use { cursor ->
+            val details = ArrayList<String>()
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(cursor.getColumnIndexOrThrow("detail")))
+            }
+            details
+        }.filter { detail ->
+            SCAN.find(detail)?.groupValues?.get(1)?.let { tables[it] } != null
+        }
+    }
+
+    companion object {
+        private val LARGE_TABLES = listOf(
+            "tasks", "caldav_tasks", "alarms", "geofences", "tags", "task_hierarchy", "vtodo"
+        )
+        private val SCAN = Regex("^SCAN (?:TABLE )?(\\w+)")
+        private val ALIAS = Regex("\\b(\\w+)\\s+AS\\s+(\\w+)\\b", RegexOption.IGNORE_CASE)
+
+        private fun String.isQuery() =
+            trimStart().let { sql ->
+                listOf("SELECT", "WITH", "UPDATE", "DELETE", "INSERT")
+                    .any { sql.startsWith(it, ignoreCase = true) }
+            }
+
+        /** large tables referenced in [sql], by name or alias */
+        private fun tables(sql: String): Map<String, String> =
+            LARGE_TABLES.associateBy { it } + ALIAS
+                .findAll(sql)
+                .filter { LARGE_TABLES.contains(it.groupValues[1]) }
+                .associate { it.groupValues[2] to it.groupValues[1] }
+    }
+}
@@ -7,9 +7,13 @@ import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNull
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.tasks.gtasks.GoogleTaskSynchronizer.Companion.nextBatch
+import org.tasks.makers.CaldavTaskMaker.newCaldavTask
 import org.tasks.makers.TaskMaker.DUE_DATE
 import org.tasks.makers.TaskMaker.DUE_TIME
 import org.tasks.makers.TaskMaker.HIDE_TYPE
+import org.tasks.makers.TaskMaker.ID
+import org.tasks.makers.TaskMaker.PARENT
 import org.tasks.makers.TaskMaker.newTask
 import org.tasks.time.DateTime
 
@@ -118,4 +122,61 @@ class GoogleTaskSynchronizerTest {
     fun overwriteNullValueWithTruncatedValue() {
         assertEquals("1234567", GoogleTaskSynchronizer.getTruncatedValue(null, "1234567", 7))
     }
-}
\ No newline at end of file
+
+    @Test
+    fun batchCreatesInDifferentParents() {
+        val pushes = listOf(push(1), push(2, parent = 10), push(3, list = "other"))
+
+        val (batch, waiting) = pushes.nextBatch(waitForParent = true)
+
+        assertEquals(pushes, batch)
+        assertEquals(emptyList<GoogleTaskSynchronizer.Push>(), waiting)
+    }
+
+    @Test
+    fun batchSiblingsBelowDifferentTasks() {
+        val pushes = listOf(push(1), push(2, previous = 10), push(3, previous = 11))
+
+        val (batch, waiting) = pushes.nextBatch(waitForParent = true)
+
+        assertEquals(listOf(1L, 2L, 3L), batch.map { it.task.id })
+        assertEquals(emptyList<GoogleTaskSynchronizer.Push>(), waiting)
+    }
+
+    @Test
+    fun chainAdjacentSiblings() {
+        var pending = listOf(push(1), push(2, previous = 1), push(3, previous = 2), push(4, previous = 10))
+        val batches = ArrayList<List<Long>>()
+        while (pending.isNotEmpty()) {
+            val (batch, waiting) = pending.nextBatch(waitForParent = false)
+            batches.add(batch.map { it.task.id })
+            pending = waiting
+        }
+
+        assertEquals(listOf(listOf(1L, 4L), listOf(2L), listOf(3L)), batches)
+    }
+
+    @Test
+    fun createWaitsForNewParent() {
+        val (batch, waiting) = listOf(push(1), push(2, parent = 1)).nextBatch(waitForParent = true)
+
+        assertEquals(listOf(1L), batch.map { it.task.id })
+        assertEquals(listOf(2L), waiting.map { it.task.id })
+    }
+
+    @Test
+    fun moveDoesntWaitForParent() {
+        val (batch, _) = listOf(push(1), push(2, parent = 1)).nextBatch(waitForParent = false)
+
+        assertEquals(listOf(1L, 2L), batch.map { it.task.id })
+    }
+
+    private fun push(id: Long, parent: Long = 0, list: String = "list", previous: Long = 0) =
+        GoogleTaskSynchronizer.Push(
+            newTask(with(ID, id), with(PARENT, parent)),
+            newCaldavTask(),
+            list,
+            com.google.api.services.tasks.model.Task(),
+            previous,
+        )
+}
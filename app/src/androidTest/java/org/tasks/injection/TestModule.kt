@@ -26,6 +26,7 @@ class TestModule {
     fun getDatabase(@ApplicationContext context: Context): Database {
         return Room.inMemoryDatabaseBuilder(context, Database::class.java)
                 .fallbackToDestructiveMigration()
+                .addCallback(Database.CALLBACK)
                 .build()
     }
 
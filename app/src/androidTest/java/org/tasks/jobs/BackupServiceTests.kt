@@ -18,6 +18,7 @@ import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Test
 import org.tasks.R
+import org.tasks.backup.BackupConstants
 import org.tasks.backup.BackupConstants.BACKUP_CLEANUP_MATCHER
 import org.tasks.backup.TasksJsonExporter
 import org.tasks.backup.TasksJsonExporter.ExportType
@@ -80,4 +81,17 @@ class BackupServiceTests : InjectingTestCase() {
         assertEquals(1, files!!.size)
         assertTrue(files[0].name.matches(BACKUP_CLEANUP_MATCHER))
     }
-}
\ No newline at end of file
+
+    @Test
+    fun incrementalBackup() = runBlocking {
+        preferences.setBoolean(R.string.p_backups_incremental, true)
+        val context = InstrumentationRegistry.getTargetContext()
+        jsonExporter.exportTasks(context, ExportType.EXPORT_TYPE_SERVICE, null)
+        jsonExporter.exportTasks(context, ExportType.EXPORT_TYPE_SERVICE, null)
+
+        val names = temporaryDirectory.list()!!.toList()
+        assertEquals(2, names.size)
+        assertTrue(names.all { it.matches(BACKUP_CLEANUP_MATCHER) })
+        assertEquals(1, names.count { BackupConstants.isDelta(it) })
+    }
+}
@@ -25,6 +25,12 @@ abstract class Criterion(val operator: Operator) {
             }
         }
 
+        fun notExists(query: Query): Criterion {
+            return object : Criterion(Operator.not) {
+                override fun populate() = "NOT EXISTS ($query)"
+            }
+        }
+
         operator fun <T> T.plus(tail: Array<out T>): List<T> {
             val list = ArrayList<T>(1 + tail.size)
 
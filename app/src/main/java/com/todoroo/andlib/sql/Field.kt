@@ -23,6 +23,8 @@ open class Field(expression: String) : DBObject(expression) {
 
     fun like(value: String?): Criterion = UnaryCriterion.like(this, value)
 
+    fun match(value: String?): Criterion = UnaryCriterion.match(this, value)
+
     fun `in`(query: Query?): Criterion {
         val field = this
         return object : Criterion(Operator.`in`) {
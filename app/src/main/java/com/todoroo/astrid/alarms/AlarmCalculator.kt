@@ -3,6 +3,7 @@ package com.todoroo.astrid.alarms
 import com.todoroo.andlib.utility.DateUtilities
 import com.todoroo.astrid.data.Task
 import org.tasks.data.Alarm
+import org.tasks.data.TaskAlarm
 import org.tasks.jobs.AlarmEntry
 import org.tasks.preferences.Preferences
 import org.tasks.reminders.Random
@@ -19,6 +20,15 @@ class AlarmCalculator(
         preferences: Preferences
     ) : this(preferences.isDefaultDueTimeEnabled, Random(), preferences.defaultDueTime)
 
+    /** @return the next alarm for each task in [alarms], a snoozed alarm takes priority */
+    fun toAlarmEntries(alarms: List<TaskAlarm>): List<AlarmEntry> =
+        alarms
+            .groupBy { it.task.id }
+            .mapNotNull { (_, alarms) ->
+                val entries = alarms.mapNotNull { toAlarmEntry(it.task, it.alarm) }
+                entries.find { it.type == Alarm.TYPE_SNOOZE } ?: entries.minByOrNull { it.time }
+            }
+
     fun toAlarmEntry(task: Task, alarm: Alarm): AlarmEntry? {
         val trigger = when (alarm.type) {
             Alarm.TYPE_SNOOZE,
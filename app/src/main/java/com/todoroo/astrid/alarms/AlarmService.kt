@@ -10,7 +10,9 @@ import org.tasks.LocalBroadcastManager
 import org.tasks.data.Alarm
 import org.tasks.data.Alarm.Companion.TYPE_SNOOZE
 import org.tasks.data.AlarmDao
+import org.tasks.data.TaskAlarm
 import org.tasks.data.TaskDao
+import org.tasks.db.SuspendDbUtils.chunkedMap
 import org.tasks.jobs.NotificationQueue
 import org.tasks.notifications.NotificationManager
 import javax.inject.Inject
@@ -33,9 +35,14 @@ class AlarmService @Inject constructor(
     /**
      * Save the given array of alarms into the database
      *
+     * @param schedule false if the caller will reschedule alarms for this task itself
      * @return true if data was changed
      */
-    suspend fun synchronizeAlarms(taskId: Long, alarms: MutableSet<Alarm>): Boolean {
+    suspend fun synchronizeAlarms(
+        taskId: Long,
+        alarms: MutableSet<Alarm>,
+        schedule: Boolean = true,
+    ): Boolean {
         val task = taskDao.fetch(taskId) ?: return false
         var changed = false
         for (existing in alarmDao.getAlarms(taskId)) {
@@ -55,20 +62,16 @@ class AlarmService @Inject constructor(
             changed = true
         }
         if (changed) {
-            scheduleAlarms(task)
+            if (schedule) {
+                scheduleAlarms(task)
+            }
             localBroadcastManager.broadcastRefreshList()
         }
         return changed
     }
 
     suspend fun scheduleAllAlarms() {
-        alarmDao
-            .getActiveAlarms()
-            .groupBy { it.task }
-            .forEach { (taskId, alarms) ->
-                val task = taskDao.fetch(taskId) ?: return@forEach
-                scheduleAlarms(task, alarms)
-            }
+        scheduleAlarms(alarmDao.getActiveTaskAlarms())
     }
 
     fun cancelAlarms(taskId: Long) {
@@ -83,23 +86,22 @@ class AlarmService @Inject constructor(
         scheduleAlarms(taskIds)
     }
 
+    /** Schedules alarms for [taskIds], with one query per chunk and one update to the queue */
     suspend fun scheduleAlarms(taskIds: List<Long>) {
-        taskDao.fetch(taskIds).forEach { scheduleAlarms(it) }
+        val ids = taskIds.distinct()
+        scheduleAlarms(ids.chunkedMap { alarmDao.getActiveTaskAlarms(it) }, ids)
     }
 
     /** Schedules alarms for a single task  */
     suspend fun scheduleAlarms(task: Task) {
-        scheduleAlarms(task, alarmDao.getActiveAlarms(task.id))
+        scheduleAlarms(alarmDao.getActiveAlarms(task.id).map { TaskAlarm(task, it) }, listOf(task.id))
     }
 
-    private fun scheduleAlarms(task: Task, alarms: List<Alarm>) {
-        jobs.cancelForTask(task.id)
-        val alarmEntries = alarms.mapNotNull {
-            alarmCalculator.toAlarmEntry(task, it)
-        }
-        val next =
-            alarmEntries.find { it.type == TYPE_SNOOZE } ?: alarmEntries.minByOrNull { it.time }
-        next?.let { jobs.add(it) }
+    private fun scheduleAlarms(
+        alarms: List<TaskAlarm>,
+        taskIds: Collection<Long> = alarms.map { it.task.id }.toSet(),
+    ) {
+        jobs.replace(taskIds, alarmCalculator.toAlarmEntries(alarms))
     }
 
     companion object {
@@ -9,6 +9,10 @@ package com.todoroo.astrid.api;
 import static org.tasks.date.DateTimeUtils.newDateTime;
 
 import com.todoroo.andlib.utility.DateUtilities;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.tasks.time.DateTime;
 
 /**
@@ -48,6 +52,44 @@ public final class PermaSql {
   /** value to be replaced by approximate noon next month as long */
   private static final String VALUE_NOON_NEXT_MONTH = "NOONM()"; // $NON-NLS-1$
 
+  /** every placeholder that {@link #replacePlaceholdersForQuery(String)} replaces */
+  public static final List<String> PLACEHOLDERS =
+      Arrays.asList(
+          VALUE_NOW,
+          VALUE_EOD,
+          VALUE_EOD_YESTERDAY,
+          VALUE_EOD_TOMORROW,
+          VALUE_EOD_DAY_AFTER,
+          VALUE_EOD_NEXT_WEEK,
+          VALUE_EOD_NEXT_MONTH,
+          VALUE_NOON,
+          VALUE_NOON_YESTERDAY,
+          VALUE_NOON_TOMORROW,
+          VALUE_NOON_DAY_AFTER,
+          VALUE_NOON_NEXT_WEEK,
+          VALUE_NOON_NEXT_MONTH);
+
+  /** @return current value of every placeholder, for binding as query arguments */
+  public static Map<String, Long> getPlaceholderValues() {
+    long eod = newDateTime().endOfDay().getMillis();
+    long noon = newDateTime().noon().getMillis();
+    Map<String, Long> values = new HashMap<>();
+    values.put(VALUE_NOW, DateUtilities.now());
+    values.put(VALUE_EOD_YESTERDAY, eod - DateUtilities.ONE_DAY);
+    values.put(VALUE_EOD, eod);
+    values.put(VALUE_EOD_TOMORROW, eod + DateUtilities.ONE_DAY);
+    values.put(VALUE_EOD_DAY_AFTER, eod + 2 * DateUtilities.ONE_DAY);
+    values.put(VALUE_EOD_NEXT_WEEK, eod + 7 * DateUtilities.ONE_DAY);
+    values.put(VALUE_EOD_NEXT_MONTH, eod + 30 * DateUtilities.ONE_DAY);
+    values.put(VALUE_NOON_YESTERDAY, noon - DateUtilities.ONE_DAY);
+    values.put(VALUE_NOON, noon);
+    values.put(VALUE_NOON_TOMORROW, noon + DateUtilities.ONE_DAY);
+    values.put(VALUE_NOON_DAY_AFTER, noon + 2 * DateUtilities.ONE_DAY);
+    values.put(VALUE_NOON_NEXT_WEEK, noon + 7 * DateUtilities.ONE_DAY);
+    values.put(VALUE_NOON_NEXT_MONTH, noon + 30 * DateUtilities.ONE_DAY);
+    return values;
+  }
+
   /** Replace placeholder strings with actual */
   public static String replacePlaceholdersForQuery(String value) {
     if (value.contains(VALUE_NOW)) {
@@ -33,35 +33,60 @@ class SearchFilter : Filter {
             }
         }
 
+        /**
+         * Words are matched against [TaskSearch]. If nothing in the index matches, e.g. because
+         * the query starts in the middle of a word, the substring search over every column is
+         * used instead. Results are sorted by the list's sort mode, as before the index existed
+         */
         private fun getQueryTemplate(query: String): QueryTemplate {
             val matcher = "%$query%"
+            val match = TaskSearch.matchQuery(query)
+                    ?: return QueryTemplate()
+                            .where(Criterion.and(Task.DELETION_DATE.eq(0), likeMatches(matcher)))
+            val indexMatches = Query.select(TaskSearch.ROWID)
+                    .from(TaskSearch.TABLE)
+                    .where(TaskSearch.MATCH.match(match))
             return QueryTemplate()
                     .where(
                             Criterion.and(
                                     Task.DELETION_DATE.eq(0),
                                     Criterion.or(
-                                            Task.NOTES.like(matcher),
-                                            Task.TITLE.like(matcher),
-                                            Task.ID.`in`(
-                                                    Query.select(Tag.TASK)
-                                                            .from(Tag.TABLE)
-                                                            .where(Tag.NAME.like(matcher))),
-                                            Task.UUID.`in`(
-                                                    Query.select(UserActivity.TASK)
-                                                            .from(UserActivity.TABLE)
-                                                            .where(UserActivity.MESSAGE.like(matcher))),
-                                            Task.ID.`in`(
-                                                    Query.select(Geofence.TASK)
-                                                            .from(Geofence.TABLE)
-                                                            .join(Join.inner(Place.TABLE, Place.UID.eq(Geofence.PLACE)))
-                                                            .where(Criterion.or(Place.NAME.like(matcher),
-                                                                    Place.ADDRESS.like(matcher)))),
-                                            Task.ID.`in`(
-                                                    Query.select(CaldavTask.TASK)
-                                                            .from(CaldavTask.TABLE)
-                                                            .join(Join.inner(CaldavCalendar.TABLE, CaldavCalendar.UUID.eq(CaldavTask.CALENDAR)))
-                                                            .where(CaldavCalendar.NAME.like(matcher))),
+                                            Task.ID.`in`(indexMatches),
+                                            calendarNameMatches(matcher),
+                                            Criterion.and(
+                                                    Criterion.notExists(indexMatches),
+                                                    likeMatches(matcher),
+                                            ),
                                     )))
         }
+
+        /** Substring search over the text that [TaskSearch] indexes, and calendar names */
+        private fun likeMatches(matcher: String) =
+                Criterion.or(
+                        Task.NOTES.like(matcher),
+                        Task.TITLE.like(matcher),
+                        Task.ID.`in`(
+                                Query.select(Tag.TASK)
+                                        .from(Tag.TABLE)
+                                        .where(Tag.NAME.like(matcher))),
+                        Task.UUID.`in`(
+                                Query.select(UserActivity.TASK)
+                                        .from(UserActivity.TABLE)
+                                        .where(UserActivity.MESSAGE.like(matcher))),
+                        Task.ID.`in`(
+                                Query.select(Geofence.TASK)
+                                        .from(Geofence.TABLE)
+                                        .join(Join.inner(Place.TABLE, Place.UID.eq(Geofence.PLACE)))
+                                        .where(Criterion.or(Place.NAME.like(matcher),
+                                                Place.ADDRESS.like(matcher)))),
+                        calendarNameMatches(matcher),
+                )
+
+        private fun calendarNameMatches(matcher: String) =
+                Task.ID.`in`(
+                        Query.select(CaldavTask.TASK)
+                                .from(CaldavTask.TABLE)
+                                .join(Join.inner(CaldavCalendar.TABLE, CaldavCalendar.UUID.eq(CaldavTask.CALENDAR)))
+                                .where(CaldavCalendar.NAME.like(matcher)))
     }
-}
\ No newline at end of file
+}
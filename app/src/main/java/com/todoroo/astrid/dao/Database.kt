@@ -3,6 +3,7 @@ package com.todoroo.astrid.dao
 import androidx.room.AutoMigration
 import androidx.room.Database
 import androidx.room.RoomDatabase
+import androidx.sqlite.db.SupportSQLiteDatabase
 import com.todoroo.astrid.data.Task
 import org.tasks.data.*
 import org.tasks.data.TaskDao
@@ -29,11 +30,15 @@ import org.tasks.notifications.NotificationDao
         Principal::class,
         PrincipalAccess::class,
         Attachment::class,
+        TaskHierarchy::class,
+        TaskSearch::class,
+        Vtodo::class,
+        FilterCount::class,
     ],
     autoMigrations = [
         AutoMigration(from = 83, to = 84, spec = Migrations.AutoMigrate83to84::class),
     ],
-    version = 88
+    version = 94
 )
 abstract class Database : RoomDatabase() {
     abstract fun notificationDao(): NotificationDao
@@ -53,6 +58,8 @@ abstract class Database : RoomDatabase() {
     abstract val contentProviderDao: ContentProviderDao
     abstract val upgraderDao: UpgraderDao
     abstract val principalDao: PrincipalDao
+    abstract val vtodoDao: VtodoDao
+    abstract val filterCountDao: FilterCountDao
 
     /** @return human-readable database name for debugging
      */
@@ -65,5 +72,14 @@ abstract class Database : RoomDatabase() {
 
     companion object {
         const val NAME = "database"
+
+        /** Creates the triggers that Room doesn't know about when the database is first created */
+        val CALLBACK = object : RoomDatabase.Callback() {
+            override fun onCreate(db: SupportSQLiteDatabase) {
+                TaskHierarchy.TRIGGERS.forEach { db.execSQL(it) }
+                TaskSearch.TRIGGERS.forEach { db.execSQL(it) }
+                FilterCount.TRIGGERS.forEach { db.execSQL(it) }
+            }
+        }
     }
 }
\ No newline at end of file
@@ -43,6 +43,8 @@ class TaskDao @Inject constructor(
 
     suspend fun fetch(remoteId: String): Task? = taskDao.fetch(remoteId)
 
+    suspend fun getRemoteIds(remoteIds: List<String>): List<String> = taskDao.getRemoteIds(remoteIds)
+
     suspend fun getRecurringTasks(remoteIds: List<String>): List<Task> =
             taskDao.getRecurringTasks(remoteIds)
 
@@ -133,10 +135,12 @@ class TaskDao @Inject constructor(
                 if (completionDateModified || deletionDateModified) {
                     geofenceApi.update(task.id)
                 }
-                alarmService.scheduleAlarms(task)
+                if (!task.isSuppressAlarms()) {
+                    alarmService.scheduleAlarms(task)
+                }
                 refreshScheduler.scheduleRefresh(task)
                 if (!task.isSuppressRefresh()) {
-                    localBroadcastManager.broadcastRefresh()
+                    localBroadcastManager.broadcastRefresh(task.id)
                 }
                 syncAdapters.sync(task, original)
             }
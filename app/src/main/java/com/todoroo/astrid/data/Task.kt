@@ -22,7 +22,8 @@ import timber.log.Timber
         tableName = Task.TABLE_NAME,
         indices = [
             Index(name = "t_rid", value = ["remoteId"], unique = true),
-            Index(name = "active_and_visible", value = ["completed", "deleted", "hideUntil"])])
+            Index(name = "active_and_visible", value = ["completed", "deleted", "hideUntil"]),
+            Index(name = "t_parent", value = ["parent"])])
 data class Task(
     @PrimaryKey(autoGenerate = true)
     @ColumnInfo(name = "_id")
@@ -258,6 +259,14 @@ data class Task(
 
     fun isSuppressRefresh() = checkTransitory(TRANS_SUPPRESS_REFRESH)
 
+    /** alarms will be rescheduled by the caller, e.g. in bulk after a batch of saves */
+    @Synchronized
+    fun suppressAlarms() {
+        putTransitory(TRANS_SUPPRESS_ALARMS, true)
+    }
+
+    fun isSuppressAlarms() = checkTransitory(TRANS_SUPPRESS_ALARMS)
+
     fun defaultReminders(flags: Int) {
         putTransitory(TRANS_REMINDERS, flags)
     }
@@ -383,6 +392,7 @@ data class Task(
         const val URGENCY_IN_TWO_WEEKS = 5
 
         private const val TRANS_SUPPRESS_REFRESH = "suppress-refresh"
+        private const val TRANS_SUPPRESS_ALARMS = "suppress-alarms"
         const val TRANS_REMINDERS = "reminders"
         const val TRANS_RANDOM = "random"
 
@@ -1,7 +1,5 @@
 package com.todoroo.astrid.gtasks.api
 
-import com.google.api.client.http.javanet.NetHttpTransport
-import com.google.api.client.json.gson.GsonFactory
 import com.google.api.services.tasks.Tasks
 import com.google.api.services.tasks.model.Task
 import com.google.api.services.tasks.model.TaskList
@@ -23,7 +21,7 @@ class GtasksInvoker(
         interceptor: DebugNetworkInterceptor
 ) : BaseInvoker(credentials, preferences, interceptor) {
     private val service =
-            Tasks.Builder(NetHttpTransport(), GsonFactory(), credentials)
+            Tasks.Builder(TRANSPORT, JSON_FACTORY, credentials)
                     .setApplicationName(APP_NAME)
                     .build()
 
@@ -93,6 +91,31 @@ class GtasksInvoker(
     suspend fun createGtaskList(title: String?): TaskList? =
             execute(service!!.tasklists().insert(TaskList().setTitle(title)))
 
+    /** Batched [createGtask], results are in the same order as [requests] */
+    @Throws(IOException::class)
+    suspend fun createGtasks(requests: List<TaskRequest>): List<Result<Task?>> =
+            executeBatch(requests.map {
+                service!!.tasks().insert(it.listId, it.task).setParent(it.parent).setPrevious(it.previous)
+            })
+
+    /** Batched [updateGtask], results are in the same order as [requests] */
+    @Throws(IOException::class)
+    suspend fun updateGtasks(requests: List<TaskRequest>): List<Result<Task?>> =
+            executeBatch(requests.map { service!!.tasks().update(it.listId, it.task.id, it.task) })
+
+    /** Batched [moveGtask], results are in the same order as [requests] */
+    @Throws(IOException::class)
+    suspend fun moveGtasks(requests: List<TaskRequest>): List<Result<Task?>> =
+            executeBatch(requests.map {
+                service!!.tasks().move(it.listId, it.task.id).setParent(it.parent).setPrevious(it.previous)
+            })
+
+    /** Batched [deleteGtask], tasks that no longer exist are treated as deleted */
+    @Throws(IOException::class)
+    suspend fun deleteGtasks(requests: List<TaskRequest>): List<Result<Void?>> =
+            executeBatch(requests.map { service!!.tasks().delete(it.listId, it.task.id) })
+                    .map { if (it.exceptionOrNull() is HttpNotFoundException) Result.success(null) else it }
+
     @Throws(IOException::class)
     suspend fun deleteGtask(listId: String?, taskId: String?) {
         try {
@@ -100,4 +123,11 @@ class GtasksInvoker(
         } catch (ignored: HttpNotFoundException) {
         }
     }
-}
\ No newline at end of file
+
+    data class TaskRequest(
+            val listId: String?,
+            val task: Task,
+            val parent: String? = null,
+            val previous: String? = null,
+    )
+}
@@ -3,6 +3,7 @@ package com.todoroo.astrid.service
 import com.todoroo.astrid.api.Filter
 import com.todoroo.astrid.data.Task
 import org.tasks.LocalBroadcastManager
+import org.tasks.caldav.CaldavClientProvider
 import org.tasks.caldav.VtodoCache
 import org.tasks.data.CaldavAccount
 import org.tasks.data.CaldavCalendar
@@ -26,6 +27,7 @@ class TaskDeleter @Inject constructor(
         private val preferences: Preferences,
         private val syncAdapters: SyncAdapters,
         private val vtodoCache: VtodoCache,
+        private val caldavClientProvider: CaldavClientProvider,
     ) {
 
     suspend fun markDeleted(item: Task) = markDeleted(listOf(item.id))
@@ -40,7 +42,7 @@ class TaskDeleter @Inject constructor(
         deletionDao.markDeleted(ids)
         workManager.cleanup(ids)
         syncAdapters.sync()
-        localBroadcastManager.broadcastRefresh()
+        localBroadcastManager.broadcastRefresh(ids)
         return taskDao.fetch(ids)
     }
 
@@ -65,7 +67,7 @@ class TaskDeleter @Inject constructor(
     suspend fun delete(tasks: List<Long>) {
         deletionDao.delete(tasks)
         workManager.cleanup(tasks)
-        localBroadcastManager.broadcastRefresh()
+        localBroadcastManager.broadcastRefresh(tasks)
     }
 
     suspend fun delete(list: CaldavCalendar) {
@@ -76,6 +78,7 @@ class TaskDeleter @Inject constructor(
     }
 
     suspend fun delete(list: CaldavAccount) {
+        caldavClientProvider.invalidate(list)
         vtodoCache.delete(list)
         val tasks = deletionDao.delete(list)
         delete(tasks)
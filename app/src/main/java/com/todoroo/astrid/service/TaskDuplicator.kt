@@ -44,7 +44,7 @@ class TaskDuplicator @Inject constructor(
             .let { taskDao.fetch(it) }
             .filterNot { it.readOnly }
             .map { clone(it, it.parent) }
-            .also { localBroadcastManager.broadcastRefresh() }
+            .also { localBroadcastManager.broadcastRefresh(it.map(Task::id)) }
     }
 
     private suspend fun clone(clone: Task, parentId: Long): Task {
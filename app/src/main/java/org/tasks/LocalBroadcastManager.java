@@ -12,6 +12,7 @@ import com.todoroo.astrid.api.AstridApiConstants;
 import org.tasks.widget.AppWidgetManager;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 import javax.inject.Inject;
 
@@ -63,6 +64,22 @@ public class LocalBroadcastManager {
     appWidgetManager.updateWidgets();
   }
 
+  public void broadcastRefresh(long taskId) {
+    broadcastRefresh(newArrayList(taskId));
+  }
+
+  /**
+   * Refresh after changes that were limited to the given task rows, or after changes that didn't
+   * touch any task rows if empty. Receivers that don't track individual rows can treat this like
+   * {@link #broadcastRefresh()}
+   */
+  public void broadcastRefresh(Collection<Long> taskIds) {
+    Intent intent = new Intent(REFRESH);
+    intent.putExtra(AstridApiConstants.EXTRAS_TASK_ID, new ArrayList<>(taskIds));
+    localBroadcastManager.sendBroadcast(intent);
+    appWidgetManager.updateWidgets();
+  }
+
   public void broadcastRefreshList() {
     localBroadcastManager.sendBroadcast(new Intent(REFRESH_LIST));
   }
@@ -80,6 +80,7 @@ class SignInViewModel @Inject constructor(
                         error = null
                         this.password = password
                         caldavDao.update(this)
+                        provider.invalidate(this)
                     }
                     ?: CaldavAccount().apply {
                         accountType = CaldavAccount.TYPE_TASKS
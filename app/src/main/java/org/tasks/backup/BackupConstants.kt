@@ -9,12 +9,17 @@ object BackupConstants {
     const val INTERNAL_BACKUP = "backup.json"
     const val EXPORT_FILE_NAME = "user.%s.json"
     const val BACKUP_FILE_NAME = "auto.%s.json"
+    const val DELTA_FILE_NAME = "auto.%s.delta.json"
+    const val GZIP_EXTENSION = ".gz"
 
-    private val MATCHER = Pattern.compile("""(auto|user)\.(\d{2,4})(\d{2})(\d{2})[T-](\d{2})(\d{2})\.json""")
-    val BACKUP_CLEANUP_MATCHER = Regex("""auto\.\d{6,8}[T-]\d{4}\.json""")
+    private val MATCHER = Pattern.compile("""(auto|user)\.(\d{2,4})(\d{2})(\d{2})[T-](\d{2})(\d{2})(\.delta)?\.json(\.gz)?""")
+    val BACKUP_CLEANUP_MATCHER = Regex("""auto\.\d{6,8}[T-]\d{4}(\.delta)?\.json(\.gz)?""")
 
     fun isBackupFile(name: String?) = name?.let { MATCHER.matcher(it).matches() } ?: false
 
+    /** @return true if [name] is an incremental backup that only holds changes since its base */
+    fun isDelta(name: String?) = name?.contains(".delta.") ?: false
+
     fun getTimestamp(file: java.io.File): Long {
         return getTimestampFromFilename(file.name) ?: file.lastModified()
     }
@@ -3,14 +3,18 @@ package org.tasks.backup
 import android.app.Activity
 import android.app.ProgressDialog
 import android.app.backup.BackupManager
+import android.content.ContentResolver
 import android.content.Context
 import android.net.Uri
 import android.os.Handler
+import androidx.documentfile.provider.DocumentFile
+import com.google.common.io.ByteStreams
 import com.google.common.io.Files
 import com.google.gson.Gson
 import com.google.gson.GsonBuilder
+import com.google.gson.stream.JsonWriter
+import com.todoroo.andlib.utility.DateUtilities
 import com.todoroo.andlib.utility.DialogUtilities
-import com.todoroo.astrid.data.Task
 import org.tasks.BuildConfig
 import org.tasks.R
 import org.tasks.backup.BackupContainer.TaskBackup
@@ -22,11 +26,13 @@ import org.tasks.files.FileHelper
 import org.tasks.jobs.WorkManager
 import org.tasks.preferences.Preferences
 import timber.log.Timber
+import java.io.BufferedWriter
 import java.io.File
 import java.io.IOException
 import java.io.OutputStream
 import java.io.OutputStreamWriter
 import java.nio.charset.Charset
+import java.util.zip.GZIPOutputStream
 import javax.inject.Inject
 
 class TasksJsonExporter @Inject constructor(
@@ -69,15 +75,13 @@ class TasksJsonExporter @Inject constructor(
 
     private suspend fun runBackup(exportType: ExportType) {
         try {
+            if (exportType == ExportType.EXPORT_TYPE_SERVICE &&
+                    preferences.getBoolean(R.string.p_backups_incremental, false)) {
+                runIncrementalBackup()
+                return
+            }
             val filename = getFileName(exportType)
-            val tasks = taskDao.getAll()
-            val file = File(String.format("%s/%s", context!!.filesDir, BackupConstants.INTERNAL_BACKUP))
-            file.delete()
-            file.createNewFile()
-            val internalStorageBackup = Uri.fromFile(file)
-            val os = context!!.contentResolver.openOutputStream(internalStorageBackup)
-            doTasksExport(os, tasks)
-            os!!.close()
+            val internalStorageBackup = writeInternalBackup()
             val externalStorageBackup = FileHelper.newFile(
                     context!!,
                     preferences.backupDirectory!!,
@@ -103,47 +107,186 @@ class TasksJsonExporter @Inject constructor(
     }
 
     @Throws(IOException::class)
-    private suspend fun doTasksExport(os: OutputStream?, tasks: List<Task>) {
-        val taskBackups: MutableList<TaskBackup> = ArrayList()
-        for (task in tasks) {
-            setProgress(taskBackups.size, tasks.size)
-            val taskId = task.id
-            val caldavTasks = caldavDao.getTasks(taskId)
-            taskBackups.add(
-                    TaskBackup(
-                        task,
-                        alarmDao.getAlarms(taskId),
-                        locationDao.getGeofencesForTask(taskId),
-                        tagDao.getTagsForTask(taskId),
-                        userActivityDao.getComments(taskId),
-                        taskAttachmentDao.getAttachmentsForTask(taskId),
-                        caldavTasks,
-                        vtodoCache.getVtodo( caldavTasks.firstOrNull { !it.isDeleted() })
-                    ))
-        }
-        val data: MutableMap<String, Any> = HashMap()
-        data["version"] = BuildConfig.VERSION_CODE
-        data["timestamp"] = System.currentTimeMillis()
-        data["data"] = BackupContainer(
-                taskBackups,
-                locationDao.getPlaces(),
-                tagDataDao.getAll(),
-                filterDao.getFilters(),
-                caldavDao.getAccounts(),
-                caldavDao.getCalendars(),
-                taskListMetadataDao.getAll(),
-                taskAttachmentDao.getAttachments(),
-                preferences.getPrefs(Integer::class.java),
-                preferences.getPrefs(java.lang.Long::class.java),
-                preferences.getPrefs(String::class.java),
-                preferences.getPrefs(java.lang.Boolean::class.java),
-                preferences.getPrefs(java.util.Set::class.java),
+    private suspend fun writeInternalBackup(): Uri {
+        val file = File(String.format("%s/%s", context!!.filesDir, BackupConstants.INTERNAL_BACKUP))
+        file.delete()
+        file.createNewFile()
+        val internalStorageBackup = Uri.fromFile(file)
+        val os = context!!.contentResolver.openOutputStream(internalStorageBackup)
+        doTasksExport(os!!)
+        os.close()
+        return internalStorageBackup
+    }
+
+    /**
+     * Writes a compressed full backup if the current one is older than [FULL_BACKUP_INTERVAL] or
+     * missing, otherwise a compressed delta with the tasks that changed since the previous backup.
+     * The uncompressed internal copy used by Android backup is only refreshed with full backups
+     */
+    @Throws(IOException::class)
+    private suspend fun runIncrementalBackup() {
+        val now = System.currentTimeMillis()
+        val base = preferences.getStringValue(R.string.p_backups_incremental_base)
+        val since = preferences.getLong(R.string.p_backups_incremental_since, 0L)
+        val delta = base?.isNotBlank() == true
+                && since > 0
+                && BackupConstants.getTimestampFromFilename(base)?.let { now - it < FULL_BACKUP_INTERVAL } == true
+                && backupExists(base)
+        val filename = String.format(
+                if (delta) BackupConstants.DELTA_FILE_NAME else BackupConstants.BACKUP_FILE_NAME,
+                dateForExport
         )
-        val out = OutputStreamWriter(os, UTF_8)
+        val externalStorageBackup = FileHelper.newFile(
+                context!!,
+                preferences.backupDirectory!!,
+                MIME_GZIP,
+                filename.removeSuffix(EXTENSION),
+                EXTENSION + BackupConstants.GZIP_EXTENSION)
+        val os = GZIPOutputStream(context!!.contentResolver.openOutputStream(externalStorageBackup)!!)
+        if (delta) {
+            doTasksExport(os, since, base)
+        } else {
+            context!!.contentResolver.openInputStream(writeInternalBackup())!!.use {
+                ByteStreams.copy(it, os)
+            }
+            os.close()
+            preferences.setString(
+                    R.string.p_backups_incremental_base,
+                    FileHelper.getFilename(context!!, externalStorageBackup))
+            BackupManager(context).dataChanged()
+        }
+        preferences.setLong(R.string.p_backups_incremental_since, now)
+        workManager.scheduleDriveUpload(externalStorageBackup, true)
+    }
+
+    private fun backupExists(name: String): Boolean {
+        val uri = preferences.backupDirectory ?: return false
+        return when (uri.scheme) {
+            ContentResolver.SCHEME_CONTENT ->
+                DocumentFile.fromTreeUri(context!!, uri)?.findFile(name)?.exists() == true
+            ContentResolver.SCHEME_FILE -> File(uri.path, name).exists()
+            else -> false
+        }
+    }
+
+    /**
+     * Streams the backup to [os] instead of building it in memory. Tasks are read in chunks ordered
+     * by id, with one query per related table for each chunk. If [since] is set only tasks that
+     * changed after it are written, and [base] names the full backup that they apply to
+     */
+    @Throws(IOException::class)
+    private suspend fun doTasksExport(os: OutputStream, since: Long? = null, base: String? = null) {
         val gson = if (BuildConfig.DEBUG) GsonBuilder().setPrettyPrinting().create() else Gson()
-        out.write(gson.toJson(data))
-        out.close()
-        exportCount = taskBackups.size
+        val writer = gson.newJsonWriter(BufferedWriter(OutputStreamWriter(os, UTF_8)))
+        writer.beginObject()
+        writer.name("version").value(BuildConfig.VERSION_CODE)
+        writer.name("timestamp").value(System.currentTimeMillis())
+        if (since != null) {
+            writer.name("base").value(base)
+            writer.name("since").value(since)
+        }
+        writer.name("data").beginObject()
+        writer.name("tasks").beginArray()
+        exportCount = writeTasks(gson, writer, since)
+        writer.endArray()
+        gson.write(writer, "places", locationDao.getPlaces())
+        gson.write(writer, "tags", tagDataDao.getAll())
+        gson.write(writer, "filters", filterDao.getFilters())
+        gson.write(writer, "caldavAccounts", caldavDao.getAccounts())
+        gson.write(writer, "caldavCalendars", caldavDao.getCalendars())
+        gson.write(writer, "taskListMetadata", taskListMetadataDao.getAll())
+        gson.write(writer, "taskAttachments", taskAttachmentDao.getAttachments())
+        gson.write(writer, "intPrefs", preferences.getPrefs(Integer::class.java))
+        gson.write(writer, "longPrefs", preferences.getPrefs(java.lang.Long::class.java))
+        gson.write(writer, "stringPrefs", preferences.getPrefs(String::class.java))
+        gson.write(writer, "boolPrefs", preferences.getPrefs(java.lang.Boolean::class.java))
+        gson.write(writer, "setPrefs", preferences.getPrefs(java.util.Set::class.java))
+        gson.write(writer, "googleTaskAccounts", emptyList<Any>())
+        gson.write(writer, "googleTaskLists", emptyList<Any>())
+        writer.endObject()
+        writer.endObject()
+        writer.close()
+    }
+
+    private suspend fun writeTasks(gson: Gson, writer: JsonWriter, since: Long?): Int {
+        val total = taskDao.count()
+        val calendars = caldavDao.getCalendars().mapNotNull { it.uuid }.toSet()
+        var count = 0
+        var after = 0L
+        while (true) {
+            val tasks = if (since == null) {
+                taskDao.getTasksAfter(after, EXPORT_CHUNK_SIZE)
+            } else {
+                taskDao.getTasksChangedAfter(since, after, EXPORT_CHUNK_SIZE)
+            }
+            if (tasks.isEmpty()) {
+                break
+            }
+            val from = after
+            val to = tasks.last().id
+            // changed tasks are sparse, so look up their rows by id instead of by range
+            val ids = tasks.map { it.id }
+            val alarms = (if (since == null) alarmDao.getAlarmsInRange(from, to) else alarmDao.getAlarms(ids))
+                    .groupBy { it.task }
+            val geofences = (if (since == null) locationDao.getGeofencesInRange(from, to) else locationDao.getGeofences(ids).map { it.geofence })
+                    .groupBy { it.task }
+            val tags = (if (since == null) tagDao.getTagsInRange(from, to) else tagDao.getTagsForTasks(ids))
+                    .groupBy { it.task }
+            val comments = (if (since == null) userActivityDao.getCommentsInRange(from, to) else userActivityDao.getCommentsForTasks(tasks.mapNotNull { it.remoteId }))
+                    .groupBy { it.targetId }
+            val attachments = (if (since == null) taskAttachmentDao.getAttachmentsInRange(from, to) else taskAttachmentDao.getAttachmentsForTasks(ids))
+                    .groupBy { it.task }
+            val caldavTasks = (if (since == null) caldavDao.getTasksInRange(from, to) else caldavDao.getTasksIncludingDeleted(ids))
+                    .groupBy { it.task }
+            val vtodos = getVtodos(caldavTasks.values.mapNotNull { it.firstOrNull { !it.isDeleted() } }, calendars)
+            for (task in tasks) {
+                setProgress(count, total)
+                val taskId = task.id
+                val caldav = caldavTasks[taskId] ?: emptyList()
+                gson.toJson(
+                        TaskBackup(
+                                task,
+                                alarms[taskId] ?: emptyList(),
+                                geofences[taskId] ?: emptyList(),
+                                tags[taskId] ?: emptyList(),
+                                comments[task.remoteId] ?: emptyList(),
+                                attachments[taskId] ?: emptyList(),
+                                caldav,
+                                caldav.firstOrNull { !it.isDeleted() }?.let { vtodos[it.calendar to it.`object`] },
+                        ),
+                        TaskBackup::class.java,
+                        writer
+                )
+                count++
+            }
+            writer.flush()
+            after = to
+        }
+        return count
+    }
+
+    /** @return vtodos keyed by (calendar, object) */
+    private suspend fun getVtodos(
+            caldavTasks: List<CaldavTask>,
+            calendars: Set<String>,
+    ): Map<Pair<String?, String?>, String> =
+            caldavTasks
+                    .filter { calendars.contains(it.calendar) && it.`object`?.isNotBlank() == true }
+                    .groupBy({ it.calendar!! }, { it.`object`!! })
+                    .flatMap { (calendar, objects) ->
+                        vtodoCache
+                                .getVtodos(calendar, objects)
+                                .map { (obj, vtodo) -> (calendar to obj) to vtodo }
+                    }
+                    .toMap()
+
+    private fun Gson.write(writer: JsonWriter, name: String, value: Any?) {
+        writer.name(name)
+        if (value == null) {
+            writer.nullValue()
+        } else {
+            toJson(value, value.javaClass, writer)
+        }
     }
 
     private fun onFinishExport(outputFile: String) = post {
@@ -170,7 +313,10 @@ class TasksJsonExporter @Inject constructor(
     companion object {
         val UTF_8: Charset = Charset.forName("UTF-8")
         private const val MIME = "application/json"
+        private const val MIME_GZIP = "application/gzip"
         private const val EXTENSION = ".json"
+        private const val EXPORT_CHUNK_SIZE = 500
+        private const val FULL_BACKUP_INTERVAL = DateUtilities.ONE_WEEK
         private val dateForExport: String
             get() = newDateTime().toString("yyyyMMdd'T'HHmm")
     }
@@ -1,11 +1,17 @@
 package org.tasks.backup
 
 import android.app.ProgressDialog
+import android.content.ContentResolver
 import android.content.Context
 import android.net.Uri
 import android.os.Handler
+import androidx.documentfile.provider.DocumentFile
+import androidx.room.withTransaction
 import com.google.gson.Gson
+import com.google.gson.JsonElement
 import com.google.gson.JsonObject
+import com.google.gson.stream.JsonReader
+import com.todoroo.astrid.dao.Database
 import com.todoroo.astrid.dao.TaskDao
 import com.todoroo.astrid.data.Task
 import com.todoroo.astrid.service.TaskCreator.Companion.getDefaultAlarms
@@ -18,6 +24,7 @@ import com.todoroo.astrid.service.Upgrader.Companion.V6_4
 import com.todoroo.astrid.service.Upgrader.Companion.getAndroidColor
 import org.tasks.LocalBroadcastManager
 import org.tasks.R
+import org.tasks.backup.BackupContainer.TaskBackup
 import org.tasks.caldav.VtodoCache
 import org.tasks.data.AlarmDao
 import org.tasks.data.Attachment
@@ -30,22 +37,26 @@ import org.tasks.data.FilterDao
 import org.tasks.data.Geofence
 import org.tasks.data.LocationDao
 import org.tasks.data.Place
-import org.tasks.data.Tag
 import org.tasks.data.TagDao
 import org.tasks.data.TagData
 import org.tasks.data.TagDataDao
+import org.tasks.data.TaskAttachment
 import org.tasks.data.TaskAttachmentDao
 import org.tasks.data.TaskListMetadataDao
 import org.tasks.data.UserActivityDao
 import org.tasks.db.Migrations.repeatFrom
 import org.tasks.db.Migrations.withoutFrom
+import org.tasks.files.FileHelper
 import org.tasks.filters.FilterCriteriaProvider
 import org.tasks.preferences.Preferences
 import timber.log.Timber
+import java.io.BufferedInputStream
+import java.io.File
 import java.io.FileNotFoundException
 import java.io.IOException
 import java.io.InputStream
 import java.io.InputStreamReader
+import java.util.zip.GZIPInputStream
 import javax.inject.Inject
 
 class TasksJsonImporter @Inject constructor(
@@ -64,6 +75,7 @@ class TasksJsonImporter @Inject constructor(
         private val taskListMetadataDao: TaskListMetadataDao,
         private val vtodoCache: VtodoCache,
         private val filterCriteriaProvider: FilterCriteriaProvider,
+        private val database: Database,
     ) {
 
     private val result = ImportResult()
@@ -76,201 +88,33 @@ class TasksJsonImporter @Inject constructor(
         handler.post { progressDialog.setMessage(message) }
     }
 
+    /**
+     * Imports [backupFile]. If it is a delta then the older deltas and the full backup it was based
+     * on are read from the backup directory and replayed from newest to oldest, so that the latest
+     * copy of each task wins
+     */
     suspend fun importTasks(context: Context, backupFile: Uri?, progressDialog: ProgressDialog?): ImportResult {
         val handler = Handler(context.mainLooper)
         val gson = Gson()
-        val `is`: InputStream? = try {
-            context.contentResolver.openInputStream(backupFile!!)
-        } catch (e: FileNotFoundException) {
-            throw IllegalStateException(e)
-        }
-        val reader = InputStreamReader(`is`, TasksJsonExporter.UTF_8)
-        val input = gson.fromJson(reader, JsonObject::class.java)
         try {
-            val data = input["data"]
-            val version = input["version"].asInt
-            val backupContainer = gson.fromJson(data, BackupContainer::class.java)
-            backupContainer.tags?.forEach { tagData ->
-                findTagData(tagData)?.let {
-                    return@forEach
-                }
-                tagData.setColor(themeToColor(context, version, tagData.getColor()!!))
-                tagDataDao.createNew(tagData)
-            }
-            backupContainer.googleTaskAccounts?.forEach { googleTaskAccount ->
-                if (caldavDao.getAccount(TYPE_GOOGLE_TASKS, googleTaskAccount.account!!) == null) {
-                    caldavDao.insert(
-                        CaldavAccount().apply {
-                            accountType = TYPE_GOOGLE_TASKS
-                            uuid = googleTaskAccount.account
-                            name = googleTaskAccount.account
-                            username = googleTaskAccount.account
-                        }
-                    )
-                }
-            }
-            backupContainer.places?.forEach { place ->
-                if (locationDao.getByUid(place.uid!!) == null) {
-                    locationDao.insert(place)
-                }
-            }
-            backupContainer.googleTaskLists?.forEach { googleTaskList ->
-                if (caldavDao.getCalendar(googleTaskList.remoteId!!) == null) {
-                    caldavDao.insert(
-                        CaldavCalendar(
-                            account = googleTaskList.account,
-                            uuid = googleTaskList.remoteId,
-                            color = themeToColor(context, version, googleTaskList.color ?: 0),
-
-                        )
-                    )
-                }
-            }
-            backupContainer
-                .filters
-                ?.onEach {
-                    if (version < Upgrade_13_2.VERSION) filterCriteriaProvider.rebuildFilter(it)
-                }
-                ?.forEach { filter ->
-                filter.setColor(themeToColor(context, version, filter.getColor()!!))
-                if (filterDao.getByName(filter.title!!) == null) {
-                    filterDao.insert(filter)
-                }
-            }
-            backupContainer.caldavAccounts?.forEach { account ->
-                if (caldavDao.getAccountByUuid(account.uuid!!) == null) {
-                    caldavDao.insert(account)
-                }
+            val header = open(context, backupFile!!).use { readHeader(gson, it) }
+            val version = header.version
+            val backupContainer = header.data
+            if (backupContainer == null) {
+                Timber.e("No data in %s", backupFile)
+                return result
             }
-            backupContainer.caldavCalendars?.forEach { calendar ->
-                if (caldavDao.getCalendarByUuid(calendar.uuid!!) == null) {
-                    caldavDao.insert(
-                        calendar.copy(color = themeToColor(context, version, calendar.color))
-                    )
-                }
-            }
-            backupContainer.taskListMetadata?.forEach { tlm ->
-                val id = tlm.filter.takeIf { it?.isNotBlank() == true } ?: tlm.tagUuid!!
-                if (taskListMetadataDao.fetchByTagOrFilter(id) == null) {
-                    taskListMetadataDao.insert(tlm)
-                }
-            }
-            backupContainer.taskAttachments?.forEach { attachment ->
-                if (taskAttachmentDao.getAttachment(attachment.remoteId) == null) {
-                    taskAttachmentDao.insert(attachment)
-                }
-            }
-            backupContainer.tasks?.forEach { backup ->
-                result.taskCount++
-                setProgressMessage(
-                        handler,
-                        progressDialog,
-                        context.getString(R.string.import_progress_read, result.taskCount))
-                val task = backup.task
-                taskDao.fetch(task.uuid)
-                        ?.let {
-                            result.skipCount++
-                            return@forEach
-                        }
-                if (true == backup.caldavTasks
-                                ?.filter { it.deleted == 0L }
-                                ?.any { caldavDao.getTask(it.calendar!!, it.`object`!!) != null }) {
-                    result.skipCount++
-                    return@forEach
-                }
-                task.suppressRefresh()
-                task.suppressSync()
-                taskDao.createNew(task)
-                val taskId = task.id
-                val taskUuid = task.uuid
-                for (alarm in backup.alarms) {
-                    alarm.task = taskId
-                    alarmDao.insert(alarm)
-                }
-                if (version < V12_4) {
-                    task.defaultReminders(task.ringFlags)
-                    alarmDao.insert(task.getDefaultAlarms())
-                    task.ringFlags = when {
-                        task.isNotifyModeFive -> Task.NOTIFY_MODE_FIVE
-                        task.isNotifyModeNonstop -> Task.NOTIFY_MODE_NONSTOP
-                        else -> 0
+            val lookups = Lookups()
+            importFile(context, gson, backupFile, header, lookups, handler, progressDialog)
+            header.base?.let { base ->
+                for (file in getChain(context, backupFile, base)) {
+                    val older = open(context, file).use { readHeader(gson, it) }
+                    if (older.data == null) {
+                        Timber.e("No data in %s", file)
+                        continue
                     }
-                    taskDao.save(task)
+                    importFile(context, gson, file, older, lookups, handler, progressDialog)
                 }
-                if (version < V12_8) {
-                    task.repeatFrom = task.recurrence.repeatFrom()
-                    task.recurrence = task.recurrence.withoutFrom()
-                }
-                for (comment in backup.comments) {
-                    comment.targetId = taskUuid
-                    if (version < V6_4) {
-                        comment.convertPictureUri()
-                    }
-                    userActivityDao.createNew(comment)
-                }
-                for (googleTask in backup.google) {
-                    caldavDao.insert(
-                        CaldavTask(
-                            task = taskId,
-                            calendar = googleTask.listId,
-                            remoteId = googleTask.remoteId,
-                            remoteOrder = googleTask.remoteOrder,
-                            remoteParent = googleTask.remoteParent,
-                            lastSync = googleTask.lastSync,
-                        )
-                    )
-                }
-                for (location in backup.locations) {
-                    val place = Place(
-                        longitude = location.longitude,
-                        latitude = location.latitude,
-                        name = location.name,
-                        address = location.address,
-                        url = location.url,
-                        phone = location.phone,
-                    )
-                    locationDao.insert(place)
-                    locationDao.insert(
-                        Geofence(
-                            task = taskId,
-                            place = place.uid,
-                            isArrival = location.arrival,
-                            isDeparture = location.departure,
-                        )
-                    )
-                }
-                for (tag in backup.tags) {
-                    val tagData = findTagData(tag) ?: continue
-                    tag.task = taskId
-                    tag.tagUid = tagData.remoteId
-                    tag.setTaskUid(taskUuid)
-                    tagDao.insert(tag)
-                }
-                backup.geofences?.forEach { geofence ->
-                    locationDao.insert(
-                        geofence.copy(task = taskId)
-                    )
-                }
-                backup.attachments
-                    ?.mapNotNull { taskAttachmentDao.getAttachment(it.attachmentUid) }
-                    ?.map {
-                        Attachment(
-                            task = taskId,
-                            fileId = it.id!!,
-                            attachmentUid = it.remoteId,
-                        )
-                    }
-                    ?.let { taskAttachmentDao.insert(it) }
-                backup.caldavTasks?.forEach { caldavTask ->
-                    caldavDao.insert(caldavTask.copy(task = taskId))
-                }
-                backup.vtodo?.let {
-                    val caldavTask =
-                        backup.caldavTasks?.firstOrNull { t -> !t.isDeleted() } ?: return@let
-                    val caldavCalendar = caldavDao.getCalendar(caldavTask.calendar!!) ?: return@let
-                    vtodoCache.putVtodo(caldavCalendar, caldavTask, it)
-                }
-                result.importCount++
             }
             caldavDao.updateParents()
             val ignoreKeys = ignorePrefs.map { context.getString(it) }
@@ -303,8 +147,6 @@ class TasksJsonImporter @Inject constructor(
             if (version < Upgrader.V9_6) {
                 taskMover.migrateLocalTasks()
             }
-            reader.close()
-            `is`!!.close()
         } catch (e: IOException) {
             Timber.e(e)
         }
@@ -312,13 +154,386 @@ class TasksJsonImporter @Inject constructor(
         return result
     }
 
-    private suspend fun findTagData(tagData: TagData) =
-            findTagData(tagData.remoteId!!, tagData.name!!)
+    /**
+     * The backup is read twice. The first pass loads everything except tasks, which are small and
+     * may appear after tasks in the file. The second pass streams tasks and commits them in batches.
+     * Tasks that already exist are skipped, so an interrupted import can be run again
+     */
+    private suspend fun importFile(
+            context: Context,
+            gson: Gson,
+            backupFile: Uri,
+            header: Header,
+            lookups: Lookups,
+            handler: Handler,
+            progressDialog: ProgressDialog?,
+    ) {
+        importContainer(context, header.version, header.data!!, lookups)
+        open(context, backupFile).use { reader ->
+            readTasks(gson, reader) { batch ->
+                database.withTransaction {
+                    importTasks(header.version, batch, lookups)
+                }
+                setProgressMessage(
+                        handler,
+                        progressDialog,
+                        context.getString(R.string.import_progress_read, result.taskCount))
+            }
+        }
+    }
+
+    /** @return older deltas and then the full backup that [backupFile] was based on, newest first */
+    private fun getChain(context: Context, backupFile: Uri, base: String): List<Uri> {
+        val files = getBackups(context)
+        val baseUri = files[base]
+        val baseTimestamp = BackupConstants.getTimestampFromFilename(base)
+        if (baseUri == null || baseTimestamp == null) {
+            Timber.w("%s not found, only importing changes", base)
+            return emptyList()
+        }
+        val name = FileHelper.getFilename(context, backupFile)
+        val timestamp = name?.let { BackupConstants.getTimestampFromFilename(it) } ?: Long.MAX_VALUE
+        return files
+                .mapNotNull { (file, uri) ->
+                    BackupConstants
+                            .getTimestampFromFilename(file)
+                            ?.takeIf { file != name && BackupConstants.isDelta(file) }
+                            ?.takeIf { it in (baseTimestamp + 1) until timestamp }
+                            ?.let { it to uri }
+                }
+                .sortedByDescending { it.first }
+                .map { it.second }
+                .plus(baseUri)
+    }
+
+    /** @return backups in the backup directory by file name */
+    private fun getBackups(context: Context): Map<String, Uri> {
+        val uri = preferences.backupDirectory
+        return when (uri?.scheme) {
+            ContentResolver.SCHEME_CONTENT ->
+                DocumentFile.fromTreeUri(context, uri)
+                        ?.listFiles()
+                        ?.filter { BackupConstants.isBackupFile(it.name) }
+                        ?.associate { it.name!! to it.uri }
+            ContentResolver.SCHEME_FILE ->
+                File(uri.path!!)
+                        .listFiles()
+                        ?.filter { BackupConstants.isBackupFile(it.name) }
+                        ?.associate { it.name to Uri.fromFile(it) }
+            else -> null
+        } ?: emptyMap()
+    }
+
+    /** Opens [backupFile], decompressing it if it starts with the gzip magic number */
+    private fun open(context: Context, backupFile: Uri): JsonReader {
+        val `is`: InputStream = try {
+            BufferedInputStream(context.contentResolver.openInputStream(backupFile)!!)
+        } catch (e: FileNotFoundException) {
+            throw IllegalStateException(e)
+        }
+        `is`.mark(2)
+        val magic = `is`.read() or (`is`.read() shl 8)
+        `is`.reset()
+        val input = if (magic == GZIPInputStream.GZIP_MAGIC) GZIPInputStream(`is`) else `is`
+        return JsonReader(InputStreamReader(input, TasksJsonExporter.UTF_8).buffered())
+    }
+
+    private class Header(val version: Int, val base: String?, val data: BackupContainer?)
+
+    /** @return backup version, base of a delta, and everything in data except tasks */
+    private fun readHeader(gson: Gson, reader: JsonReader): Header {
+        var version = 0
+        var base: String? = null
+        var data: BackupContainer? = null
+        reader.beginObject()
+        while (reader.hasNext()) {
+            when (reader.nextName()) {
+                "version" -> version = reader.nextInt()
+                "base" -> base = reader.nextString()
+                "data" -> {
+                    val json = JsonObject()
+                    reader.beginObject()
+                    while (reader.hasNext()) {
+                        val name = reader.nextName()
+                        if (name == "tasks") {
+                            reader.skipValue()
+                        } else {
+                            json.add(name, gson.fromJson(reader, JsonElement::class.java))
+                        }
+                    }
+                    reader.endObject()
+                    data = gson.fromJson(json, BackupContainer::class.java)
+                }
+                else -> reader.skipValue()
+            }
+        }
+        reader.endObject()
+        return Header(version, base, data)
+    }
+
+    /** Streams data.tasks in batches of [BATCH_SIZE] */
+    private suspend fun readTasks(
+            gson: Gson,
+            reader: JsonReader,
+            action: suspend (List<TaskBackup>) -> Unit,
+    ) {
+        reader.beginObject()
+        while (reader.hasNext()) {
+            if (reader.nextName() != "data") {
+                reader.skipValue()
+                continue
+            }
+            reader.beginObject()
+            while (reader.hasNext()) {
+                if (reader.nextName() != "tasks") {
+                    reader.skipValue()
+                    continue
+                }
+                reader.beginArray()
+                val batch = ArrayList<TaskBackup>()
+                while (reader.hasNext()) {
+                    batch.add(gson.fromJson(reader, TaskBackup::class.java))
+                    if (batch.size == BATCH_SIZE) {
+                        action(batch)
+                        batch.clear()
+                    }
+                }
+                if (batch.isNotEmpty()) {
+                    action(batch)
+                }
+                reader.endArray()
+            }
+            reader.endObject()
+        }
+        reader.endObject()
+    }
+
+    /** Rows that tasks refer to, loaded once instead of once per task */
+    private class Lookups {
+        /** uuids of tasks already read, from this file or from a newer delta */
+        val tasks = HashSet<String>()
+        private val tagsByUid = HashMap<String, TagData>()
+        private val tagsByName = HashMap<String, TagData>()
+        var calendars: Map<String, CaldavCalendar> = emptyMap()
+        var attachments: Map<String, TaskAttachment> = emptyMap()
+
+        fun findTagData(uid: String, name: String): TagData? =
+                tagsByUid[uid] ?: tagsByName[name.lowercase()]
+
+        fun add(tagData: TagData) {
+            tagData.remoteId?.let { tagsByUid[it] = tagData }
+            tagData.name?.let { tagsByName.putIfAbsent(it.lowercase(), tagData) }
+        }
+    }
+
+    private suspend fun importContainer(
+            context: Context,
+            version: Int,
+            backupContainer: BackupContainer,
+            lookups: Lookups,
+    ) {
+        tagDataDao.getAll().forEach { lookups.add(it) }
+        backupContainer.tags?.forEach { tagData ->
+            lookups.findTagData(tagData.remoteId!!, tagData.name!!)?.let {
+                return@forEach
+            }
+            tagData.setColor(themeToColor(context, version, tagData.getColor()!!))
+            tagDataDao.createNew(tagData)
+            lookups.add(tagData)
+        }
+        backupContainer.googleTaskAccounts?.forEach { googleTaskAccount ->
+            if (caldavDao.getAccount(TYPE_GOOGLE_TASKS, googleTaskAccount.account!!) == null) {
+                caldavDao.insert(
+                    CaldavAccount().apply {
+                        accountType = TYPE_GOOGLE_TASKS
+                        uuid = googleTaskAccount.account
+                        name = googleTaskAccount.account
+                        username = googleTaskAccount.account
+                    }
+                )
+            }
+        }
+        val places = locationDao.getPlaces().mapNotNullTo(HashSet()) { it.uid }
+        backupContainer.places?.forEach { place ->
+            if (places.add(place.uid!!)) {
+                locationDao.insert(place)
+            }
+        }
+        backupContainer.googleTaskLists?.forEach { googleTaskList ->
+            if (caldavDao.getCalendar(googleTaskList.remoteId!!) == null) {
+                caldavDao.insert(
+                    CaldavCalendar(
+                        account = googleTaskList.account,
+                        uuid = googleTaskList.remoteId,
+                        color = themeToColor(context, version, googleTaskList.color ?: 0),
+
+                    )
+                )
+            }
+        }
+        backupContainer
+            .filters
+            ?.onEach {
+                if (version < Upgrade_13_2.VERSION) filterCriteriaProvider.rebuildFilter(it)
+            }
+            ?.forEach { filter ->
+            filter.setColor(themeToColor(context, version, filter.getColor()!!))
+            if (filterDao.getByName(filter.title!!) == null) {
+                filterDao.insert(filter)
+            }
+        }
+        backupContainer.caldavAccounts?.forEach { account ->
+            if (caldavDao.getAccountByUuid(account.uuid!!) == null) {
+                caldavDao.insert(account)
+            }
+        }
+        backupContainer.caldavCalendars?.forEach { calendar ->
+            if (caldavDao.getCalendarByUuid(calendar.uuid!!) == null) {
+                caldavDao.insert(
+                    calendar.copy(color = themeToColor(context, version, calendar.color))
+                )
+            }
+        }
+        backupContainer.taskListMetadata?.forEach { tlm ->
+            val id = tlm.filter.takeIf { it?.isNotBlank() == true } ?: tlm.tagUuid!!
+            if (taskListMetadataDao.fetchByTagOrFilter(id) == null) {
+                taskListMetadataDao.insert(tlm)
+            }
+        }
+        backupContainer.taskAttachments?.forEach { attachment ->
+            if (taskAttachmentDao.getAttachment(attachment.remoteId) == null) {
+                taskAttachmentDao.insert(attachment)
+            }
+        }
+        lookups.calendars = caldavDao.getCalendars().filter { it.uuid != null }.associateBy { it.uuid!! }
+        lookups.attachments = taskAttachmentDao.getAttachments().associateBy { it.remoteId }
+    }
 
-    private suspend fun findTagData(tag: Tag) = findTagData(tag.tagUid!!, tag.name!!)
+    private suspend fun importTasks(version: Int, batch: List<TaskBackup>, lookups: Lookups) {
+        val existingTasks = taskDao.getRemoteIds(batch.map { it.task.uuid }).toSet()
+        val existingObjects = batch
+                .flatMap { it.caldavTasks ?: emptyList() }
+                .filter { it.deleted == 0L }
+                .groupBy({ it.calendar!! }, { it.`object`!! })
+                .flatMap { (calendar, objects) ->
+                    caldavDao
+                            .getCaldavTasksByObject(calendar, objects.distinct())
+                            .map { calendar to it.`object` }
+                }
+                .toHashSet()
+        for (backup in batch) {
+            val task = backup.task
+            if (!lookups.tasks.add(task.uuid)) {
+                continue
+            }
+            result.taskCount++
+            val caldavTasks = backup.caldavTasks?.filter { it.deleted == 0L } ?: emptyList()
+            if (existingTasks.contains(task.uuid) ||
+                    caldavTasks.any { existingObjects.contains(it.calendar to it.`object`) }) {
+                result.skipCount++
+                continue
+            }
+            caldavTasks.forEach { existingObjects.add(it.calendar to it.`object`) }
+            importTask(version, backup, lookups)
+            result.importCount++
+        }
+    }
 
-    private suspend fun findTagData(uid: String, name: String): TagData? =
-            tagDataDao.getByUuid(uid) ?: tagDataDao.getTagByName(name)
+    private suspend fun importTask(version: Int, backup: TaskBackup, lookups: Lookups) {
+        val task = backup.task
+        task.suppressRefresh()
+        task.suppressSync()
+        taskDao.createNew(task)
+        val taskId = task.id
+        val taskUuid = task.uuid
+        for (alarm in backup.alarms) {
+            alarm.task = taskId
+            alarmDao.insert(alarm)
+        }
+        if (version < V12_4) {
+            task.defaultReminders(task.ringFlags)
+            alarmDao.insert(task.getDefaultAlarms())
+            task.ringFlags = when {
+                task.isNotifyModeFive -> Task.NOTIFY_MODE_FIVE
+                task.isNotifyModeNonstop -> Task.NOTIFY_MODE_NONSTOP
+                else -> 0
+            }
+            taskDao.save(task)
+        }
+        if (version < V12_8) {
+            task.repeatFrom = task.recurrence.repeatFrom()
+            task.recurrence = task.recurrence.withoutFrom()
+        }
+        for (comment in backup.comments) {
+            comment.targetId = taskUuid
+            if (version < V6_4) {
+                comment.convertPictureUri()
+            }
+            userActivityDao.createNew(comment)
+        }
+        for (googleTask in backup.google) {
+            caldavDao.insert(
+                CaldavTask(
+                    task = taskId,
+                    calendar = googleTask.listId,
+                    remoteId = googleTask.remoteId,
+                    remoteOrder = googleTask.remoteOrder,
+                    remoteParent = googleTask.remoteParent,
+                    lastSync = googleTask.lastSync,
+                )
+            )
+        }
+        for (location in backup.locations) {
+            val place = Place(
+                longitude = location.longitude,
+                latitude = location.latitude,
+                name = location.name,
+                address = location.address,
+                url = location.url,
+                phone = location.phone,
+            )
+            locationDao.insert(place)
+            locationDao.insert(
+                Geofence(
+                    task = taskId,
+                    place = place.uid,
+                    isArrival = location.arrival,
+                    isDeparture = location.departure,
+                )
+            )
+        }
+        for (tag in backup.tags) {
+            val tagData = lookups.findTagData(tag.tagUid!!, tag.name!!) ?: continue
+            tag.task = taskId
+            tag.tagUid = tagData.remoteId
+            tag.setTaskUid(taskUuid)
+            tagDao.insert(tag)
+        }
+        backup.geofences?.forEach { geofence ->
+            locationDao.insert(
+                geofence.copy(task = taskId)
+            )
+        }
+        backup.attachments
+            ?.mapNotNull { lookups.attachments[it.attachmentUid] }
+            ?.map {
+                Attachment(
+                    task = taskId,
+                    fileId = it.id!!,
+                    attachmentUid = it.remoteId,
+                )
+            }
+            ?.let { taskAttachmentDao.insert(it) }
+        backup.caldavTasks?.forEach { caldavTask ->
+            caldavDao.insert(caldavTask.copy(task = taskId))
+        }
+        backup.vtodo?.let {
+            val caldavTask =
+                backup.caldavTasks?.firstOrNull { t -> !t.isDeleted() } ?: return@let
+            val caldavCalendar = lookups.calendars[caldavTask.calendar] ?: return@let
+            vtodoCache.putVtodo(caldavCalendar, caldavTask, it)
+        }
+    }
 
     private fun themeToColor(context: Context, version: Int, color: Int) =
             if (version < Upgrader.V8_2) getAndroidColor(context, color) else color
@@ -342,9 +557,13 @@ class TasksJsonImporter @Inject constructor(
     }
 
     companion object {
+        private const val BATCH_SIZE = 250
+
         private val ignorePrefs = intArrayOf(
                 R.string.p_current_version,
-                R.string.p_backups_android_backup_last
+                R.string.p_backups_android_backup_last,
+                R.string.p_backups_incremental_base,
+                R.string.p_backups_incremental_since,
         )
     }
 }
\ No newline at end of file
@@ -11,9 +11,12 @@ import org.tasks.R
 import org.tasks.analytics.Constants
 import org.tasks.data.CaldavAccount
 import timber.log.Timber
+import javax.inject.Inject
 
 @AndroidEntryPoint
 class CaldavAccountSettingsActivity : BaseCaldavAccountSettingsActivity(), Toolbar.OnMenuItemClickListener {
+    @Inject lateinit var provider: CaldavClientProvider
+
     private val viewModel: CaldavAccountViewModel by viewModels()
 
     override fun onCreate(savedInstanceState: Bundle?) {
@@ -65,6 +68,7 @@ class CaldavAccountSettingsActivity : BaseCaldavAccountSettingsActivity(), Toolb
             caldavAccount!!.password = encryption.encrypt(newPassword!!)
         }
         caldavDao.update(caldavAccount!!)
+        provider.invalidate(caldavAccount!!)
         setResult(Activity.RESULT_OK)
         finish()
     }
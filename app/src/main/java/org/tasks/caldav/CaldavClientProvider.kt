@@ -14,7 +14,9 @@ import org.tasks.http.HttpClientFactory
 import org.tasks.security.KeyStoreEncryption
 import java.util.concurrent.TimeUnit
 import javax.inject.Inject
+import javax.inject.Singleton
 
+@Singleton
 class CaldavClientProvider @Inject constructor(
         @ApplicationContext private val context: Context,
         private val encryption: KeyStoreEncryption,
@@ -23,6 +25,15 @@ class CaldavClientProvider @Inject constructor(
 ) {
     private val tasksUrl = context.getString(R.string.tasks_caldav_url)
 
+    private data class ClientKey(
+        val username: String?,
+        val password: String?,
+        val url: String?,
+    )
+
+    /** account uuid -> client built for the credentials in the key */
+    private val clients = HashMap<String, Pair<ClientKey, OkHttpClient>>()
+
     suspend fun forUrl(
             url: String?,
             username: String? = null,
@@ -47,12 +58,7 @@ class CaldavClientProvider @Inject constructor(
     }
 
     suspend fun forAccount(account: CaldavAccount, url: String? = account.url): CaldavClient {
-        val auth = getAuthInterceptor(
-                account.username,
-                account.getPassword(encryption),
-                account.url
-        )
-        val client = createHttpClient(auth)
+        val client = getHttpClient(account)
         return if (account.isTasksOrg) {
             TasksClient(this, client, url?.toHttpUrlOrNull())
         } else {
@@ -60,6 +66,43 @@ class CaldavClientProvider @Inject constructor(
         }
     }
 
+    /**
+     * Reuse the client from previous syncs until the account's credentials change, so that
+     * interceptors and cookie jars aren't rebuilt and connections stay pooled
+     */
+    private suspend fun getHttpClient(account: CaldavAccount): OkHttpClient {
+        val key = ClientKey(account.username, account.password, account.url)
+        val uuid = account.uuid ?: return createHttpClient(key)
+        synchronized(clients) {
+            clients[uuid]?.takeIf { it.first == key }?.let { return it.second }
+        }
+        return createHttpClient(key).also {
+            synchronized(clients) { clients[uuid] = key to it }
+        }
+    }
+
+    private suspend fun createHttpClient(key: ClientKey) =
+        createHttpClient(
+            getAuthInterceptor(
+                key.username,
+                key.password?.let { encryption.decrypt(it) },
+                key.url
+            )
+        )
+
+    /** Forget the cached client for [account], after it was removed or its credentials changed */
+    fun invalidate(account: CaldavAccount) {
+        account.uuid?.let { synchronized(clients) { clients.remove(it) } }
+    }
+
+    /** Forget every cached client, e.g. after certificate trust has changed */
+    suspend fun invalidate() {
+        synchronized(clients) { clients.clear() }
+        httpClientFactory.invalidate()
+    }
+
+    fun logConnectionStats() = httpClientFactory.logConnectionStats()
+
     private fun getAuthInterceptor(
             username: String?,
             password: String?,
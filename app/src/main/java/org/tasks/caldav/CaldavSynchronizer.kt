@@ -16,6 +16,16 @@ import com.todoroo.astrid.data.Task
 import com.todoroo.astrid.helper.UUIDHelper
 import com.todoroo.astrid.service.TaskDeleter
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.supervisorScope
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
 import net.fortuna.ical4j.model.property.ProdId
 import okhttp3.Headers
 import okhttp3.HttpUrl
@@ -58,6 +68,7 @@ import java.net.SocketTimeoutException
 import java.net.UnknownHostException
 import java.security.KeyManagementException
 import java.security.NoSuchAlgorithmException
+import java.util.Collections
 import javax.inject.Inject
 import javax.net.ssl.SSLException
 
@@ -73,7 +84,11 @@ class CaldavSynchronizer @Inject constructor(
         private val iCal: iCalendar,
         private val principalDao: PrincipalDao,
         private val vtodoCache: VtodoCache,
+        private val parsedVtodos: ParsedVtodoCache,
 ) {
+    /** remote changes are fetched concurrently but applied one batch at a time */
+    private val applyLock = Mutex()
+
     suspend fun sync(account: CaldavAccount) {
         Thread.currentThread().contextClassLoader = context.classLoader
 
@@ -94,6 +109,7 @@ class CaldavSynchronizer @Inject constructor(
         } catch (e: SocketTimeoutException) {
             setError(account, e.message)
         } catch (e: SSLException) {
+            provider.invalidate()
             setError(account, e.message)
         } catch (e: ConnectException) {
             setError(account, e.message)
@@ -121,6 +137,9 @@ class CaldavSynchronizer @Inject constructor(
         } catch (e: Exception) {
             setError(account, e.message)
             firebase.reportException(e)
+        } finally {
+            provider.logConnectionStats()
+            parsedVtodos.logStats()
         }
     }
 
@@ -143,51 +162,82 @@ class CaldavSynchronizer @Inject constructor(
         for (calendar in caldavDao.findDeletedCalendars(account.uuid!!, ArrayList(urls))) {
             taskDeleter.delete(calendar)
         }
-        for (resource in resources) {
-            val url = resource.href.toString()
-            var calendar = caldavDao.getCalendarByUrl(account.uuid!!, url)
-            val remoteName = resource[DisplayName::class.java]!!.displayName
-            val calendarColor = resource[CalendarColor::class.java]
-            val access = resource.accessLevel
-            if (access == ACCESS_UNKNOWN) {
-                firebase.logEvent(
-                    R.string.event_sync_unknown_access,
-                    R.string.param_type to
-                            (resource[ShareAccess::class.java]?.access?.toString() ?: "???")
-                )
-            }
-            val color = calendarColor?.color ?: 0
-            if (calendar == null) {
-                calendar = CaldavCalendar(
-                    name = remoteName,
-                    account = account.uuid,
-                    url = url,
-                    uuid = UUIDHelper.newUUID(),
-                    color = color,
-                    access = access,
-                )
-                caldavDao.insert(calendar)
-            } else if (calendar.name != remoteName
-                    || calendar.color != color
-                    || calendar.access != access
-            ) {
-                calendar.color = color
-                calendar.name = remoteName
-                calendar.access = access
-                caldavDao.update(calendar)
-                localBroadcastManager.broadcastRefreshList()
-            }
-            resource
-                .principals(account, calendar)
-                .let { principalDao.deleteRemoved(calendar.id, it.map(PrincipalAccess::id)) }
-            fetchChanges(account, calendar, resource, caldavClient.httpClient)
-            if (calendar.access != ACCESS_READ_ONLY) {
-                pushLocalChanges(account, calendar, caldavClient.httpClient, resource.href)
+        val calendars = Semaphore(MAX_CALENDARS)
+        val multigets = Semaphore(MAX_MULTIGETS)
+        // a failing calendar must not cancel the others, so failures are
+        // collected and the first one is reported once every calendar is done
+        val errors = Collections.synchronizedList(ArrayList<Exception>())
+        supervisorScope {
+            for (resource in resources) {
+                launch {
+                    try {
+                        calendars.withPermit {
+                            syncCalendar(account, caldavClient, resource, multigets)
+                        }
+                    } catch (e: CancellationException) {
+                        throw e
+                    } catch (e: Exception) {
+                        Timber.e(e, "Failed to sync %s", resource.href)
+                        errors.add(e)
+                    }
+                }
             }
         }
+        errors.firstOrNull()?.let { first ->
+            errors.drop(1).forEach { first.addSuppressed(it) }
+            throw first
+        }
         setError(account, "")
     }
 
+    private suspend fun syncCalendar(
+        account: CaldavAccount,
+        caldavClient: CaldavClient,
+        resource: Response,
+        multigets: Semaphore,
+    ) {
+        val url = resource.href.toString()
+        var calendar = caldavDao.getCalendarByUrl(account.uuid!!, url)
+        val remoteName = resource[DisplayName::class.java]!!.displayName
+        val calendarColor = resource[CalendarColor::class.java]
+        val access = resource.accessLevel
+        if (access == ACCESS_UNKNOWN) {
+            firebase.logEvent(
+                R.string.event_sync_unknown_access,
+                R.string.param_type to
+                        (resource[ShareAccess::class.java]?.access?.toString() ?: "???")
+            )
+        }
+        val color = calendarColor?.color ?: 0
+        if (calendar == null) {
+            calendar = CaldavCalendar(
+                name = remoteName,
+                account = account.uuid,
+                url = url,
+                uuid = UUIDHelper.newUUID(),
+                color = color,
+                access = access,
+            )
+            caldavDao.insert(calendar)
+        } else if (calendar.name != remoteName
+                || calendar.color != color
+                || calendar.access != access
+        ) {
+            calendar.color = color
+            calendar.name = remoteName
+            calendar.access = access
+            caldavDao.update(calendar)
+            localBroadcastManager.broadcastRefreshList()
+        }
+        resource
+            .principals(account, calendar)
+            .let { principalDao.deleteRemoved(calendar.id, it.map(PrincipalAccess::id)) }
+        fetchChanges(account, calendar, resource, caldavClient.httpClient, multigets)
+        if (calendar.access != ACCESS_READ_ONLY) {
+            pushLocalChanges(account, calendar, caldavClient.httpClient, resource.href)
+        }
+    }
+
     private fun getServerType(account: CaldavAccount, headers: Headers) = when {
         account.isTasksOrg -> SERVER_TASKS
         headers["DAV"]?.contains("oc-resource-sharing") == true -> SERVER_OWNCLOUD
@@ -209,71 +259,246 @@ class CaldavSynchronizer @Inject constructor(
         account: CaldavAccount,
         caldavCalendar: CaldavCalendar,
         resource: Response,
-        httpClient: OkHttpClient
+        httpClient: OkHttpClient,
+        multigets: Semaphore,
     ) {
-        val httpUrl = resource.href
-        val remoteCtag = resource.ctag
-        if (caldavCalendar.ctag?.equals(remoteCtag) == true) {
+        if (caldavCalendar.ctag?.equals(resource.ctag) == true) {
             Timber.d("%s up to date", caldavCalendar.name)
             return
         }
         Timber.d("updating $caldavCalendar")
+        val changed = HashSet<Long>()
+        try {
+            downloadChanges(account, caldavCalendar, resource, httpClient, multigets, changed)
+        } finally {
+            if (changed.isNotEmpty()) {
+                localBroadcastManager.broadcastRefresh(changed)
+            }
+        }
+    }
+
+    /** @param changed receives the ids of the tasks that were written */
+    private suspend fun downloadChanges(
+        account: CaldavAccount,
+        caldavCalendar: CaldavCalendar,
+        resource: Response,
+        httpClient: OkHttpClient,
+        multigets: Semaphore,
+        changed: MutableSet<Long>,
+    ) {
+        val httpUrl = resource.href
+        val remoteCtag = resource.ctag
         val davCalendar = DavCalendar(httpClient, httpUrl)
-        val members = ArrayList<Response>()
-        davCalendar.calendarQuery("VTODO", null, null) { response, relation ->
-            if (relation == HrefRelation.MEMBER) {
-                members.add(response)
+        val remoteSyncToken = resource[SyncToken::class.java]?.token
+        val syncToken = caldavCalendar.syncToken
+        val delta = if (syncToken.isNullOrBlank() || remoteSyncToken.isNullOrBlank()) {
+            null
+        } else {
+            davCalendar.syncCollection(syncToken)
+        }
+        if (delta != null) {
+            Timber.d("sync-collection: %s changed, %s deleted", delta.changed.size, delta.deleted.size)
+            if (!fetchAndApply(
+                    account,
+                    caldavCalendar,
+                    davCalendar,
+                    delta.changed.filterChanged(caldavCalendar),
+                    multigets,
+                    changed,
+                    skipInvalid = true,
+                )) {
+                return
             }
+            delta.deleted
+                .takeIf { it.isNotEmpty() }
+                ?.let {
+                    Timber.d("DELETED $it")
+                    taskDeleter.delete(caldavDao.getTasks(caldavCalendar.uuid!!, it))
+                }
+            caldavCalendar.syncToken = delta.syncToken
+        } else {
+            val members = ArrayList<Response>()
+            davCalendar.calendarQuery("VTODO", null, null) { response, relation ->
+                if (relation == HrefRelation.MEMBER) {
+                    members.add(response)
+                }
+            }
+            if (!fetchAndApply(account, caldavCalendar, davCalendar, members.filterChanged(caldavCalendar), multigets, changed)) {
+                return
+            }
+            caldavDao
+                    .getRemoteObjects(caldavCalendar.uuid!!)
+                    .subtract(members.map { it.hrefName() })
+                    .takeIf { it.isNotEmpty() }
+                    ?.let {
+                        Timber.d("DELETED $it")
+                        taskDeleter.delete(caldavDao.getTasks(caldavCalendar.uuid!!, it.toList()))
+                    }
+            // read before listing, so anything that changed during the listing is fetched again
+            caldavCalendar.syncToken = remoteSyncToken
         }
-        val changed = members.filter { vCard: Response ->
+        caldavCalendar.ctag = remoteCtag
+        Timber.d("UPDATE %s", caldavCalendar)
+        caldavDao.update(caldavCalendar)
+        changed.addAll(caldavDao.getParentChanges(caldavCalendar.uuid!!))
+        caldavDao.updateParents(caldavCalendar.uuid!!)
+    }
+
+    private suspend fun List<Response>.filterChanged(caldavCalendar: CaldavCalendar) =
+        filter { vCard: Response ->
             val eTag = vCard[GetETag::class.java]?.eTag
             if (eTag.isNullOrBlank()) {
                 return@filter false
             }
             eTag != caldavDao.getTask(caldavCalendar.uuid!!, vCard.hrefName())?.etag
         }
-        for (items in changed.chunked(30)) {
-            val urls = items.map { it.href }
-            val responses = ArrayList<Response>()
-            davCalendar.multiget(urls) { response, relation ->
-                if (relation == HrefRelation.MEMBER) {
-                    responses.add(response)
+
+    /**
+     * Download [changed] with pipelined multigets and apply them as they arrive
+     *
+     * @param applied receives the ids of the tasks that were written
+     * @return false if a response couldn't be parsed and the calendar should be left as is
+     */
+    private suspend fun fetchAndApply(
+        account: CaldavAccount,
+        caldavCalendar: CaldavCalendar,
+        davCalendar: DavCalendar,
+        changed: List<Response>,
+        multigets: Semaphore,
+        applied: MutableSet<Long>,
+        skipInvalid: Boolean = false,
+    ): Boolean = coroutineScope {
+        val batches = Channel<List<Response>>(MAX_PENDING_BATCHES)
+        val producer = launch {
+            coroutineScope {
+                for (items in changed.chunked(MULTIGET_SIZE)) {
+                    multigets.acquire()
+                    launch(Dispatchers.IO) {
+                        try {
+                            batches.send(davCalendar.multigetMembers(items.map { it.href }))
+                        } finally {
+                            multigets.release()
+                        }
+                    }
                 }
             }
-            Timber.d("MULTI %s", urls)
-            for (vCard in responses) {
-                val eTag = vCard[GetETag::class.java]?.eTag
-                val url = vCard.href
-                if (eTag.isNullOrBlank()) {
-                    throw DavException("Received CalDAV GET response without ETag for $url")
-                }
-                val vtodo = vCard[CalendarData::class.java]?.iCalendar
-                if (vtodo.isNullOrBlank()) {
-                    throw DavException("Received CalDAV GET response without CalendarData for $url")
+            batches.close()
+        }
+        for (responses in batches) {
+            val success = applyLock.withLock {
+                applyResponses(account, caldavCalendar, responses, skipInvalid, applied)
+            }
+            if (!success) {
+                producer.cancel()
+                return@coroutineScope false
+            }
+        }
+        true
+    }
+
+    private class Delta(
+        val changed: List<Response>,
+        val deleted: List<String>,
+        val syncToken: String?,
+    )
+
+    /**
+     * Ask for the members that changed since [syncToken] with a sync-collection report (RFC 6578)
+     *
+     * @return null if the server no longer accepts [syncToken] and the full listing is needed
+     */
+    private fun DavCalendar.syncCollection(syncToken: String): Delta? {
+        val changed = ArrayList<Response>()
+        val deleted = ArrayList<String>()
+        var token: String? = syncToken
+        var truncated: Boolean
+        do {
+            truncated = false
+            val result = try {
+                reportChanges(token, false, null, GetETag.NAME) { response, relation ->
+                    when {
+                        relation == HrefRelation.SELF ->
+                            truncated = response.status?.code == 507
+                        relation != HrefRelation.MEMBER -> {}
+                        response.isSuccess() -> changed.add(response)
+                        response.status?.code == 404 -> deleted.add(response.hrefName())
+                    }
                 }
-                val fileName = vCard.hrefName()
-                val remote = fromVtodo(vtodo)
-                if (remote == null) {
-                    Timber.e("Invalid VCALENDAR: %s", fileName)
-                    return
+            } catch (e: DavException) {
+                if (e.errors.contains(Error.VALID_SYNC_TOKEN) ||
+                    (e is HttpException && (e.code == 403 || e.code == 409))) {
+                    Timber.w("Invalid sync token for %s", location)
+                    return null
                 }
-                val caldavTask = caldavDao.getTask(caldavCalendar.uuid!!, fileName)
-                iCal.fromVtodo(account, caldavCalendar, caldavTask, remote, vtodo, fileName, eTag)
+                throw e
+            }
+            val next = result.filterIsInstance<SyncToken>().firstOrNull()?.token
+            if (truncated && (next == null || next == token)) {
+                return null
+            }
+            token = next
+        } while (truncated)
+        return Delta(
+            changed = changed.distinctBy { it.href },
+            deleted = deleted.distinct(),
+            syncToken = token,
+        )
+    }
+
+    private fun DavCalendar.multigetMembers(urls: List<HttpUrl>): List<Response> {
+        val responses = ArrayList<Response>()
+        multiget(urls) { response, relation ->
+            if (relation == HrefRelation.MEMBER) {
+                responses.add(response)
             }
         }
-        caldavDao
-                .getRemoteObjects(caldavCalendar.uuid!!)
-                .subtract(members.map { it.hrefName() })
-                .takeIf { it.isNotEmpty() }
-                ?.let {
-                    Timber.d("DELETED $it")
-                    taskDeleter.delete(caldavDao.getTasks(caldavCalendar.uuid!!, it.toList()))
+        Timber.d("MULTI %s", urls)
+        return responses
+    }
+
+    /**
+     * @param skipInvalid ignore responses without a VTODO. sync-collection reports every member,
+     * not only the tasks that calendarQuery returns
+     * @param applied receives the ids of the tasks that were written
+     * @return false if a response couldn't be parsed and the calendar should be left as is
+     */
+    private suspend fun applyResponses(
+        account: CaldavAccount,
+        caldavCalendar: CaldavCalendar,
+        responses: List<Response>,
+        skipInvalid: Boolean,
+        applied: MutableSet<Long>,
+    ): Boolean {
+        val items = ArrayList<RemoteTask>()
+        for (vCard in responses) {
+            val eTag = vCard[GetETag::class.java]?.eTag
+            val url = vCard.href
+            if (eTag.isNullOrBlank()) {
+                throw DavException("Received CalDAV GET response without ETag for $url")
+            }
+            val vtodo = vCard[CalendarData::class.java]?.iCalendar
+            if (vtodo.isNullOrBlank()) {
+                throw DavException("Received CalDAV GET response without CalendarData for $url")
+            }
+            val fileName = vCard.hrefName()
+            val remote = fromVtodo(vtodo)
+            if (remote == null) {
+                if (skipInvalid) {
+                    Timber.d("No VTODO in %s", fileName)
+                    continue
                 }
-        caldavCalendar.ctag = remoteCtag
-        Timber.d("UPDATE %s", caldavCalendar)
-        caldavDao.update(caldavCalendar)
-        caldavDao.updateParents(caldavCalendar.uuid!!)
-        localBroadcastManager.broadcastRefresh()
+                Timber.e("Invalid VCALENDAR: %s", fileName)
+                return false
+            }
+            items.add(RemoteTask(null, remote, vtodo, fileName, eTag))
+        }
+        val existing = caldavDao
+            .getCaldavTasksByObject(caldavCalendar.uuid!!, items.mapNotNull { it.obj })
+            .associateBy { it.`object` }
+        applied.addAll(
+            iCal.fromVtodos(account, caldavCalendar, items.map { it.copy(existing = existing[it.obj]) })
+        )
+        return true
     }
 
     private suspend fun pushLocalChanges(
@@ -337,6 +562,7 @@ class CaldavSynchronizer @Inject constructor(
         }
         val data = iCal.toVtodo(account, calendar, caldavTask, task)
         val requestBody = data.toRequestBody(contentType = MIME_ICALENDAR)
+        var success = false
         try {
             val remote = DavResource(
                     httpClient, httpUrl.newBuilder().addPathSegment(caldavTask.`object`!!).build())
@@ -345,13 +571,16 @@ class CaldavSynchronizer @Inject constructor(
                     fromResponse(it)?.eTag?.takeIf(String::isNotBlank)?.let { etag ->
                         caldavTask.etag = etag
                     }
-                    vtodoCache.putVtodo(calendar, caldavTask, String(data))
+                    success = true
                 }
             }
         } catch (e: HttpException) {
             Timber.e(e)
             return
         }
+        if (success) {
+            vtodoCache.putVtodo(calendar, caldavTask, String(data))
+        }
         caldavTask.lastSync = task.modificationDate
         caldavDao.update(caldavTask)
         Timber.d("SENT %s", caldavTask)
@@ -409,6 +638,14 @@ class CaldavSynchronizer @Inject constructor(
     }
 
     companion object {
+        /** calendars of one account that are synchronized at the same time */
+        private const val MAX_CALENDARS = 3
+        /** multiget requests in flight per account */
+        private const val MAX_MULTIGETS = 4
+        /** multiget responses waiting to be applied, per calendar */
+        private const val MAX_PENDING_BATCHES = 2
+        private const val MULTIGET_SIZE = 30
+
         init {
             prodId = ProdId("+//IDN tasks.org//android-" + BuildConfig.VERSION_CODE + "//EN")
         }
@@ -0,0 +1,45 @@
+package org.tasks.caldav
+
+import org.tasks.data.Vtodo
+import org.tasks.data.VtodoDao
+import java.io.ByteArrayOutputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+import javax.inject.Inject
+
+/** Keeps gzipped VTODOs in the `vtodo` table, so they share transactions with the tasks they belong to */
+class DatabaseVtodoStore @Inject constructor(
+    private val vtodoDao: VtodoDao,
+) : VtodoStore {
+    override suspend fun get(calendar: String, objects: List<String>): Map<String, String> =
+        vtodoDao
+            .get(calendar, objects.distinct())
+            .associate { it.`object` to decompress(it.data) }
+
+    override suspend fun put(calendar: String, vtodos: Map<String, String>) {
+        if (vtodos.isNotEmpty()) {
+            vtodoDao.insert(vtodos.map { (obj, vtodo) -> Vtodo(calendar, obj, compress(vtodo)) })
+        }
+    }
+
+    override suspend fun move(from: String, to: String, objects: List<String>) =
+        vtodoDao.move(from, to, objects)
+
+    override suspend fun delete(calendar: String, objects: List<String>) =
+        vtodoDao.delete(calendar, objects)
+
+    override suspend fun deleteCalendar(calendar: String) = vtodoDao.deleteCalendar(calendar)
+
+    override suspend fun deleteAccount(account: String) = vtodoDao.deleteAccount(account)
+
+    companion object {
+        fun compress(vtodo: String): ByteArray =
+            ByteArrayOutputStream().use { bytes ->
+                GZIPOutputStream(bytes).use { it.write(vtodo.toByteArray()) }
+                bytes.toByteArray()
+            }
+
+        fun decompress(data: ByteArray): String =
+            GZIPInputStream(data.inputStream()).use { String(it.readBytes()) }
+    }
+}
@@ -0,0 +1,81 @@
+package org.tasks.caldav
+
+import androidx.collection.LruCache
+import at.bitfire.ical4android.Task
+import timber.log.Timber
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Parsed copies of cached vtodos, keyed by (calendar, object, etag) so that each version of a
+ * remote object is only parsed once. The source hash is part of the key because some servers
+ * don't return an etag after a PUT, and some sources have no etag at all. Cached instances are
+ * shared and must not be modified
+ */
+@Singleton
+class ParsedVtodoCache(maxSize: Int) {
+
+    @Inject constructor() : this(MAX_SIZE)
+
+    private data class Key(
+        val calendar: String,
+        val `object`: String,
+        val etag: String?,
+        val hash: Int,
+    )
+
+    private class Entry(val task: Task, val size: Int)
+
+    private val cache = object : LruCache<Key, Entry>(maxSize) {
+        override fun sizeOf(key: Key, value: Entry) = value.size
+    }
+
+    /** @return parsed [vtodo], from cache if this version has already been parsed */
+    fun get(calendar: String?, `object`: String?, etag: String?, vtodo: String?): Task? {
+        if (vtodo.isNullOrBlank()) {
+            return null
+        }
+        val key = key(calendar, `object`, etag, vtodo) ?: return iCalendar.fromVtodo(vtodo)
+        cache[key]?.let { return it.task }
+        return iCalendar.fromVtodo(vtodo)?.also { put(key, it, vtodo) }
+    }
+
+    /** Store an already parsed [task], e.g. the remote copy that was just applied */
+    fun put(calendar: String?, `object`: String?, etag: String?, vtodo: String?, task: Task) {
+        if (vtodo.isNullOrBlank()) {
+            return
+        }
+        put(key(calendar, `object`, etag, vtodo) ?: return, task, vtodo)
+    }
+
+    private fun put(key: Key, task: Task, vtodo: String) {
+        cache.put(key, Entry(task, vtodo.length))
+    }
+
+    val hitCount: Int
+        get() = cache.hitCount()
+
+    val missCount: Int
+        get() = cache.missCount()
+
+    val size: Int
+        get() = cache.size()
+
+    fun clear() = cache.evictAll()
+
+    fun logStats() {
+        Timber.d("parsed vtodo cache: hits=$hitCount misses=$missCount size=$size/${cache.maxSize()}")
+    }
+
+    companion object {
+        /** measured in characters of vtodo source, roughly proportional to parsed size */
+        private const val MAX_SIZE = 2 * 1024 * 1024
+
+        private fun key(calendar: String?, `object`: String?, etag: String?, vtodo: String): Key? =
+            if (calendar.isNullOrBlank() || `object`.isNullOrBlank()) {
+                null
+            } else {
+                Key(calendar, `object`, etag, vtodo.hashCode())
+            }
+    }
+}
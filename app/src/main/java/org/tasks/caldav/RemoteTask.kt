@@ -0,0 +1,13 @@
+package org.tasks.caldav
+
+import at.bitfire.ical4android.Task
+import org.tasks.data.CaldavTask
+
+/** A parsed remote task waiting to be applied by [iCalendar.fromVtodos] */
+data class RemoteTask(
+    val existing: CaldavTask?,
+    val remote: Task,
+    val vtodo: String?,
+    val obj: String? = null,
+    val eTag: String? = null,
+)
@@ -4,28 +4,17 @@ import org.tasks.data.CaldavAccount
 import org.tasks.data.CaldavCalendar
 import org.tasks.data.CaldavDao
 import org.tasks.data.CaldavTask
-import java.io.File
 import javax.inject.Inject
 import javax.inject.Singleton
 
 @Singleton
 class VtodoCache @Inject constructor(
     private val caldavDao: CaldavDao,
-    private val fileStorage: FileStorage,
+    private val store: VtodoStore,
 ) {
-    fun move(from: CaldavCalendar, to: CaldavCalendar, task: CaldavTask) {
-        val source =
-            fileStorage.getFile(from.account, from.uuid, task.`object`)
-        if (source?.exists() != true) {
-            return
-        }
-        val target =
-            fileStorage.getFile(to.account, to.uuid)
-                ?.apply { mkdirs() }
-                ?.let { File(it, task.`object`!!) }
-                ?: return
-        source.copyTo(target, overwrite = true)
-        source.delete()
+    suspend fun move(from: CaldavCalendar, to: CaldavCalendar, task: CaldavTask) {
+        val `object` = task.`object`?.takeIf { it.isNotBlank() } ?: return
+        store.move(from.uuid ?: return, to.uuid ?: return, listOf(`object`))
     }
 
     suspend fun getVtodo(caldavTask: CaldavTask?): String? {
@@ -36,45 +25,45 @@ class VtodoCache @Inject constructor(
         return getVtodo(calendar, caldavTask)
     }
 
-    fun getVtodo(calendar: CaldavCalendar?, caldavTask: CaldavTask?): String? {
-        val file = fileStorage.getFile(
-            calendar?.account,
-            caldavTask?.calendar,
-            caldavTask?.`object`
-        )
-        return fileStorage.read(file)
+    suspend fun getVtodo(calendar: CaldavCalendar?, caldavTask: CaldavTask?): String? {
+        if (calendar == null) {
+            return null
+        }
+        val `object` = caldavTask?.`object`?.takeIf { it.isNotBlank() } ?: return null
+        return getVtodos(caldavTask.calendar ?: return null, listOf(`object`))[`object`]
     }
 
-    fun putVtodo(calendar: CaldavCalendar, caldavTask: CaldavTask, vtodo: String?) {
+    /** @return vtodos by object name */
+    suspend fun getVtodos(calendar: String, objects: List<String>): Map<String, String> =
+        if (objects.isEmpty()) emptyMap() else store.get(calendar, objects)
+
+    suspend fun putVtodo(calendar: CaldavCalendar, caldavTask: CaldavTask, vtodo: String?) {
         val `object` = caldavTask.`object`?.takeIf { it.isNotBlank() } ?: return
-        val directory =
-            fileStorage
-                .getFile(calendar.account, caldavTask.calendar)
-                ?.apply { mkdirs() }
-                ?: return
-        fileStorage.write(File(directory, `object`), vtodo)
+        putVtodos(caldavTask.calendar ?: calendar.uuid ?: return, mapOf(`object` to vtodo))
     }
 
-    suspend fun delete(taskIds: List<Long>) {
-        val tasks = caldavDao.getTasks(taskIds).groupBy { it.calendar!! }
-        tasks.forEach { (c, t) ->
-            val calendar = caldavDao.getCalendar(c) ?: return@forEach
-            t.forEach { delete(calendar, it) }
+    /** @param vtodos vtodos by object name, blank values remove the entry */
+    suspend fun putVtodos(calendar: String, vtodos: Map<String, String?>) {
+        val (remove, put) = vtodos.entries.partition { it.value.isNullOrBlank() }
+        if (remove.isNotEmpty()) {
+            store.delete(calendar, remove.map { it.key })
         }
+        store.put(calendar, put.associate { it.key to it.value!! })
     }
 
-    fun delete(calendar: CaldavCalendar, caldavTask: CaldavTask) {
-        fileStorage
-            .getFile(calendar.account!!, caldavTask.calendar!!, caldavTask.`object`!!)
-            ?.delete()
+    suspend fun delete(taskIds: List<Long>) {
+        caldavDao
+            .getTasks(taskIds)
+            .filter { !it.`object`.isNullOrBlank() }
+            .groupBy { it.calendar!! }
+            .forEach { (calendar, tasks) -> store.delete(calendar, tasks.map { it.`object`!! }) }
     }
 
-    fun delete(calendar: CaldavCalendar) =
-        fileStorage.getFile(calendar.account!!, calendar.uuid!!)?.deleteRecursively()
+    suspend fun delete(calendar: CaldavCalendar, caldavTask: CaldavTask) {
+        store.delete(caldavTask.calendar ?: calendar.uuid!!, listOf(caldavTask.`object`!!))
+    }
 
-    fun delete(account: CaldavAccount) =
-        fileStorage.getFile(account.uuid!!)?.deleteRecursively()
+    suspend fun delete(calendar: CaldavCalendar) = store.deleteCalendar(calendar.uuid!!)
 
-    fun clear() =
-        fileStorage.getFile()?.deleteRecursively()
-}
\ No newline at end of file
+    suspend fun delete(account: CaldavAccount) = store.deleteAccount(account.uuid!!)
+}
@@ -0,0 +1,16 @@
+package org.tasks.caldav
+
+/** Storage backend for [VtodoCache]. Entries are keyed by calendar uuid and object name */
+interface VtodoStore {
+    suspend fun get(calendar: String, objects: List<String>): Map<String, String>
+
+    suspend fun put(calendar: String, vtodos: Map<String, String>)
+
+    suspend fun move(from: String, to: String, objects: List<String>)
+
+    suspend fun delete(calendar: String, objects: List<String>)
+
+    suspend fun deleteCalendar(calendar: String)
+
+    suspend fun deleteAccount(account: String)
+}
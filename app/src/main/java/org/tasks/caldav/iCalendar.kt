@@ -1,10 +1,12 @@
 package org.tasks.caldav
 
+import androidx.room.withTransaction
 import at.bitfire.ical4android.Task
 import at.bitfire.ical4android.Task.Companion.tasksFromReader
 import at.bitfire.ical4android.util.DateUtils.ical4jTimeZone
 import com.todoroo.andlib.utility.DateUtilities
 import com.todoroo.astrid.alarms.AlarmService
+import com.todoroo.astrid.dao.Database
 import com.todoroo.astrid.dao.TaskDao
 import com.todoroo.astrid.data.Task.Companion.HIDE_UNTIL_SPECIFIC_DAY
 import com.todoroo.astrid.data.Task.Companion.HIDE_UNTIL_SPECIFIC_DAY_TIME
@@ -52,6 +54,7 @@ import org.tasks.data.TagDataDao
 import org.tasks.date.DateTimeUtils.newDateTime
 import org.tasks.date.DateTimeUtils.toDateTime
 import org.tasks.date.DateTimeUtils.toLocal
+import org.tasks.db.SuspendDbUtils.chunkedMap
 import org.tasks.jobs.WorkManager
 import org.tasks.location.GeofenceApi
 import org.tasks.notifications.NotificationManager
@@ -84,6 +87,8 @@ class iCalendar @Inject constructor(
         private val alarmService: AlarmService,
         private val vtodoCache: VtodoCache,
         private val notificationManager: NotificationManager,
+        private val database: Database,
+        private val parsedVtodos: ParsedVtodoCache,
 ) {
 
     suspend fun setPlace(taskId: Long, geo: Geo?) {
@@ -123,19 +128,27 @@ class iCalendar @Inject constructor(
         geofenceApi.update(place)
     }
 
-    suspend fun getTags(categories: List<String>): List<TagData> {
+    suspend fun getTags(categories: List<String>): List<TagData> =
+        getTags(categories, HashMap())
+
+    /** @param cache tags by name, shared between calls that apply the same batch */
+    private suspend fun getTags(
+        categories: List<String>,
+        cache: MutableMap<String, TagData>,
+    ): List<TagData> {
         if (categories.isEmpty()) {
             return emptyList()
         }
-        val tags = tagDataDao.getTags(categories).toMutableList()
-        val existing = tags.map(TagData::name)
-        val toCreate = categories subtract existing
-        for (name in toCreate) {
-            val tag = TagData(name)
-            tagDataDao.createNew(tag)
-            tags.add(tag)
+        val missing = categories.filterNot { cache.containsKey(it) }.distinct()
+        if (missing.isNotEmpty()) {
+            tagDataDao.getTags(missing).forEach { cache[it.name!!] = it }
+            for (name in missing subtract cache.keys) {
+                val tag = TagData(name)
+                tagDataDao.createNew(tag)
+                cache[name] = tag
+            }
         }
-        return tags
+        return categories.mapNotNull { cache[it] }.distinct()
     }
 
     suspend fun toVtodo(
@@ -198,9 +211,91 @@ class iCalendar @Inject constructor(
         vtodo: String?,
         obj: String? = null,
         eTag: String? = null
+    ) = fromVtodo(account, calendar, RemoteTask(existing, remote, vtodo, obj, eTag), Lookups())
+
+    /**
+     * Apply [items] in a single transaction. Tasks, tags, alarms and places for the whole batch
+     * are loaded up front instead of once per item, and alarms are rescheduled for the whole batch
+     * once it has been committed
+     *
+     * @return ids of the tasks that were written
+     */
+    suspend fun fromVtodos(
+        account: CaldavAccount,
+        calendar: CaldavCalendar,
+        items: List<RemoteTask>,
+    ): List<Long> {
+        if (items.isEmpty()) {
+            return emptyList()
+        }
+        val scheduleAlarms = HashSet<Long>()
+        val ids = database.withTransaction {
+            val lookups = loadLookups(calendar, items.mapNotNull { it.existing }, scheduleAlarms)
+            items.map { fromVtodo(account, calendar, it, lookups) }
+        }
+        alarmService.scheduleAlarms(scheduleAlarms.toList())
+        return ids
+    }
+
+    /** Existing values for a task in the batch, loaded before anything is applied */
+    private class Prefetched(
+        val task: com.todoroo.astrid.data.Task,
+        val tags: List<TagData>,
+        val alarms: List<Alarm>,
+        val place: Place?,
+        val vtodo: String?,
+    )
+
+    private class Lookups(
+        private val prefetched: MutableMap<Long, Prefetched> = HashMap(),
+        val tagsByName: MutableMap<String, TagData> = HashMap(),
+        /** tasks to reschedule alarms for after the batch, or null to reschedule each task on save */
+        val scheduleAlarms: MutableSet<Long>? = null,
     ) {
-        val task = existing?.task
-            ?.let { taskDao.fetch(it) }
+        /** values are handed out once, in case a task appears more than once in a batch */
+        fun remove(id: Long): Prefetched? = prefetched.remove(id)
+    }
+
+    private suspend fun loadLookups(
+        calendar: CaldavCalendar,
+        existing: List<CaldavTask>,
+        scheduleAlarms: MutableSet<Long>,
+    ): Lookups {
+        val ids = existing.map { it.task }.filter { it > 0 }.distinct()
+        val vtodos = vtodoCache.getVtodos(calendar.uuid!!, existing.mapNotNull { it.`object` })
+        val objects = existing.associate { it.task to it.`object` }
+        val tags = tagDao.getTagsForTasks(ids)
+        val tagData = tagDataDao
+            .getByUuid(tags.mapNotNull { it.tagUid }.toSet())
+            .associateBy { it.remoteId }
+        val tagsByTask = tags.groupBy({ it.task }, { tagData[it.tagUid] })
+        val alarms = ids.chunkedMap { alarmDao.getAlarms(it) }.groupBy { it.task }
+        val places = ids.chunkedMap { locationDao.getGeofences(it) }.associate { it.task to it.place }
+        return Lookups(
+            prefetched = taskDao.fetch(ids).associateTo(HashMap()) { task ->
+                task.id to Prefetched(
+                    task = task,
+                    tags = tagsByTask[task.id]?.filterNotNull() ?: emptyList(),
+                    alarms = alarms[task.id] ?: emptyList(),
+                    place = places[task.id],
+                    vtodo = objects[task.id]?.let { vtodos[it] },
+                )
+            },
+            scheduleAlarms = scheduleAlarms,
+        )
+    }
+
+    /** @return id of the task that was written */
+    private suspend fun fromVtodo(
+        account: CaldavAccount,
+        calendar: CaldavCalendar,
+        item: RemoteTask,
+        lookups: Lookups,
+    ): Long {
+        val (existing, remote, vtodo, obj, eTag) = item
+        val prefetched = existing?.task?.let { lookups.remove(it) }
+        val task = prefetched?.task
+            ?: existing?.task?.let { taskDao.fetch(it) }
             ?: taskCreator.createWithValues("").apply {
                 readOnly = calendar.access == ACCESS_READ_ONLY
                 taskDao.createNew(this)
@@ -216,7 +311,12 @@ class iCalendar @Inject constructor(
                 )
         val isNew = caldavTask.id == com.todoroo.astrid.data.Task.NO_ID
         val dirty = task.modificationDate > caldavTask.lastSync || caldavTask.lastSync == 0L
-        val local = vtodoCache.getVtodo(calendar, caldavTask)?.let { fromVtodo(it) }
+        val local = parsedVtodos.get(
+            calendar = caldavTask.calendar,
+            `object` = caldavTask.`object`,
+            etag = caldavTask.etag,
+            vtodo = if (prefetched != null) prefetched.vtodo else vtodoCache.getVtodo(calendar, caldavTask),
+        )
         task.applyRemote(remote, local)
         caldavTask.applyRemote(remote, local)
 
@@ -224,15 +324,15 @@ class iCalendar @Inject constructor(
             notificationManager.cancel(task.id)
         }
 
-        val place = locationDao.getPlaceForTask(task.id)
+        val place = if (prefetched != null) prefetched.place else locationDao.getPlaceForTask(task.id)
         if (place?.toGeo() == local?.geoPosition) {
             setPlace(task.id, remote.geoPosition)
         }
 
-        val tags = tagDataDao.getTagDataForTask(task.id)
-        val localTags = getTags(local?.categories ?: emptyList())
+        val tags = prefetched?.tags ?: tagDataDao.getTagDataForTask(task.id)
+        val localTags = getTags(local?.categories ?: emptyList(), lookups.tagsByName)
         if (tags.toSet() == localTags.toSet()) {
-            tagDao.applyTags(task, tagDataDao, getTags(remote.categories))
+            tagDao.applyTags(task, tags, getTags(remote.categories, lookups.tagsByName))
         }
 
         if (
@@ -242,9 +342,13 @@ class iCalendar @Inject constructor(
             !remote.prodId().supportsReminders() // other client doesn't support reminder sync
         ) {
             task.setDefaultReminders(preferences)
-            alarmService.synchronizeAlarms(task.id, task.getDefaultAlarms().toMutableSet())
+            alarmService.synchronizeAlarms(
+                task.id,
+                task.getDefaultAlarms().toMutableSet(),
+                schedule = lookups.scheduleAlarms == null,
+            )
         } else if (account.reminderSync) {
-            val alarms = alarmDao.getAlarms(task.id).onEach {
+            val alarms = (prefetched?.alarms ?: alarmDao.getAlarms(task.id)).onEach {
                 it.id = 0
                 it.task = 0
             }
@@ -253,8 +357,11 @@ class iCalendar @Inject constructor(
                 local?.reminders?.plus(randomReminders) ?: randomReminders
             if (alarms.toSet() == localReminders.toSet()) {
                 val remoteReminders = remote.reminders.plus(randomReminders)
-                val changed =
-                    alarmService.synchronizeAlarms(caldavTask.task, remoteReminders.toMutableSet())
+                val changed = alarmService.synchronizeAlarms(
+                    caldavTask.task,
+                    remoteReminders.toMutableSet(),
+                    schedule = lookups.scheduleAlarms == null,
+                )
                 if (changed) {
                     task.modificationDate = DateUtilities.now()
                 }
@@ -263,8 +370,13 @@ class iCalendar @Inject constructor(
 
         task.suppressSync()
         task.suppressRefresh()
+        lookups.scheduleAlarms?.let {
+            task.suppressAlarms()
+            it.add(task.id)
+        }
         taskDao.save(task)
         vtodoCache.putVtodo(calendar, caldavTask, vtodo)
+        parsedVtodos.put(caldavTask.calendar, caldavTask.`object`, eTag, vtodo, remote)
         caldavTask.etag = eTag
         if (!dirty) {
             caldavTask.lastSync = task.modificationDate
@@ -276,6 +388,7 @@ class iCalendar @Inject constructor(
             caldavDao.update(caldavTask)
             Timber.d("UPDATE %s", caldavTask)
         }
+        return task.id
     }
 
     companion object {
@@ -28,12 +28,49 @@ WHERE tasks._id = :taskId
 """)
     suspend fun getActiveAlarms(taskId: Long): List<Alarm>
 
+    @Query("""
+SELECT tasks.*,
+       alarms._id      AS alarm__id,
+       alarms.task     AS alarm_task,
+       alarms.time     AS alarm_time,
+       alarms.type     AS alarm_type,
+       alarms.repeat   AS alarm_repeat,
+       alarms.interval AS alarm_interval
+FROM alarms
+         INNER JOIN tasks ON tasks._id = alarms.task
+WHERE tasks.completed = 0
+  AND tasks.deleted = 0
+""")
+    suspend fun getActiveTaskAlarms(): List<TaskAlarm>
+
+    @Query("""
+SELECT tasks.*,
+       alarms._id      AS alarm__id,
+       alarms.task     AS alarm_task,
+       alarms.time     AS alarm_time,
+       alarms.type     AS alarm_type,
+       alarms.repeat   AS alarm_repeat,
+       alarms.interval AS alarm_interval
+FROM alarms
+         INNER JOIN tasks ON tasks._id = alarms.task
+WHERE tasks._id IN (:taskIds)
+  AND tasks.completed = 0
+  AND tasks.deleted = 0
+""")
+    suspend fun getActiveTaskAlarms(taskIds: List<Long>): List<TaskAlarm>
+
     @Query("SELECT * FROM alarms WHERE type = $TYPE_SNOOZE AND task IN (:taskIds)")
     suspend fun getSnoozed(taskIds: List<Long>): List<Alarm>
 
     @Query("SELECT * FROM alarms WHERE task = :taskId")
     suspend fun getAlarms(taskId: Long): List<Alarm>
 
+    @Query("SELECT * FROM alarms WHERE task IN (:taskIds)")
+    suspend fun getAlarms(taskIds: List<Long>): List<Alarm>
+
+    @Query("SELECT * FROM alarms WHERE task > :from AND task <= :to")
+    suspend fun getAlarmsInRange(from: Long, to: Long): List<Alarm>
+
     @Query("DELETE FROM alarms WHERE _id IN(:alarmIds)")
     suspend fun deleteByIds(alarmIds: List<Long>)
 
@@ -26,6 +26,7 @@ data class CaldavCalendar(
     @ColumnInfo(name = "cdl_order") val order: Int = NO_ORDER,
     @ColumnInfo(name = "cdl_access") var access: Int = ACCESS_OWNER,
     @ColumnInfo(name = "cdl_last_sync") val lastSync: Long = 0,
+    @ColumnInfo(name = "cdl_sync_token") var syncToken: String? = null,
 ) : Parcelable {
     @Suppress("RedundantNullableReturnType")
     fun getIcon(): Int? {
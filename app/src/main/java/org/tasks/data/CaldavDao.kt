@@ -102,11 +102,11 @@ ORDER BY CASE cda_account_type
         if (addToTop) {
             task.order = findFirstTask(caldavTask.calendar!!, task.parent)
                     ?.takeIf { task.creationDate.toAppleEpoch() >= it }
-                    ?.minus(1)
+                    ?.minus(ORDER_GAP)
         } else {
             task.order = findLastTask(caldavTask.calendar!!, task.parent)
                     ?.takeIf { task.creationDate.toAppleEpoch() <= it }
-                    ?.plus(1)
+                    ?.plus(ORDER_GAP)
         }
         val id = insert(caldavTask)
         update(task)
@@ -183,6 +183,10 @@ WHERE cd_calendar = :calendar
     @Query("SELECT * FROM caldav_tasks WHERE cd_task = :taskId")
     abstract suspend fun getTasks(taskId: Long): List<CaldavTask>
 
+    /** @return caldav tasks, including deleted ones, for task ids in (from, to] */
+    @Query("SELECT * FROM caldav_tasks WHERE cd_task > :from AND cd_task <= :to")
+    abstract suspend fun getTasksInRange(from: Long, to: Long): List<CaldavTask>
+
     @Query("""
 SELECT EXISTS(SELECT 1
               FROM caldav_tasks
@@ -199,6 +203,13 @@ SELECT EXISTS(SELECT 1
     @Query("SELECT * FROM caldav_tasks WHERE cd_task in (:taskIds) AND cd_deleted = 0")
     internal abstract suspend fun getTasksInternal(taskIds: List<Long>): List<CaldavTask>
 
+    /** @return caldav tasks for [taskIds], including deleted ones */
+    suspend fun getTasksIncludingDeleted(taskIds: List<Long>): List<CaldavTask> =
+            taskIds.chunkedMap { getTasksIncludingDeletedInternal(it) }
+
+    @Query("SELECT * FROM caldav_tasks WHERE cd_task in (:taskIds)")
+    internal abstract suspend fun getTasksIncludingDeletedInternal(taskIds: List<Long>): List<CaldavTask>
+
     @Query("SELECT task.*, caldav_task.* FROM tasks AS task "
             + "INNER JOIN caldav_tasks AS caldav_task ON _id = cd_task "
             + "WHERE cd_calendar = :calendar "
@@ -243,6 +254,18 @@ SELECT EXISTS(SELECT 1
     @Query("SELECT cd_task FROM caldav_tasks WHERE cd_calendar = :calendar AND cd_remote_id IN (:remoteIds)")
     internal abstract suspend fun getTasksByRemoteIdInternal(calendar: String, remoteIds: List<String>): List<Long>
 
+    suspend fun getCaldavTasksByRemoteId(calendar: String, remoteIds: List<String>): List<CaldavTask> =
+            remoteIds.chunkedMap { getCaldavTasksByRemoteIdInternal(calendar, it) }
+
+    @Query("SELECT * FROM caldav_tasks WHERE cd_calendar = :calendar AND cd_remote_id IN (:remoteIds)")
+    internal abstract suspend fun getCaldavTasksByRemoteIdInternal(calendar: String, remoteIds: List<String>): List<CaldavTask>
+
+    suspend fun getCaldavTasksByObject(calendar: String, objects: List<String>): List<CaldavTask> =
+            objects.chunkedMap { getCaldavTasksByObjectInternal(calendar, it) }
+
+    @Query("SELECT * FROM caldav_tasks WHERE cd_calendar = :calendar AND cd_object IN (:objects)")
+    internal abstract suspend fun getCaldavTasksByObjectInternal(calendar: String, objects: List<String>): List<CaldavTask>
+
     suspend fun getTasks(calendar: String, objects: List<String>): List<Long> =
             objects.chunkedMap { getTasksInternal(calendar, it) }
 
@@ -265,14 +288,10 @@ SELECT EXISTS(SELECT 1
     abstract suspend fun getCalendars(tasks: List<Long>): List<String>
 
     @Query("""
-SELECT caldav_lists.*, COUNT(DISTINCT(tasks._id)) AS count, COUNT(DISTINCT(principal_access.id)) AS principals
+SELECT caldav_lists.*, IFNULL(fc_count, 0) - IFNULL(hidden_count, 0) AS count, COUNT(DISTINCT(principal_access.id)) AS principals
 FROM caldav_lists
-         LEFT JOIN caldav_tasks ON caldav_tasks.cd_calendar = caldav_lists.cdl_uuid
-         LEFT JOIN tasks ON caldav_tasks.cd_task = tasks._id AND 
-                            tasks.deleted = 0 AND 
-                            tasks.completed = 0 AND
-                            tasks.hideUntil < :now AND 
-                            cd_deleted = 0
+         LEFT JOIN filter_counts ON fc_type = ${FilterCount.TYPE_LIST} AND fc_filter = caldav_lists.cdl_uuid
+         LEFT JOIN (${FilterCount.HIDDEN_LISTS}) ON hidden_filter = caldav_lists.cdl_uuid
          LEFT JOIN principal_access ON caldav_lists.cdl_id = principal_access.list
          LEFT JOIN caldav_accounts ON caldav_accounts.cda_uuid = caldav_lists.cdl_account
 WHERE caldav_lists.cdl_account = :uuid
@@ -293,34 +312,86 @@ GROUP BY caldav_lists.cdl_uuid
             + "WHERE _id IN (SELECT _id FROM tasks INNER JOIN caldav_tasks ON _id = cd_task WHERE cd_deleted = 0)")
     abstract suspend fun updateParents()
 
-    @Query("UPDATE tasks SET parent = IFNULL(("
-            + " SELECT p.cd_task FROM caldav_tasks AS p"
-            + "  INNER JOIN caldav_tasks "
-            + "    ON caldav_tasks.cd_task = tasks._id"
-            + "    AND caldav_tasks.cd_calendar = :calendar"
-            + "  WHERE p.cd_remote_id = caldav_tasks.cd_remote_parent"
-            + "    AND p.cd_calendar = caldav_tasks.cd_calendar"
-            + "    AND p.cd_deleted = 0"
-            + "    AND caldav_tasks.cd_remote_parent IS NOT NULL"
-            + "    AND caldav_tasks.cd_remote_parent != ''"
-            + "), 0)"
+    @Query("UPDATE tasks SET parent = $CALENDAR_PARENT "
             + "WHERE _id IN (SELECT _id FROM tasks INNER JOIN caldav_tasks ON _id = cd_task WHERE cd_deleted = 0 AND cd_calendar = :calendar)")
     abstract suspend fun updateParents(calendar: String)
 
+    /** @return tasks in [calendar] whose parent will be changed by [updateParents] */
+    @Query("SELECT _id FROM tasks INNER JOIN caldav_tasks ON _id = cd_task "
+            + "WHERE cd_deleted = 0 AND cd_calendar = :calendar AND parent != $CALENDAR_PARENT")
+    abstract suspend fun getParentChanges(calendar: String): List<Long>
+
+    /**
+     * Place [task] between the siblings on either side of [newPosition], so that only the moved task
+     * is written. Siblings are only renumbered when there is no gap left between them, and are then
+     * spread out to leave room for later moves
+     */
     @Transaction
     open suspend fun move(task: TaskContainer, previousParent: Long, newParent: Long, newPosition: Long?) {
-        val previousPosition = task.caldavSortOrder
-        if (newPosition != null) {
-            if (newParent == previousParent && newPosition < previousPosition) {
-                shiftDown(task.caldav!!, newParent, newPosition, previousPosition)
-            } else {
-                shiftDown(task.caldav!!, newParent, newPosition)
+        val position = newPosition?.let { findPosition(task.caldav!!, newParent, it, task.id) }
+        task.task.order = position
+        setTaskOrder(task.id, position)
+    }
+
+    private suspend fun findPosition(calendar: String, parent: Long, position: Long, task: Long): Long {
+        val before = findLastTaskBefore(calendar, parent, position, task)
+        val after = findFirstTaskFrom(calendar, parent, position, task)
+        return when {
+            after == null || (before == null && after > position) -> position
+            before == null -> position - ORDER_GAP
+            after - before > 1 -> before + (after - before) / 2
+            else -> {
+                spreadDown(calendar, parent, position, task)
+                position
             }
         }
-        task.task.order = newPosition
-        setTaskOrder(task.id, newPosition)
     }
 
+    /** Like [shiftDown], but spread the shifted tasks out as far as the next gap allows */
+    private suspend fun spreadDown(calendar: String, parent: Long, from: Long, exclude: Long) {
+        val tasks = getTasksToShift(calendar, parent, from, null).filter { it.id != exclude }
+        val run = tasks
+                .withIndex()
+                .takeWhile { (i, task) -> task.sortOrder == from + i }
+                .map { it.value }
+        val next = tasks.getOrNull(run.size)?.sortOrder
+        val spacing = next?.let { (it - from) / (run.size + 1) } ?: ORDER_GAP
+        val updated = run.mapIndexed { i, container ->
+            container.task.apply { order = from + (i + 1) * spacing }
+        }
+        updateTasks(updated)
+        updated
+                .map(Task::id)
+                .dbchunk()
+                .forEach { touchInternal(it) }
+    }
+
+    @Query("""
+SELECT MAX(IFNULL(`order`, (created - $APPLE_EPOCH) / 1000))
+FROM caldav_tasks
+         INNER JOIN tasks ON _id = cd_task
+WHERE cd_calendar = :calendar
+  AND cd_deleted = 0
+  AND deleted = 0
+  AND parent = :parent
+  AND _id != :exclude
+  AND IFNULL(`order`, (created - $APPLE_EPOCH) / 1000) < :position
+    """)
+    internal abstract suspend fun findLastTaskBefore(calendar: String, parent: Long, position: Long, exclude: Long): Long?
+
+    @Query("""
+SELECT MIN(IFNULL(`order`, (created - $APPLE_EPOCH) / 1000))
+FROM caldav_tasks
+         INNER JOIN tasks ON _id = cd_task
+WHERE cd_calendar = :calendar
+  AND cd_deleted = 0
+  AND deleted = 0
+  AND parent = :parent
+  AND _id != :exclude
+  AND IFNULL(`order`, (created - $APPLE_EPOCH) / 1000) >= :position
+    """)
+    internal abstract suspend fun findFirstTaskFrom(calendar: String, parent: Long, position: Long, exclude: Long): Long?
+
     @Transaction
     open suspend fun shiftDown(calendar: String, parent: Long, from: Long, to: Long? = null) {
         val updated = ArrayList<Task>()
@@ -397,6 +468,20 @@ ORDER BY primary_sort
 
     companion object {
         const val LOCAL = "local"
+        /** Space left between X-APPLE-SORT-ORDER values so that tasks can be moved between them */
+        const val ORDER_GAP = 1024L
+        /** local id of the parent of `tasks` in :calendar, from its remote parent */
+        private const val CALENDAR_PARENT = "IFNULL(("
+                + " SELECT p.cd_task FROM caldav_tasks AS p"
+                + "  INNER JOIN caldav_tasks "
+                + "    ON caldav_tasks.cd_task = tasks._id"
+                + "    AND caldav_tasks.cd_calendar = :calendar"
+                + "  WHERE p.cd_remote_id = caldav_tasks.cd_remote_parent"
+                + "    AND p.cd_calendar = caldav_tasks.cd_calendar"
+                + "    AND p.cd_deleted = 0"
+                + "    AND caldav_tasks.cd_remote_parent IS NOT NULL"
+                + "    AND caldav_tasks.cd_remote_parent != ''"
+                + "), 0)"
         private val mutex = Mutex()
     }
 }
\ No newline at end of file
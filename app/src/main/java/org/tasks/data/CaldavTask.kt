@@ -3,6 +3,7 @@ package org.tasks.data
 import androidx.room.ColumnInfo
 import androidx.room.Entity
 import androidx.room.ForeignKey
+import androidx.room.Index
 import androidx.room.PrimaryKey
 import com.todoroo.andlib.data.Table
 import com.todoroo.astrid.data.Task
@@ -17,6 +18,10 @@ import com.todoroo.astrid.helper.UUIDHelper
             childColumns = ["cd_task"],
             onDelete = ForeignKey.CASCADE,
         ),
+    ],
+    indices = [
+        Index(value = ["cd_remote_id", "cd_calendar"]),
+        Index(value = ["cd_calendar", "cd_remote_parent"]),
     ]
 )
 data class CaldavTask(
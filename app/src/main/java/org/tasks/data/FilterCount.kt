@@ -0,0 +1,176 @@
+package org.tasks.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import com.todoroo.andlib.data.Table
+
+/**
+ * Number of active (not completed, not deleted) tasks in each tag, place and list, used for the
+ * navigation drawer counters. Rows are maintained by [TRIGGERS] on tasks and on the membership
+ * tables, so that every write path keeps them current.
+ *
+ * Counts include tasks that are hidden until a future start date, because those become visible
+ * without a write. Readers subtract the hidden tasks, which are found with the
+ * `active_and_visible` index, see [HIDDEN_TAGS], [HIDDEN_PLACES] and [HIDDEN_LISTS].
+ */
+@Entity(
+    tableName = FilterCount.TABLE_NAME,
+    primaryKeys = ["fc_type", "fc_filter"],
+)
+data class FilterCount(
+    @ColumnInfo(name = "fc_type")
+    val type: Int,
+    @ColumnInfo(name = "fc_filter")
+    val filter: String,
+    @ColumnInfo(name = "fc_count")
+    val count: Int,
+) {
+    companion object {
+        const val TABLE_NAME = "filter_counts"
+        @JvmField val TABLE = Table(TABLE_NAME)
+
+        const val TYPE_TAG = 1
+        const val TYPE_PLACE = 2
+        const val TYPE_LIST = 3
+
+        private const val HIDDEN =
+            "tasks.completed = 0 AND tasks.deleted = 0 AND tasks.hideUntil >= :now"
+
+        /** active tasks per tag that are hidden at `:now` */
+        const val HIDDEN_TAGS =
+            "SELECT tags.tag_uid AS hidden_filter, COUNT(*) AS hidden_count FROM tasks INNER JOIN tags ON tags.task = tasks._id WHERE $HIDDEN GROUP BY tags.tag_uid"
+
+        /** active tasks per place that are hidden at `:now` */
+        const val HIDDEN_PLACES =
+            "SELECT geofences.place AS hidden_filter, COUNT(*) AS hidden_count FROM tasks INNER JOIN geofences ON geofences.task = tasks._id WHERE $HIDDEN GROUP BY geofences.place"
+
+        /** active tasks per list that are hidden at `:now` */
+        const val HIDDEN_LISTS =
+            "SELECT caldav_tasks.cd_calendar AS hidden_filter, COUNT(*) AS hidden_count FROM tasks INNER JOIN caldav_tasks ON caldav_tasks.cd_task = tasks._id WHERE $HIDDEN AND caldav_tasks.cd_deleted = 0 GROUP BY caldav_tasks.cd_calendar"
+
+        /** live aggregate of what [TABLE_NAME] should contain */
+        const val AGGREGATE = """
+            SELECT $TYPE_TAG AS fc_type, tags.tag_uid AS fc_filter, COUNT(*) AS fc_count
+            FROM tags INNER JOIN tasks ON tasks._id = tags.task
+            WHERE tasks.completed = 0 AND tasks.deleted = 0 AND tags.tag_uid IS NOT NULL
+            GROUP BY tags.tag_uid
+            UNION ALL
+            SELECT $TYPE_PLACE, geofences.place, COUNT(*)
+            FROM geofences INNER JOIN tasks ON tasks._id = geofences.task
+            WHERE tasks.completed = 0 AND tasks.deleted = 0 AND geofences.place IS NOT NULL
+            GROUP BY geofences.place
+            UNION ALL
+            SELECT $TYPE_LIST, caldav_tasks.cd_calendar, COUNT(*)
+            FROM caldav_tasks INNER JOIN tasks ON tasks._id = caldav_tasks.cd_task
+            WHERE tasks.completed = 0 AND tasks.deleted = 0 AND caldav_tasks.cd_deleted = 0 AND caldav_tasks.cd_calendar IS NOT NULL
+            GROUP BY caldav_tasks.cd_calendar
+        """
+
+        const val REBUILD = "INSERT INTO `$TABLE_NAME` (`fc_type`, `fc_filter`, `fc_count`) $AGGREGATE"
+
+        private fun isActive(task: String) =
+            "EXISTS (SELECT 1 FROM `tasks` WHERE `_id` = $task AND `completed` = 0 AND `deleted` = 0)"
+
+        private fun active(row: String) = "($row.`completed` = 0 AND $row.`deleted` = 0)"
+
+        /** add [delta] to the count of [filter] when [condition] holds, creating the row if needed */
+        private fun adjust(type: Int, filter: String, delta: Int, condition: String) = """
+            INSERT OR IGNORE INTO `$TABLE_NAME` (`fc_type`, `fc_filter`, `fc_count`) SELECT $type, $filter, 0 WHERE $condition;
+            UPDATE `$TABLE_NAME` SET `fc_count` = `fc_count` + $delta WHERE `fc_type` = $type AND `fc_filter` = $filter AND $condition;
+        """.trimIndent()
+
+        /**
+         * add [delta] to the count of every tag, place and list that [task] belongs to, creating
+         * rows for filters that had no active tasks
+         */
+        private fun adjustTask(task: String, delta: String) = """
+            INSERT OR IGNORE INTO `$TABLE_NAME` (`fc_type`, `fc_filter`, `fc_count`) SELECT $TYPE_TAG, `tag_uid`, 0 FROM `tags` WHERE `task` = $task AND `tag_uid` IS NOT NULL;
+            INSERT OR IGNORE INTO `$TABLE_NAME` (`fc_type`, `fc_filter`, `fc_count`) SELECT $TYPE_PLACE, `place`, 0 FROM `geofences` WHERE `task` = $task AND `place` IS NOT NULL;
+            INSERT OR IGNORE INTO `$TABLE_NAME` (`fc_type`, `fc_filter`, `fc_count`) SELECT $TYPE_LIST, `cd_calendar`, 0 FROM `caldav_tasks` WHERE `cd_task` = $task AND `cd_deleted` = 0 AND `cd_calendar` IS NOT NULL;
+            UPDATE `$TABLE_NAME` SET `fc_count` = `fc_count` + $delta * (SELECT COUNT(*) FROM `tags` WHERE `task` = $task AND `tag_uid` = `fc_filter`)
+            WHERE `fc_type` = $TYPE_TAG AND `fc_filter` IN (SELECT `tag_uid` FROM `tags` WHERE `task` = $task);
+            UPDATE `$TABLE_NAME` SET `fc_count` = `fc_count` + $delta * (SELECT COUNT(*) FROM `geofences` WHERE `task` = $task AND `place` = `fc_filter`)
+            WHERE `fc_type` = $TYPE_PLACE AND `fc_filter` IN (SELECT `place` FROM `geofences` WHERE `task` = $task);
+            UPDATE `$TABLE_NAME` SET `fc_count` = `fc_count` + $delta * (SELECT COUNT(*) FROM `caldav_tasks` WHERE `cd_task` = $task AND `cd_deleted` = 0 AND `cd_calendar` = `fc_filter`)
+            WHERE `fc_type` = $TYPE_LIST AND `fc_filter` IN (SELECT `cd_calendar` FROM `caldav_tasks` WHERE `cd_task` = $task AND `cd_deleted` = 0);
+        """.trimIndent()
+
+        /**
+         * @param columns every column of [table] that decides membership
+         * @param included extra condition for a row to count, e.g. not deleted
+         */
+        private fun membershipTriggers(
+            name: String,
+            table: String,
+            type: Int,
+            task: String,
+            filter: String,
+            columns: List<String> = listOf(task, filter),
+            included: (String) -> String = { "1" },
+        ): List<String> {
+            fun member(row: String) =
+                "$row.`$filter` IS NOT NULL AND ${included(row)} AND ${isActive("$row.`$task`")}"
+            return listOf(
+                """
+                    CREATE TRIGGER IF NOT EXISTS `filter_counts_${name}_insert` AFTER INSERT ON `$table`
+                    WHEN ${member("NEW")}
+                    BEGIN
+                    ${adjust(type, "NEW.`$filter`", 1, "1")}
+                    END
+                """.trimIndent(),
+                """
+                    CREATE TRIGGER IF NOT EXISTS `filter_counts_${name}_update` AFTER UPDATE OF ${columns.joinToString { "`$it`" }} ON `$table`
+                    WHEN ${columns.joinToString(" OR ") { "OLD.`$it` IS NOT NEW.`$it`" }}
+                    BEGIN
+                    ${adjust(type, "OLD.`$filter`", -1, member("OLD"))}
+                    ${adjust(type, "NEW.`$filter`", 1, member("NEW"))}
+                    END
+                """.trimIndent(),
+                """
+                    CREATE TRIGGER IF NOT EXISTS `filter_counts_${name}_delete` AFTER DELETE ON `$table`
+                    WHEN ${member("OLD")}
+                    BEGIN
+                    ${adjust(type, "OLD.`$filter`", -1, "1")}
+                    END
+                """.trimIndent(),
+            )
+        }
+
+        /**
+         * Deleting a task cascades to its memberships after the task row is gone, so the task's
+         * counts are removed before it is deleted. Membership triggers only count rows whose task
+         * exists and is active, so the cascade doesn't remove them twice.
+         */
+        val TRIGGERS = listOf(
+            """
+                CREATE TRIGGER IF NOT EXISTS `filter_counts_task_insert` AFTER INSERT ON `tasks`
+                WHEN ${active("NEW")}
+                BEGIN
+                ${adjustTask("NEW.`_id`", "1")}
+                END
+            """.trimIndent(),
+            """
+                CREATE TRIGGER IF NOT EXISTS `filter_counts_task_update` AFTER UPDATE OF `completed`, `deleted` ON `tasks`
+                WHEN ${active("OLD")} != ${active("NEW")}
+                BEGIN
+                ${adjustTask("NEW.`_id`", "(CASE WHEN ${active("NEW")} THEN 1 ELSE -1 END)")}
+                END
+            """.trimIndent(),
+            """
+                CREATE TRIGGER IF NOT EXISTS `filter_counts_task_delete` BEFORE DELETE ON `tasks`
+                WHEN ${active("OLD")}
+                BEGIN
+                ${adjustTask("OLD.`_id`", "-1")}
+                END
+            """.trimIndent(),
+        )
+            .plus(membershipTriggers("tag", "tags", TYPE_TAG, "task", "tag_uid"))
+            .plus(membershipTriggers("geofence", "geofences", TYPE_PLACE, "task", "place"))
+            .plus(
+                membershipTriggers(
+                    "caldav", "caldav_tasks", TYPE_LIST, "cd_task", "cd_calendar",
+                    columns = listOf("cd_task", "cd_calendar", "cd_deleted"),
+                ) { "$it.`cd_deleted` = 0" }
+            )
+    }
+}
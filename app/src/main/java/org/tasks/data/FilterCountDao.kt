@@ -0,0 +1,14 @@
+package org.tasks.data
+
+import androidx.room.Dao
+import androidx.room.Query
+
+@Dao
+interface FilterCountDao {
+    @Query("SELECT * FROM filter_counts WHERE fc_count != 0")
+    suspend fun getCounts(): List<FilterCount>
+
+    /** counts computed from scratch, for checking [getCounts] */
+    @Query(FilterCount.AGGREGATE)
+    suspend fun getAggregateCounts(): List<FilterCount>
+}
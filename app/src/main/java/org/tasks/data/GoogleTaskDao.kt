@@ -8,6 +8,7 @@ import androidx.room.Transaction
 import androidx.room.Update
 import com.todoroo.astrid.data.Task
 import org.tasks.data.CaldavAccount.Companion.TYPE_GOOGLE_TASKS
+import org.tasks.db.SuspendDbUtils.chunkedMap
 
 @Dao
 abstract class GoogleTaskDao {
@@ -79,6 +80,12 @@ abstract class GoogleTaskDao {
     @Query("SELECT * FROM caldav_tasks WHERE cd_remote_id = :remoteId LIMIT 1")
     abstract suspend fun getByRemoteId(remoteId: String): CaldavTask?
 
+    suspend fun getByRemoteId(remoteIds: List<String>): List<CaldavTask> =
+            remoteIds.chunkedMap { getByRemoteIdInternal(it) }
+
+    @Query("SELECT * FROM caldav_tasks WHERE cd_remote_id IN (:remoteIds)")
+    internal abstract suspend fun getByRemoteIdInternal(remoteIds: List<String>): List<CaldavTask>
+
     @Query("SELECT * FROM caldav_tasks WHERE cd_task = :taskId AND cd_deleted > 0")
     abstract suspend fun getDeletedByTaskId(taskId: Long): List<CaldavTask>
 
@@ -107,6 +114,22 @@ ORDER BY `order` DESC
     )
     abstract suspend fun getPrevious(listId: String, parent: Long, order: Long): String?
 
+    /** Local task directly above [order], whether or not it has been pushed yet */
+    @Query(
+        """
+SELECT cd_task
+FROM caldav_tasks
+         INNER JOIN tasks ON tasks._id = cd_task
+WHERE deleted = 0
+  AND cd_calendar = :listId
+  AND parent = :parent
+  AND `order` < :order
+ORDER BY `order` DESC
+LIMIT 1
+    """
+    )
+    abstract suspend fun getPreviousTask(listId: String, parent: Long, order: Long): Long?
+
     @Query("SELECT cd_remote_id FROM caldav_tasks WHERE cd_task = :task")
     abstract suspend fun getRemoteId(task: Long): String?
 
@@ -164,28 +187,31 @@ WHERE cd_remote_id = :id
     """)
     abstract suspend fun updatePosition(id: String, parent: String?, position: String)
 
+    /** @return ids of the tasks whose parent or order changed */
     @Transaction
-    open suspend fun reposition(caldavDao: CaldavDao, listId: String) {
+    open suspend fun reposition(caldavDao: CaldavDao, taskDao: TaskDao, listId: String): List<Long> {
+        val parents = caldavDao.getParentChanges(listId)
         caldavDao.updateParents(listId)
         val orderedTasks = getByRemoteOrder(listId)
         var subtasks = 0L
         var parent = 0L
+        val changed = HashMap<Long, Long>()
         for (task in orderedTasks) {
             if (task.parent > 0) {
                 if (task.order != subtasks) {
-                    task.order = subtasks
-                    update(task)
+                    changed[task.id] = subtasks
                 }
                 subtasks++
             } else {
                 subtasks = 0
                 if (task.order != parent) {
-                    task.order = parent
-                    update(task)
+                    changed[task.id] = parent
                 }
                 parent++
             }
         }
+        taskDao.setOrders(changed)
+        return parents.plus(changed.keys)
     }
 
     suspend fun validateSorting(listId: String) {
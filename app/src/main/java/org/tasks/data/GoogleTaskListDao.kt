@@ -28,10 +28,10 @@ interface GoogleTaskListDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insertOrReplace(googleTaskList: CaldavCalendar): Long
 
-    @Query("SELECT caldav_lists.*, COUNT(tasks._id) AS count"
+    @Query("SELECT caldav_lists.*, IFNULL(fc_count, 0) - IFNULL(hidden_count, 0) AS count"
             + " FROM caldav_lists "
-            + " LEFT JOIN caldav_tasks ON caldav_tasks.cd_calendar = caldav_lists.cdl_uuid"
-            + " LEFT JOIN tasks ON caldav_tasks.cd_task = tasks._id AND tasks.deleted = 0 AND tasks.completed = 0 AND tasks.hideUntil < :now AND cd_deleted = 0"
+            + " LEFT JOIN filter_counts ON fc_type = ${FilterCount.TYPE_LIST} AND fc_filter = caldav_lists.cdl_uuid"
+            + " LEFT JOIN (${FilterCount.HIDDEN_LISTS}) ON hidden_filter = caldav_lists.cdl_uuid"
             + " WHERE caldav_lists.cdl_account = :account"
             + " GROUP BY caldav_lists.cdl_uuid")
     suspend fun getGoogleTaskFilters(account: String, now: Long = currentTimeMillis()): List<GoogleTaskFilters>
@@ -68,6 +68,9 @@ interface LocationDao {
             + " WHERE geofences.task = :taskId")
     suspend fun getPlaceForTask(taskId: Long): Place?
 
+    @Query("SELECT geofences.*, places.* FROM geofences INNER JOIN places ON geofences.place = places.uid WHERE geofences.task IN (:taskIds)")
+    suspend fun getGeofences(taskIds: List<Long>): List<Location>
+
     @Query("SELECT geofences.*, places.* FROM geofences INNER JOIN places ON geofences.place = places.uid INNER JOIN tasks ON tasks._id = geofences.task WHERE tasks.deleted = 0 AND tasks.completed = 0")
     suspend fun getActiveGeofences(): List<Location>
 
@@ -98,12 +101,18 @@ interface LocationDao {
     @Query("SELECT * FROM geofences WHERE task = :taskId")
     suspend fun getGeofencesForTask(taskId: Long): List<Geofence>
 
+    @Query("SELECT * FROM geofences WHERE task > :from AND task <= :to")
+    suspend fun getGeofencesInRange(from: Long, to: Long): List<Geofence>
+
     @Query("SELECT * FROM places")
     suspend fun getPlaces(): List<Place>
 
     @Query("SELECT * FROM places WHERE place_id = :id")
     suspend fun getPlace(id: Long): Place?
 
+    @Query("SELECT * FROM places WHERE place_id IN (:ids)")
+    suspend fun getPlaces(ids: List<Long>): List<Place>
+
     @Query("SELECT * FROM places WHERE uid = :uid")
     suspend fun getPlace(uid: String): Place?
 
@@ -113,9 +122,9 @@ interface LocationDao {
     @Query("SELECT * FROM places WHERE latitude LIKE :latitude AND longitude LIKE :longitude")
     suspend fun findPlace(latitude: String, longitude: String): Place?
 
-    @Query("SELECT places.*, COUNT(tasks._id) AS count FROM places "
-            + " LEFT JOIN geofences ON geofences.place = places.uid "
-            + " LEFT JOIN tasks ON geofences.task = tasks._id AND tasks.completed = 0 AND tasks.deleted = 0 AND tasks.hideUntil < :now"
+    @Query("SELECT places.*, IFNULL(fc_count, 0) - IFNULL(hidden_count, 0) AS count FROM places "
+            + " LEFT JOIN filter_counts ON fc_type = ${FilterCount.TYPE_PLACE} AND fc_filter = places.uid"
+            + " LEFT JOIN (${FilterCount.HIDDEN_PLACES}) ON hidden_filter = places.uid"
             + " GROUP BY places.uid"
             + " ORDER BY name COLLATE NOCASE ASC")
     suspend fun getPlaceFilters(now: Long = currentTimeMillis()): List<LocationFilters>
@@ -2,6 +2,7 @@ package org.tasks.data
 
 import androidx.room.*
 import com.todoroo.astrid.data.Task
+import org.tasks.db.SuspendDbUtils.chunkedMap
 
 @Dao
 abstract class TagDao {
@@ -23,6 +24,15 @@ abstract class TagDao {
     @Query("SELECT * FROM tags WHERE task = :taskId")
     abstract suspend fun getTagsForTask(taskId: Long): List<Tag>
 
+    @Query("SELECT * FROM tags WHERE task > :from AND task <= :to")
+    abstract suspend fun getTagsInRange(from: Long, to: Long): List<Tag>
+
+    suspend fun getTagsForTasks(taskIds: List<Long>): List<Tag> =
+            taskIds.chunkedMap { getTagsForTasksInternal(it) }
+
+    @Query("SELECT * FROM tags WHERE task IN (:taskIds)")
+    internal abstract suspend fun getTagsForTasksInternal(taskIds: List<Long>): List<Tag>
+
     @Query("SELECT * FROM tags WHERE task = :taskId AND tag_uid = :tagUid")
     abstract suspend fun getTagByTaskAndTagUid(taskId: Long, tagUid: String): Tag?
 
@@ -30,9 +40,12 @@ abstract class TagDao {
     abstract suspend fun delete(tags: List<Tag>)
 
     @Transaction
-    open suspend fun applyTags(task: Task, tagDataDao: TagDataDao, current: List<TagData>) {
+    open suspend fun applyTags(task: Task, tagDataDao: TagDataDao, current: List<TagData>) =
+        applyTags(task, tagDataDao.getTagDataForTask(task.id), current)
+
+    suspend fun applyTags(task: Task, existingTags: Collection<TagData>, current: List<TagData>) {
         val taskId = task.id
-        val existing = HashSet(tagDataDao.getTagDataForTask(taskId))
+        val existing = HashSet(existingTags)
         val selected = HashSet<TagData>(current)
         val added = selected subtract existing
         val removed = existing subtract selected
@@ -136,10 +136,10 @@ abstract class TagDataDao {
         tag.id = insert(tag)
     }
 
-    @Query("SELECT tagdata.*, COUNT(tasks._id) AS count"
+    @Query("SELECT tagdata.*, IFNULL(fc_count, 0) - IFNULL(hidden_count, 0) AS count"
             + " FROM tagdata"
-            + " LEFT JOIN tags ON tags.tag_uid = tagdata.remoteId"
-            + " LEFT JOIN tasks ON tags.task = tasks._id AND tasks.deleted = 0 AND tasks.completed = 0 AND tasks.hideUntil < :now"
+            + " LEFT JOIN filter_counts ON fc_type = ${FilterCount.TYPE_TAG} AND fc_filter = tagdata.remoteId"
+            + " LEFT JOIN (${FilterCount.HIDDEN_TAGS}) ON hidden_filter = tagdata.remoteId"
             + " WHERE tagdata.name IS NOT NULL AND tagdata.name != ''"
             + " GROUP BY tagdata.remoteId")
     abstract suspend fun getTagFilters(now: Long = currentTimeMillis()): List<TagFilters>
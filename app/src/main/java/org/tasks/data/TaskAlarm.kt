@@ -0,0 +1,9 @@
+package org.tasks.data
+
+import androidx.room.Embedded
+import com.todoroo.astrid.data.Task
+
+data class TaskAlarm(
+    @Embedded val task: Task,
+    @Embedded(prefix = "alarm_") val alarm: Alarm,
+)
@@ -7,6 +7,12 @@ interface TaskAttachmentDao {
     @Query("SELECT * FROM attachment WHERE task = :task")
     suspend fun getAttachmentsForTask(task: Long): List<Attachment>
 
+    @Query("SELECT * FROM attachment WHERE task > :from AND task <= :to")
+    suspend fun getAttachmentsInRange(from: Long, to: Long): List<Attachment>
+
+    @Query("SELECT * FROM attachment WHERE task IN (:taskIds)")
+    suspend fun getAttachmentsForTasks(taskIds: List<Long>): List<Attachment>
+
     @Query("SELECT attachment_file.* FROM attachment_file INNER JOIN attachment ON attachment_file.file_uuid = attachment.file_uuid WHERE task = :task")
     suspend fun getAttachments(task: Long): List<TaskAttachment>
 
@@ -2,6 +2,7 @@ package org.tasks.data
 
 import androidx.room.ColumnInfo
 import androidx.room.Embedded
+import androidx.room.Ignore
 import com.todoroo.astrid.data.Task
 
 data class TaskContainer(
@@ -18,6 +19,10 @@ data class TaskContainer(
     var indent: Int = 0,
     var targetIndent: Int = 0,
 ){
+    /** layout-only row for a task that hasn't been loaded yet, it can't be clicked or selected */
+    @Ignore
+    var isPlaceholder: Boolean = false
+
     val caldav: String?
         get() = caldavTask?.calendar
 
@@ -14,6 +14,8 @@ import com.todoroo.astrid.data.Task.Companion.NO_ID
 import com.todoroo.astrid.helper.UUIDHelper
 import org.tasks.BuildConfig
 import org.tasks.data.Alarm.Companion.TYPE_SNOOZE
+import org.tasks.db.DbUtils.MAX_SQLITE_ARGS
+import org.tasks.db.QueryCompiler
 import org.tasks.db.SuspendDbUtils.chunkedMap
 import org.tasks.db.SuspendDbUtils.eachChunk
 import org.tasks.preferences.Preferences
@@ -81,6 +83,36 @@ abstract class TaskDao(private val database: Database) {
     @Query("SELECT * FROM tasks")
     abstract suspend fun getAll(): List<Task>
 
+    @Query("SELECT COUNT(1) FROM tasks")
+    abstract suspend fun count(): Int
+
+    /** @return the subset of [remoteIds] that already exist */
+    suspend fun getRemoteIds(remoteIds: List<String>): List<String> =
+            remoteIds.chunkedMap { getRemoteIdsInternal(it) }
+
+    @Query("SELECT remoteId FROM tasks WHERE remoteId IN (:remoteIds)")
+    internal abstract suspend fun getRemoteIdsInternal(remoteIds: List<String>): List<String>
+
+    /** @return up to [limit] tasks with ids greater than [after], in order of id */
+    @Query("SELECT * FROM tasks WHERE _id > :after ORDER BY _id LIMIT :limit")
+    abstract suspend fun getTasksAfter(after: Long, limit: Int): List<Task>
+
+    /**
+     * @return up to [limit] tasks with ids greater than [after], in order of id, that were modified,
+     * synchronized or commented on after [since]
+     */
+    @Query("""
+SELECT *
+FROM tasks
+WHERE _id > :after
+  AND (modified > :since
+    OR _id IN (SELECT cd_task FROM caldav_tasks WHERE cd_last_sync > :since)
+    OR remoteId IN (SELECT target_id FROM userActivity WHERE created_at > :since))
+ORDER BY _id
+LIMIT :limit
+""")
+    abstract suspend fun getTasksChangedAfter(since: Long, after: Long, limit: Int): List<Task>
+
     @Query("SELECT calendarUri FROM tasks " + "WHERE calendarUri IS NOT NULL AND calendarUri != ''")
     abstract suspend fun getAllCalendarEvents(): List<String>
 
@@ -99,11 +131,12 @@ abstract class TaskDao(private val database: Database) {
             database.withTransaction {
                 val start = if (BuildConfig.DEBUG) now() else 0
                 val queries = callback()
+                val values = PermaSql.getPlaceholderValues()
                 val last = queries.size - 1
                 for (i in 0 until last) {
-                    query(SimpleSQLiteQuery(queries[i]))
+                    query(QueryCompiler.query(queries[i], values))
                 }
-                val result = fetchTasks(SimpleSQLiteQuery(queries[last]))
+                val result = fetchTasks(QueryCompiler.query(queries[last], values))
                 Timber.v("%sms: %s", now() - start, queries.joinToString(";\n"))
                 result
             }
@@ -131,6 +164,16 @@ abstract class TaskDao(private val database: Database) {
     @Query("UPDATE tasks SET `order` = :order WHERE _id = :id")
     internal abstract suspend fun setOrder(id: Long, order: Long?)
 
+    /** [setOrder] for many tasks, with one UPDATE per chunk of [orders] (task id -> order) */
+    suspend fun setOrders(orders: Map<Long, Long>) =
+            orders.entries.eachChunk(MAX_SQLITE_ARGS / 3) { chunk ->
+                query(SimpleSQLiteQuery(
+                        "UPDATE tasks SET `order` = CASE _id ${"WHEN ? THEN ? ".repeat(chunk.size)}END " +
+                                "WHERE _id IN (${chunk.joinToString(",") { "?" }})",
+                        chunk.flatMap { listOf(it.key, it.value) }.plus(chunk.map { it.key }).toTypedArray()
+                ))
+            }
+
     suspend fun setParent(parent: Long, tasks: List<Long>) =
             tasks.eachChunk { setParentInternal(parent, it) }
 
@@ -140,33 +183,47 @@ abstract class TaskDao(private val database: Database) {
     @Query("UPDATE tasks SET lastNotified = :timestamp WHERE _id = :id AND lastNotified != :timestamp")
     abstract suspend fun setLastNotified(id: Long, timestamp: Long)
 
+    suspend fun setLastNotified(ids: List<Long>, timestamp: Long) =
+        ids.eachChunk { setLastNotifiedInternal(it, timestamp) }
+
+    @Query("UPDATE tasks SET lastNotified = :timestamp WHERE _id IN (:ids) AND lastNotified != :timestamp")
+    internal abstract suspend fun setLastNotifiedInternal(ids: List<Long>, timestamp: Long)
+
     suspend fun getChildren(id: Long): List<Long> = getChildren(listOf(id))
 
     @Query("""
-WITH RECURSIVE recursive_tasks (task) AS (
-    SELECT _id
-    FROM tasks
-    WHERE parent IN (:ids)
-    UNION ALL
-    SELECT _id
-    FROM tasks
-             INNER JOIN recursive_tasks ON recursive_tasks.task = tasks.parent
-    WHERE tasks.deleted = 0)
-SELECT task
-FROM recursive_tasks
+SELECT task_hierarchy.task
+FROM task_hierarchy
+         INNER JOIN tasks ON tasks._id = task_hierarchy.task
+WHERE task_hierarchy.ancestor IN (:ids)
+  AND (task_hierarchy.depth = 1 OR (tasks.deleted = 0 AND NOT EXISTS (
+    SELECT 1
+    FROM task_hierarchy AS path
+             INNER JOIN tasks AS path_task ON path_task._id = path.ancestor
+    WHERE path.task = task_hierarchy.task
+      AND path.depth < task_hierarchy.depth - 1
+      AND path_task.deleted > 0)))
+ORDER BY task_hierarchy.depth, task_hierarchy.task
     """)
     abstract suspend fun getChildren(ids: List<Long>): List<Long>
 
     @Query("""
-WITH RECURSIVE recursive_tasks (task, parent) AS (
-    SELECT _id, parent FROM tasks WHERE _id = :parent
-    UNION ALL
-    SELECT _id, tasks.parent FROM tasks
-        INNER JOIN recursive_tasks ON recursive_tasks.parent = tasks._id
-    WHERE tasks.deleted = 0
-)
-SELECT task
-FROM recursive_tasks
+SELECT _id
+FROM tasks
+WHERE _id = :parent
+UNION ALL
+SELECT task_hierarchy.ancestor
+FROM task_hierarchy
+         INNER JOIN tasks ON tasks._id = task_hierarchy.ancestor
+WHERE task_hierarchy.task = :parent
+  AND tasks.deleted = 0
+  AND NOT EXISTS (
+    SELECT 1
+    FROM task_hierarchy AS path
+             INNER JOIN tasks AS path_task ON path_task._id = path.ancestor
+    WHERE path.task = :parent
+      AND path.depth < task_hierarchy.depth
+      AND path_task.deleted > 0)
 """)
     abstract suspend fun getParents(parent: Long): List<Long>
 
@@ -217,6 +274,16 @@ FROM recursive_tasks
         return count
     }
 
+    /** @return how many of [ids] match [filter], see [TaskListQuery.getMatchQuery] */
+    suspend fun count(preferences: Preferences, filter: Filter, ids: List<Long>): Int =
+        count(
+            QueryCompiler
+                .compile(TaskListQuery.getMatchQuery(preferences, filter))
+                .bind(PermaSql.getPlaceholderValues()) {
+                    "SELECT COUNT(*) FROM ($it) WHERE _id IN (${ids.joinToString(",")})"
+                }
+        )
+
     suspend fun fetchFiltered(filter: Filter): List<Task> = fetchFiltered(filter.getSqlQuery())
 
     suspend fun fetchFiltered(queryTemplate: String): List<Task> {
@@ -248,9 +315,9 @@ WHERE cd_id IS NULL
 
     companion object {
         fun getQuery(queryTemplate: String, vararg fields: Field): SimpleSQLiteQuery =
-                SimpleSQLiteQuery(
+                QueryCompiler.query(
                         com.todoroo.andlib.sql.Query.select(*fields)
-                                .withQueryTemplate(PermaSql.replacePlaceholdersForQuery(queryTemplate))
+                                .withQueryTemplate(queryTemplate)
                                 .from(Task.TABLE)
                                 .toString())
     }
@@ -0,0 +1,91 @@
+package org.tasks.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+import com.todoroo.andlib.data.Table
+
+/**
+ * Transitive closure of `tasks.parent`. Every task has one row for each of its ancestors, where
+ * `depth` is the number of hops from the task up to that ancestor (1 = direct parent).
+ *
+ * Rows are maintained by [TRIGGERS] so that every write path that touches `tasks.parent` keeps
+ * the table up to date without having to remember to do so.
+ *
+ * Used for ancestor and descendant lookups. Task lists don't read it, see
+ * [TaskListQueryRecursive.getRecursiveQuery]
+ */
+@Entity(
+    tableName = TaskHierarchy.TABLE_NAME,
+    primaryKeys = ["task", "ancestor"],
+    indices = [Index(value = ["ancestor"])],
+)
+data class TaskHierarchy(
+    @ColumnInfo(name = "task")
+    val task: Long,
+    @ColumnInfo(name = "ancestor")
+    val ancestor: Long,
+    @ColumnInfo(name = "depth")
+    val depth: Int,
+) {
+    companion object {
+        const val TABLE_NAME = "task_hierarchy"
+        @JvmField val TABLE = Table(TABLE_NAME)
+        @JvmField val TASK = TABLE.column("task")
+        @JvmField val ANCESTOR = TABLE.column("ancestor")
+        @JvmField val DEPTH = TABLE.column("depth")
+
+        /** unlink [id] and its descendants from every ancestor of [id] */
+        private fun detach(id: String) = """
+            DELETE FROM `$TABLE_NAME`
+            WHERE `task` IN (SELECT $id UNION ALL SELECT `task` FROM `$TABLE_NAME` WHERE `ancestor` = $id)
+              AND `ancestor` IN (SELECT `ancestor` FROM `$TABLE_NAME` WHERE `task` = $id);
+        """.trimIndent()
+
+        /** link [id] and its descendants to [parent] and every ancestor of [parent] */
+        private fun attach(id: String, parent: String) = """
+            INSERT OR IGNORE INTO `$TABLE_NAME` (`task`, `ancestor`, `depth`)
+            SELECT d.`task`, a.`ancestor`, d.`depth` + a.`depth` + 1
+            FROM (SELECT $id AS `task`, 0 AS `depth` UNION ALL SELECT `task`, `depth` FROM `$TABLE_NAME` WHERE `ancestor` = $id) AS d,
+                 (SELECT $parent AS `ancestor`, 0 AS `depth` UNION ALL SELECT `ancestor`, `depth` FROM `$TABLE_NAME` WHERE `task` = $parent) AS a
+            WHERE $parent > 0;
+        """.trimIndent()
+
+        val TRIGGERS = listOf(
+            """
+                CREATE TRIGGER IF NOT EXISTS `task_hierarchy_insert` AFTER INSERT ON `tasks`
+                WHEN NEW.`parent` > 0
+                BEGIN
+                ${attach("NEW.`_id`", "NEW.`parent`")}
+                END
+            """.trimIndent(),
+            """
+                CREATE TRIGGER IF NOT EXISTS `task_hierarchy_update` AFTER UPDATE OF `parent` ON `tasks`
+                WHEN NEW.`parent` != OLD.`parent`
+                BEGIN
+                ${detach("NEW.`_id`")}
+                ${attach("NEW.`_id`", "NEW.`parent`")}
+                END
+            """.trimIndent(),
+            """
+                CREATE TRIGGER IF NOT EXISTS `task_hierarchy_delete` AFTER DELETE ON `tasks`
+                BEGIN
+                ${detach("OLD.`_id`")}
+                END
+            """.trimIndent(),
+        )
+
+        const val REBUILD = """
+            INSERT INTO `$TABLE_NAME` (`task`, `ancestor`, `depth`)
+            WITH RECURSIVE `closure` (`task`, `ancestor`, `depth`) AS (
+                SELECT `_id`, `parent`, 1 FROM `tasks` WHERE `parent` > 0
+                UNION ALL
+                SELECT `closure`.`task`, `tasks`.`parent`, `closure`.`depth` + 1
+                FROM `closure`
+                         INNER JOIN `tasks` ON `tasks`.`_id` = `closure`.`ancestor`
+                WHERE `tasks`.`parent` > 0
+            )
+            SELECT `task`, `ancestor`, MIN(`depth`) FROM `closure` GROUP BY `task`, `ancestor`
+        """
+    }
+}
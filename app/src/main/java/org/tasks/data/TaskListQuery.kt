@@ -3,8 +3,10 @@ package org.tasks.data
 import com.todoroo.andlib.sql.Criterion
 import com.todoroo.andlib.sql.Field.Companion.field
 import com.todoroo.andlib.sql.Join
+import com.todoroo.andlib.sql.Query
 import com.todoroo.astrid.activity.TaskListFragment
 import com.todoroo.astrid.api.Filter
+import com.todoroo.astrid.core.SortHelper
 import com.todoroo.astrid.data.Task
 import org.tasks.data.CaldavAccount.Companion.TYPE_GOOGLE_TASKS
 import org.tasks.data.TaskListQueryNonRecursive.getNonRecursiveQuery
@@ -33,13 +35,48 @@ object TaskListQuery {
     fun getQuery(
             preferences: QueryPreferences,
             filter: Filter,
-    ): MutableList<String> = when {
-        filter.supportsManualSort() && preferences.isManualSort ->
-            getRecursiveQuery(filter, preferences)
-        filter.supportsAstridSorting() && preferences.isAstridSort ->
-            getNonRecursiveQuery(filter, preferences)
-        filter.supportsSorting() ->
-            getRecursiveQuery(filter, preferences)
-        else -> getNonRecursiveQuery(filter, preferences)
+    ): MutableList<String> = if (isRecursive(preferences, filter)) {
+        getRecursiveQuery(filter, preferences)
+    } else {
+        getNonRecursiveQuery(filter, preferences)
     }
-}
\ No newline at end of file
+
+    fun supportsPaging(preferences: QueryPreferences, filter: Filter) =
+        isRecursive(preferences, filter) &&
+                !(filter.supportsManualSort() && preferences.isManualSort)
+
+    /**
+     * Same rows and order as [getQuery], but only the columns needed to lay out the list. Full
+     * rows are then fetched by id with [getQuery], for a window around the visible rows in large
+     * lists
+     */
+    fun getEntriesQuery(
+        preferences: QueryPreferences,
+        filter: Filter,
+    ): MutableList<String> =
+        getRecursiveQuery(filter, preferences, TaskListQueryRecursive.ENTRY_FIELDS)
+
+    private fun isRecursive(preferences: QueryPreferences, filter: Filter) = when {
+        filter.supportsManualSort() && preferences.isManualSort -> true
+        filter.supportsAstridSorting() && preferences.isAstridSort -> false
+        filter.supportsSorting() -> true
+        else -> false
+    }
+
+    /**
+     * Ids of the tasks that [filter] matches, with the completed and hidden flags that the list
+     * applies. Hierarchy, joins and sorting are left out
+     */
+    fun getMatchQuery(preferences: QueryPreferences, filter: Filter): String =
+        Query.select(Task.ID)
+            .withQueryTemplate(SortHelper.adjustQueryForFlags(preferences, filter.getSqlQuery()))
+            .from(Task.TABLE)
+            .toString()
+
+    /**
+     * Fetch specific rows with the same joins as a list query. Values that depend on the
+     * surrounding result set (indent, children, sort keys, section) are not populated
+     */
+    @JvmStatic
+    fun getQuery(ids: List<Long>): MutableList<String> = TaskListQueryNonRecursive.getQuery(ids)
+}
@@ -5,7 +5,6 @@ import com.todoroo.andlib.sql.Join
 import com.todoroo.andlib.sql.Query
 import com.todoroo.astrid.activity.TaskListFragment
 import com.todoroo.astrid.api.Filter
-import com.todoroo.astrid.api.PermaSql
 import com.todoroo.astrid.core.SortHelper
 import com.todoroo.astrid.data.Task
 import org.tasks.filters.RecentlyModifiedFilter
@@ -51,8 +50,16 @@ internal object TaskListQueryNonRecursive {
         }
         return mutableListOf(
                 Query.select(*FIELDS.plus(sortGroup))
-                        .withQueryTemplate(PermaSql.replacePlaceholdersForQuery(groupedQuery))
+                        .withQueryTemplate(groupedQuery)
                         .from(Task.TABLE)
                         .toString())
     }
+
+    fun getQuery(ids: List<Long>): MutableList<String> =
+        mutableListOf(
+            Query.select(*FIELDS.plus(field("NULL").`as`("sortGroup")))
+                .withQueryTemplate("$JOINS WHERE ${Task.ID.`in`(ids)} GROUP BY ${Task.ID}")
+                .from(Task.TABLE)
+                .toString()
+        )
 }
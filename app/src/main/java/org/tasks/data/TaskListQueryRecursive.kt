@@ -2,6 +2,7 @@ package org.tasks.data
 
 import com.todoroo.andlib.data.Table
 import com.todoroo.andlib.sql.Criterion
+import com.todoroo.andlib.sql.Field
 import com.todoroo.andlib.sql.Field.Companion.field
 import com.todoroo.andlib.sql.Join
 import com.todoroo.andlib.sql.Query
@@ -9,7 +10,6 @@ import com.todoroo.andlib.sql.QueryTemplate
 import com.todoroo.astrid.api.CaldavFilter
 import com.todoroo.astrid.api.Filter
 import com.todoroo.astrid.api.GtasksFilter
-import com.todoroo.astrid.api.PermaSql
 import com.todoroo.astrid.core.SortHelper
 import com.todoroo.astrid.data.Task
 import org.tasks.data.TaskDao.TaskCriteria.activeAndVisible
@@ -28,24 +28,52 @@ internal object TaskListQueryRecursive {
                     field("secondary_sort").`as`("secondarySort"),
                     field("parent_complete").`as`("parentComplete"),
             )).toTypedArray()
+    /** columns needed to lay out the list, see [TaskListQuery.getEntriesQuery] */
+    val ENTRY_FIELDS = arrayOf(
+            field("tasks._id"),
+            field("tasks.parent"),
+            field("tasks.collapsed"),
+            field("tasks.completed"),
+            field("parent_complete").`as`("parentComplete"),
+            field("children"),
+            field("sort_group").`as`("sortGroup"),
+            field("primary_sort").`as`("primarySort"),
+            field("secondary_sort").`as`("secondarySort"),
+            field("indent"),
+    )
     private val JOINS = """
         ${Join.inner(RECURSIVE, Task.ID.eq(RECURSIVE_TASK))}
         LEFT JOIN (SELECT parent, count(distinct recursive_tasks.task) AS children FROM recursive_tasks GROUP BY parent) AS recursive_children ON recursive_children.parent = tasks._id
         ${TaskListQuery.JOINS}
     """.trimIndent()
+    private val CREATE_TABLE = """
+        CREATE TEMPORARY TABLE IF NOT EXISTS `recursive_tasks` (
+            `task` INTEGER NOT NULL, `parent_complete`, `subtask_complete`, `completion_sort`,
+            `parent` INTEGER NOT NULL, `collapsed`, `hidden`, `indent` INTEGER NOT NULL, `title`,
+            `primary_group`, `primary_sort`, `secondary_sort`, `sort_group`
+        )
+    """.trimIndent()
+    private const val REMOVE_DUPLICATES =
+        "DELETE FROM `recursive_tasks` WHERE `indent` < (SELECT MAX(`indent`) FROM `recursive_tasks` AS r WHERE r.`task` = `recursive_tasks`.`task`)"
     private val SUBTASK_QUERY =
             QueryTemplate()
                     .join(Join.inner(RECURSIVE, Task.PARENT.eq(RECURSIVE_TASK)))
                     .where(activeAndVisible())
 
+    /**
+     * Lists are ordered depth first, with siblings sorted by expressions that depend on the sort
+     * and group modes. [TaskHierarchy] can find the rows but not put them in that order without
+     * window functions, so the list is still built with a recursive traversal into a temp table
+     */
     fun getRecursiveQuery(
         filter: Filter,
         preferences: QueryPreferences,
+        fields: Array<Field> = FIELDS,
     ): MutableList<String> {
         val parentQuery = when (filter) {
             is CaldavFilter -> newCaldavQuery(filter.uuid)
             is GtasksFilter -> newCaldavQuery(filter.list.uuid!!)
-            else -> PermaSql.replacePlaceholdersForQuery(filter.getSqlQuery())
+            else -> filter.getSqlQuery()
         }
         val manualSort = preferences.isManualSort
         val groupPreference = preferences.groupMode
@@ -79,7 +107,7 @@ internal object TaskListQueryRecursive {
             "0"
         }
         val withClause = """
-            CREATE TEMPORARY TABLE `recursive_tasks` AS
+            INSERT INTO temp.`recursive_tasks`
             WITH RECURSIVE recursive_tasks (task, parent_complete, subtask_complete, completion_sort, parent, collapsed, hidden, indent, title, primary_group, primary_sort, secondary_sort, sort_group) AS (
                 SELECT tasks._id, $parentCompleted as parent_complete, 0 as subtask_complete, $completionSort as completion_sort, 0 as parent, tasks.collapsed as collapsed, 0 as hidden, 0 AS sort_indent, UPPER(tasks.title) AS sort_title, $primaryGroupSelector as primary_group, $primarySortSelect as primary_sort, NULL as secondarySort, ${SortHelper.getSortGroup(groupMode)}
                 FROM tasks
@@ -98,16 +126,18 @@ internal object TaskListQueryRecursive {
                 $SUBTASK_QUERY
                 ORDER BY parent_complete ASC, sort_indent DESC, subtask_complete ASC, completion_sort ${if (preferences.completedAscending) "ASC" else "DESC"}, ${SortHelper.orderForGroupTypeRecursive(groupMode, groupAscending)}, ${SortHelper.orderForSortTypeRecursive(sortMode, sortAscending)}
             ) SELECT * FROM recursive_tasks
-            WHERE indent = (SELECT MAX(indent) FROM recursive_tasks as r WHERE r.task = recursive_tasks.task)
         """.trimIndent()
 
         return mutableListOf(
-            "DROP TABLE IF EXISTS `recursive_tasks`",
+            CREATE_TABLE,
+            "CREATE INDEX IF NOT EXISTS `r_tasks` ON `recursive_tasks` (`task`, `indent`)",
+            "CREATE INDEX IF NOT EXISTS `r_parents` ON `recursive_tasks` (`parent`)",
+            "DELETE FROM `recursive_tasks`",
             SortHelper.adjustQueryForFlags(preferences, withClause),
-            "CREATE INDEX `r_tasks` ON `recursive_tasks` (`task`)",
-            "CREATE INDEX `r_parents` ON `recursive_tasks` (`parent`)",
-            Query.select(*FIELDS)
-                .withQueryTemplate(PermaSql.replacePlaceholdersForQuery("$JOINS WHERE recursive_tasks.hidden = 0"))
+            REMOVE_DUPLICATES,
+            // rows were inserted in list order
+            Query.select(*fields)
+                .withQueryTemplate("$JOINS WHERE recursive_tasks.hidden = 0 ORDER BY recursive_tasks.rowid")
                 .from(Task.TABLE)
                 .toString(),
         )
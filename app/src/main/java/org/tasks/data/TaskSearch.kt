@@ -0,0 +1,115 @@
+package org.tasks.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+import androidx.room.PrimaryKey
+import com.todoroo.andlib.data.Table
+import com.todoroo.andlib.sql.Field.Companion.field
+
+/**
+ * Full text index of the text a task can be found by. The rowid is the task id; the tags,
+ * comments and places columns are denormalized from their tables and kept current by [TRIGGERS]
+ */
+@Fts4(tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = TaskSearch.TABLE_NAME)
+data class TaskSearch(
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    val id: Long,
+    @ColumnInfo(name = "title")
+    val title: String?,
+    @ColumnInfo(name = "notes")
+    val notes: String?,
+    @ColumnInfo(name = "tags")
+    val tags: String?,
+    @ColumnInfo(name = "comments")
+    val comments: String?,
+    @ColumnInfo(name = "places")
+    val places: String?,
+) {
+    companion object {
+        const val TABLE_NAME = "task_search"
+        @JvmField val TABLE = Table(TABLE_NAME)
+        @JvmField val ROWID = TABLE.column("rowid")
+        @JvmField val MATCH = field(TABLE_NAME)
+
+        private val TOKEN_SEPARATOR = "[^\\p{L}\\p{N}]+".toRegex()
+
+        /**
+         * @return an FTS phrase query for the words in [query], with the last word prefix
+         * matched, or null if [query] doesn't contain anything that can be matched against the
+         * index. The words have to appear in order in the same column, like a LIKE substring
+         * match would require
+         */
+        fun matchQuery(query: String): String? =
+            query
+                .split(TOKEN_SEPARATOR)
+                .filter { it.isNotBlank() }
+                .takeIf { it.isNotEmpty() }
+                ?.joinToString(" ", prefix = "\"", postfix = "*\"") { it.lowercase() }
+
+        private fun tags(task: String) =
+            "(SELECT group_concat(`name`, ' ') FROM `tags` WHERE `tags`.`task` = $task)"
+
+        private fun comments(uuid: String) =
+            "(SELECT group_concat(`message`, ' ') FROM `userActivity` WHERE `target_id` = $uuid)"
+
+        private fun places(task: String) =
+            "(SELECT group_concat(IFNULL(`name`, '') || ' ' || IFNULL(`address`, ''), ' ') FROM `geofences` INNER JOIN `places` ON `geofences`.`place` = `places`.`uid` WHERE `geofences`.`task` = $task)"
+
+        private fun updateTags(task: String) =
+            "UPDATE `$TABLE_NAME` SET `tags` = ${tags(task)} WHERE `rowid` = $task;"
+
+        private fun updateComments(uuid: String) =
+            "UPDATE `$TABLE_NAME` SET `comments` = ${comments(uuid)} WHERE `rowid` = (SELECT `_id` FROM `tasks` WHERE `remoteId` = $uuid);"
+
+        private fun updatePlaces(task: String) =
+            "UPDATE `$TABLE_NAME` SET `places` = ${places(task)} WHERE `rowid` = $task;"
+
+        val TRIGGERS = listOf(
+            """
+                CREATE TRIGGER IF NOT EXISTS `task_search_insert` AFTER INSERT ON `tasks`
+                BEGIN
+                INSERT OR REPLACE INTO `$TABLE_NAME` (`rowid`, `title`, `notes`, `tags`, `comments`, `places`)
+                VALUES (NEW.`_id`, NEW.`title`, NEW.`notes`, ${tags("NEW.`_id`")}, ${comments("NEW.`remoteId`")}, ${places("NEW.`_id`")});
+                END
+            """.trimIndent(),
+            """
+                CREATE TRIGGER IF NOT EXISTS `task_search_update` AFTER UPDATE OF `title`, `notes`, `remoteId` ON `tasks`
+                WHEN NEW.`title` IS NOT OLD.`title` OR NEW.`notes` IS NOT OLD.`notes` OR NEW.`remoteId` IS NOT OLD.`remoteId`
+                BEGIN
+                UPDATE `$TABLE_NAME` SET `title` = NEW.`title`, `notes` = NEW.`notes`, `comments` = ${comments("NEW.`remoteId`")} WHERE `rowid` = NEW.`_id`;
+                END
+            """.trimIndent(),
+            """
+                CREATE TRIGGER IF NOT EXISTS `task_search_delete` AFTER DELETE ON `tasks`
+                BEGIN
+                DELETE FROM `$TABLE_NAME` WHERE `rowid` = OLD.`_id`;
+                END
+            """.trimIndent(),
+            "CREATE TRIGGER IF NOT EXISTS `task_search_tag_insert` AFTER INSERT ON `tags` BEGIN ${updateTags("NEW.`task`")} END",
+            "CREATE TRIGGER IF NOT EXISTS `task_search_tag_update` AFTER UPDATE OF `name` ON `tags` BEGIN ${updateTags("NEW.`task`")} END",
+            "CREATE TRIGGER IF NOT EXISTS `task_search_tag_delete` AFTER DELETE ON `tags` BEGIN ${updateTags("OLD.`task`")} END",
+            "CREATE TRIGGER IF NOT EXISTS `task_search_comment_insert` AFTER INSERT ON `userActivity` BEGIN ${updateComments("NEW.`target_id`")} END",
+            "CREATE TRIGGER IF NOT EXISTS `task_search_comment_update` AFTER UPDATE OF `message` ON `userActivity` BEGIN ${updateComments("NEW.`target_id`")} END",
+            "CREATE TRIGGER IF NOT EXISTS `task_search_comment_delete` AFTER DELETE ON `userActivity` BEGIN ${updateComments("OLD.`target_id`")} END",
+            "CREATE TRIGGER IF NOT EXISTS `task_search_geofence_insert` AFTER INSERT ON `geofences` BEGIN ${updatePlaces("NEW.`task`")} END",
+            "CREATE TRIGGER IF NOT EXISTS `task_search_geofence_update` AFTER UPDATE OF `place` ON `geofences` BEGIN ${updatePlaces("NEW.`task`")} END",
+            "CREATE TRIGGER IF NOT EXISTS `task_search_geofence_delete` AFTER DELETE ON `geofences` BEGIN ${updatePlaces("OLD.`task`")} END",
+            """
+                CREATE TRIGGER IF NOT EXISTS `task_search_place_update` AFTER UPDATE OF `name`, `address` ON `places`
+                BEGIN
+                UPDATE `$TABLE_NAME` SET `places` = ${places("`$TABLE_NAME`.`rowid`")} WHERE `rowid` IN (SELECT `task` FROM `geofences` WHERE `place` = NEW.`uid`);
+                END
+            """.trimIndent(),
+        )
+
+        val REBUILD = """
+            INSERT INTO `$TABLE_NAME` (`rowid`, `title`, `notes`, `tags`, `comments`, `places`)
+            SELECT `_id`, `title`, `notes`, ${tags("`tasks`.`_id`")}, ${comments("`tasks`.`remoteId`")}, ${places("`tasks`.`_id`")}
+            FROM `tasks`
+        """.trimIndent()
+    }
+}
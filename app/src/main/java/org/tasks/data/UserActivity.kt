@@ -6,6 +6,7 @@ import android.os.Parcelable
 import androidx.room.ColumnInfo
 import androidx.room.Entity
 import androidx.room.Ignore
+import androidx.room.Index
 import androidx.room.PrimaryKey
 import com.todoroo.andlib.data.Table
 import com.todoroo.astrid.data.Task
@@ -15,7 +16,10 @@ import org.tasks.Strings
 import timber.log.Timber
 import java.io.File
 
-@Entity(tableName = "userActivity")
+@Entity(
+    tableName = "userActivity",
+    indices = [Index(value = ["target_id"])],
+)
 class UserActivity : Parcelable {
     @PrimaryKey(autoGenerate = true)
     @ColumnInfo(name = "_id")
@@ -5,6 +5,7 @@ import com.todoroo.andlib.utility.DateUtilities
 import com.todoroo.astrid.data.Task
 import com.todoroo.astrid.helper.UUIDHelper
 import kotlinx.coroutines.flow.Flow
+import org.tasks.db.SuspendDbUtils.chunkedMap
 
 @Dao
 abstract class UserActivityDao {
@@ -23,6 +24,15 @@ abstract class UserActivityDao {
     @Query("SELECT userActivity.* FROM userActivity INNER JOIN tasks ON tasks._id = :task WHERE target_id = tasks.remoteId")
     abstract suspend fun getComments(task: Long): List<UserActivity>
 
+    @Query("SELECT userActivity.* FROM userActivity INNER JOIN tasks ON target_id = tasks.remoteId WHERE tasks._id > :from AND tasks._id <= :to")
+    abstract suspend fun getCommentsInRange(from: Long, to: Long): List<UserActivity>
+
+    suspend fun getCommentsForTasks(remoteIds: List<String>): List<UserActivity> =
+            remoteIds.chunkedMap { getCommentsForTasksInternal(it) }
+
+    @Query("SELECT * FROM userActivity WHERE target_id IN (:remoteIds)")
+    internal abstract suspend fun getCommentsForTasksInternal(remoteIds: List<String>): List<UserActivity>
+
     @Query("SELECT * FROM userActivity")
     abstract suspend fun getComments(): List<UserActivity>
 
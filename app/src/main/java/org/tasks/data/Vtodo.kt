@@ -0,0 +1,22 @@
+package org.tasks.data
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+
+/** Last VTODO received from or sent to the server for a [CaldavTask], stored compressed */
+@Entity(
+    tableName = Vtodo.TABLE_NAME,
+    primaryKeys = ["calendar", "object"],
+)
+class Vtodo(
+    @ColumnInfo(name = "calendar")
+    val calendar: String,
+    @ColumnInfo(name = "object")
+    val `object`: String,
+    @ColumnInfo(name = "data", typeAffinity = ColumnInfo.BLOB)
+    val data: ByteArray,
+) {
+    companion object {
+        const val TABLE_NAME = "vtodo"
+    }
+}
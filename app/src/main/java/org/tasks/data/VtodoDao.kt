@@ -0,0 +1,38 @@
+package org.tasks.data
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import org.tasks.db.SuspendDbUtils.chunkedMap
+import org.tasks.db.SuspendDbUtils.eachChunk
+
+@Dao
+abstract class VtodoDao {
+    suspend fun get(calendar: String, objects: List<String>): List<Vtodo> =
+            objects.chunkedMap { getInternal(calendar, it) }
+
+    @Query("SELECT * FROM vtodo WHERE calendar = :calendar AND object IN (:objects)")
+    internal abstract suspend fun getInternal(calendar: String, objects: List<String>): List<Vtodo>
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract suspend fun insert(vtodos: List<Vtodo>)
+
+    suspend fun move(from: String, to: String, objects: List<String>) =
+            objects.eachChunk { moveInternal(from, to, it) }
+
+    @Query("UPDATE OR REPLACE vtodo SET calendar = :to WHERE calendar = :from AND object IN (:objects)")
+    internal abstract suspend fun moveInternal(from: String, to: String, objects: List<String>)
+
+    suspend fun delete(calendar: String, objects: List<String>) =
+            objects.eachChunk { deleteInternal(calendar, it) }
+
+    @Query("DELETE FROM vtodo WHERE calendar = :calendar AND object IN (:objects)")
+    internal abstract suspend fun deleteInternal(calendar: String, objects: List<String>)
+
+    @Query("DELETE FROM vtodo WHERE calendar = :calendar")
+    abstract suspend fun deleteCalendar(calendar: String)
+
+    @Query("DELETE FROM vtodo WHERE calendar IN (SELECT cdl_uuid FROM caldav_lists WHERE cdl_account = :account)")
+    abstract suspend fun deleteAccount(account: String)
+}
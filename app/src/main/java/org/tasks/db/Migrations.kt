@@ -13,6 +13,7 @@ import com.todoroo.astrid.data.Task.Companion.NOTIFY_AFTER_DEADLINE
 import com.todoroo.astrid.data.Task.Companion.NOTIFY_AT_DEADLINE
 import com.todoroo.astrid.data.Task.Companion.NOTIFY_AT_START
 import org.tasks.R
+import org.tasks.caldav.DatabaseVtodoStore
 import org.tasks.caldav.FileStorage
 import org.tasks.data.Alarm.Companion.TYPE_RANDOM
 import org.tasks.data.Alarm.Companion.TYPE_REL_END
@@ -22,7 +23,10 @@ import org.tasks.data.CaldavAccount.Companion.SERVER_UNKNOWN
 import org.tasks.data.CaldavAccount.Companion.TYPE_GOOGLE_TASKS
 import org.tasks.data.CaldavCalendar.Companion.ACCESS_OWNER
 import org.tasks.data.CaldavCalendar.Companion.ACCESS_READ_ONLY
+import org.tasks.data.FilterCount
 import org.tasks.data.OpenTaskDao.Companion.getLong
+import org.tasks.data.TaskHierarchy
+import org.tasks.data.TaskSearch
 import org.tasks.extensions.getLongOrNull
 import org.tasks.extensions.getString
 import org.tasks.preferences.DefaultFilterProvider
@@ -630,6 +634,68 @@ object Migrations {
         }
     }
 
+    private val MIGRATION_88_89 = object : Migration(88, 89) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `task_hierarchy` (`task` INTEGER NOT NULL, `ancestor` INTEGER NOT NULL, `depth` INTEGER NOT NULL, PRIMARY KEY(`task`, `ancestor`))")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_task_hierarchy_ancestor` ON `task_hierarchy` (`ancestor`)")
+            database.execSQL(TaskHierarchy.REBUILD)
+            TaskHierarchy.TRIGGERS.forEach { database.execSQL(it) }
+        }
+    }
+
+    private val MIGRATION_89_90 = object : Migration(89, 90) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `task_search` USING FTS4(`title` TEXT, `notes` TEXT, `tags` TEXT, `comments` TEXT, `places` TEXT, tokenize=unicode61)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_userActivity_target_id` ON `userActivity` (`target_id`)")
+            database.execSQL(TaskSearch.REBUILD)
+            TaskSearch.TRIGGERS.forEach { database.execSQL(it) }
+        }
+    }
+
+    private val MIGRATION_90_91 = object : Migration(90, 91) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+            database.execSQL("ALTER TABLE `caldav_lists` ADD COLUMN `cdl_sync_token` TEXT")
+        }
+    }
+
+    @Suppress("FunctionName")
+    private fun migration_91_92(fileStorage: FileStorage) = object : Migration(91, 92) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `vtodo` (`calendar` TEXT NOT NULL, `object` TEXT NOT NULL, `data` BLOB NOT NULL, PRIMARY KEY(`calendar`, `object`))")
+            // <root>/<account>/<calendar>/<object>
+            fileStorage.root.listFiles()?.forEach { account ->
+                account.listFiles()?.forEach { calendar ->
+                    calendar.listFiles()?.forEach { file ->
+                        val vtodo = fileStorage.read(file)
+                        if (!vtodo.isNullOrBlank()) {
+                            database.execSQL(
+                                "INSERT OR REPLACE INTO `vtodo` (`calendar`, `object`, `data`) VALUES (?, ?, ?)",
+                                arrayOf(calendar.name, file.name, DatabaseVtodoStore.compress(vtodo))
+                            )
+                        }
+                    }
+                }
+            }
+            fileStorage.root.deleteRecursively()
+        }
+    }
+
+    private val MIGRATION_92_93 = object : Migration(92, 93) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `t_parent` ON `tasks` (`parent`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_caldav_tasks_cd_remote_id_cd_calendar` ON `caldav_tasks` (`cd_remote_id`, `cd_calendar`)")
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_caldav_tasks_cd_calendar_cd_remote_parent` ON `caldav_tasks` (`cd_calendar`, `cd_remote_parent`)")
+        }
+    }
+
+    private val MIGRATION_93_94 = object : Migration(93, 94) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `filter_counts` (`fc_type` INTEGER NOT NULL, `fc_filter` TEXT NOT NULL, `fc_count` INTEGER NOT NULL, PRIMARY KEY(`fc_type`, `fc_filter`))")
+            database.execSQL(FilterCount.REBUILD)
+            FilterCount.TRIGGERS.forEach { database.execSQL(it) }
+        }
+    }
+
     fun migrations(
         context: Context,
         fileStorage: FileStorage
@@ -677,6 +743,12 @@ object Migrations {
             MIGRATION_85_86,
             MIGRATION_86_87,
             migration_87_88(context),
+            MIGRATION_88_89,
+            MIGRATION_89_90,
+            MIGRATION_90_91,
+            migration_91_92(fileStorage),
+            MIGRATION_92_93,
+            MIGRATION_93_94,
     )
 
     private fun noop(from: Int, to: Int): Migration = object : Migration(from, to) {
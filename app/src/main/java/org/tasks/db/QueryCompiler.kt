@@ -0,0 +1,165 @@
+package org.tasks.db
+
+import androidx.collection.LruCache
+import androidx.sqlite.db.SimpleSQLiteQuery
+import com.todoroo.astrid.api.PermaSql
+
+/**
+ * Compiles the SQL built for a filter into a statement with `?` parameters in place of its string
+ * literals and [PermaSql] placeholders. The compiled text doesn't change with the time of day, so
+ * SQLite's prepared statement cache can reuse it between refreshes and only the arguments are
+ * evaluated on each run. Compiled statements are cached by their source text
+ */
+object QueryCompiler {
+    private const val MAX_SIZE = 64
+    /** SQLITE_MAX_VARIABLE_NUMBER before SQLite 3.32 */
+    private const val MAX_VARIABLES = 999
+    private val DML = Regex("^\\s*(SELECT|INSERT|WITH|UPDATE|DELETE|REPLACE)\\b", RegexOption.IGNORE_CASE)
+    private val PLACEHOLDER = PermaSql.PLACEHOLDERS
+        .sortedByDescending { it.length }
+        .joinToString("|") { Regex.escape(it) }
+        .toPattern()
+
+    private val cache = LruCache<String, CompiledQuery>(MAX_SIZE)
+
+    /** @return [sql] compiled to a stable statement, from cache if it was compiled before */
+    fun compile(sql: String): CompiledQuery =
+        cache[sql] ?: parse(sql).also { cache.put(sql, it) }
+
+    /** @return [sql] compiled and bound to [values] */
+    fun query(
+        sql: String,
+        values: Map<String, Long> = PermaSql.getPlaceholderValues(),
+    ): SimpleSQLiteQuery = compile(sql).bind(values)
+
+    val hitCount: Int
+        get() = cache.hitCount()
+
+    val missCount: Int
+        get() = cache.missCount()
+
+    fun clear() = cache.evictAll()
+
+    private fun parse(sql: String): CompiledQuery {
+        if (!DML.containsMatchIn(sql)) {
+            // parameters aren't allowed in schema statements
+            return CompiledQuery(sql, emptyList(), inline = true)
+        }
+        val compiled = StringBuilder(sql.length)
+        val arguments = ArrayList<Argument>()
+        val placeholder = PLACEHOLDER.matcher(sql)
+        var i = 0
+        while (i < sql.length) {
+            val c = sql[i]
+            when {
+                c == '\'' -> {
+                    val end = closing(sql, i, '\'')
+                    val value = sql.substring(i + 1, end - 1).replace("''", "'")
+                    arguments.add(
+                        if (PermaSql.PLACEHOLDERS.any { value.contains(it) }) {
+                            Argument.Template(value)
+                        } else {
+                            Argument.Literal(value)
+                        }
+                    )
+                    compiled.append('?')
+                    i = end
+                }
+                c == '"' || c == '`' -> {
+                    val end = closing(sql, i, c)
+                    compiled.append(sql, i, end)
+                    i = end
+                }
+                c == '[' -> {
+                    val end = sql.indexOf(']', i).let { if (it < 0) sql.length else it + 1 }
+                    compiled.append(sql, i, end)
+                    i = end
+                }
+                c == '-' && sql.startsWith("--", i) -> {
+                    val end = sql.indexOf('\n', i).let { if (it < 0) sql.length else it }
+                    compiled.append(sql, i, end)
+                    i = end
+                }
+                c == '/' && sql.startsWith("/*", i) -> {
+                    val end = sql.indexOf("*/", i + 2).let { if (it < 0) sql.length else it + 2 }
+                    compiled.append(sql, i, end)
+                    i = end
+                }
+                (i == 0 || !sql[i - 1].isIdentifier()) &&
+                        placeholder.region(i, sql.length).lookingAt() -> {
+                    arguments.add(Argument.Placeholder(placeholder.group()))
+                    compiled.append('?')
+                    i = placeholder.end()
+                }
+                else -> {
+                    compiled.append(c)
+                    i++
+                }
+            }
+        }
+        return if (arguments.size > MAX_VARIABLES) {
+            CompiledQuery(sql, emptyList(), inline = true)
+        } else {
+            CompiledQuery(compiled.toString(), arguments, inline = false)
+        }
+    }
+
+    /** @return index after the quote that closes the one at [start], skipping doubled quotes */
+    private fun closing(sql: String, start: Int, quote: Char): Int {
+        var i = start + 1
+        while (i < sql.length) {
+            if (sql[i] == quote) {
+                if (i + 1 < sql.length && sql[i + 1] == quote) {
+                    i += 2
+                    continue
+                }
+                return i + 1
+            }
+            i++
+        }
+        return sql.length
+    }
+
+    private fun Char.isIdentifier() = isLetterOrDigit() || this == '_'
+
+    internal sealed interface Argument {
+        fun value(values: Map<String, Long>): Any?
+
+        data class Literal(val value: String) : Argument {
+            override fun value(values: Map<String, Long>) = value
+        }
+
+        data class Placeholder(val name: String) : Argument {
+            override fun value(values: Map<String, Long>) = values[name]
+        }
+
+        /** string literal that contains a placeholder, e.g. a saved filter's LIKE pattern */
+        data class Template(val value: String) : Argument {
+            override fun value(values: Map<String, Long>) =
+                values.entries.fold(value) { s, (name, time) -> s.replace(name, time.toString()) }
+        }
+    }
+}
+
+class CompiledQuery internal constructor(
+    val sql: String,
+    private val arguments: List<QueryCompiler.Argument>,
+    private val inline: Boolean,
+) {
+    val argumentCount: Int
+        get() = arguments.size
+
+    /** @param wrap applied to the compiled text, e.g. to nest it in a query. Mustn't add parameters */
+    fun bind(values: Map<String, Long>, wrap: (String) -> String = { it }): SimpleSQLiteQuery =
+        if (inline) {
+            SimpleSQLiteQuery(
+                wrap(
+                    PermaSql.PLACEHOLDERS.fold(sql) { s, name ->
+                        values[name]?.let { s.replace(name, it.toString()) } ?: s
+                    }
+                )
+            )
+        } else {
+            SimpleSQLiteQuery(wrap(sql), arguments.map { it.value(values) }.toTypedArray())
+        }
+}
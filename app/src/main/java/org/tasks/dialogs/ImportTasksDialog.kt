@@ -35,7 +35,7 @@ class ImportTasksDialog : DialogFragment() {
         progressDialog.show()
         isCancelable = false
         when (extension) {
-            "json" -> lifecycleScope.launch {
+            "json", "gz" -> lifecycleScope.launch {
                 val result = withContext(NonCancellable) {
                     jsonImporter.importTasks(requireActivity(), data, progressDialog)
                 }
@@ -19,6 +19,7 @@ import org.tasks.LocalBroadcastManager
 import org.tasks.R
 import org.tasks.Strings.isNullOrEmpty
 import org.tasks.billing.Inventory
+import org.tasks.caldav.RemoteTask
 import org.tasks.caldav.VtodoCache
 import org.tasks.caldav.iCalendar
 import org.tasks.caldav.iCalendar.Companion.fromVtodo
@@ -128,14 +129,21 @@ class EtebaseSynchronizer @Inject constructor(
             return
         }
         Timber.d("updating $caldavCalendar")
-        client.fetchItems(collection, caldavCalendar) { (stoken, items) ->
-            applyEntries(account, caldavCalendar, items, stoken)
-            client.updateCache(collection, items)
+        val changed = HashSet<Long>()
+        try {
+            client.fetchItems(collection, caldavCalendar) { (stoken, items) ->
+                changed.addAll(applyEntries(account, caldavCalendar, items, stoken))
+                client.updateCache(collection, items)
+            }
+            Timber.d("UPDATE %s", caldavCalendar)
+            caldavDao.update(caldavCalendar)
+            changed.addAll(caldavDao.getParentChanges(caldavCalendar.uuid!!))
+            caldavDao.updateParents(caldavCalendar.uuid!!)
+        } finally {
+            if (changed.isNotEmpty()) {
+                localBroadcastManager.broadcastRefresh(changed)
+            }
         }
-        Timber.d("UPDATE %s", caldavCalendar)
-        caldavDao.update(caldavCalendar)
-        caldavDao.updateParents(caldavCalendar.uuid!!)
-        localBroadcastManager.broadcastRefresh()
     }
 
     private suspend fun pushLocalChanges(
@@ -178,18 +186,25 @@ class EtebaseSynchronizer @Inject constructor(
         }
     }
 
+    /** @return ids of the tasks that were written */
     private suspend fun applyEntries(
         account: CaldavAccount,
         caldavCalendar: CaldavCalendar,
         items: List<Item>,
         stoken: String? = null,
         isLocalChange: Boolean = false
-    ) {
-        for (item in items) {
+    ): List<Long> {
+        val parsed = items.mapNotNull { item ->
+            fromVtodo(item.contentString)?.let { item to it }
+        }
+        val caldavTasks = caldavDao
+            .getCaldavTasksByRemoteId(caldavCalendar.uuid!!, parsed.mapNotNull { it.second.uid })
+            .associateBy { it.remoteId }
+        val remoteChanges = ArrayList<RemoteTask>()
+        for ((item, task) in parsed) {
             val vtodo = item.contentString
-            val task = fromVtodo(vtodo) ?: continue
             val remoteId = task.uid
-            val caldavTask = caldavDao.getTaskByRemoteId(caldavCalendar.uuid!!, remoteId!!)
+            val caldavTask = caldavTasks[remoteId!!]
             if (item.isDeleted) {
                 if (caldavTask != null) {
                     if (caldavTask.isDeleted()) {
@@ -207,12 +222,14 @@ class EtebaseSynchronizer @Inject constructor(
                 }
             } else {
                 caldavTask?.`object` = item.uid
-                iCal.fromVtodo(account, caldavCalendar, caldavTask, task, vtodo, item.uid, null)
+                remoteChanges.add(RemoteTask(caldavTask, task, vtodo, item.uid, null))
             }
         }
+        val applied = iCal.fromVtodos(account, caldavCalendar, remoteChanges)
         stoken?.let {
             caldavCalendar.ctag = it
             caldavDao.update(caldavCalendar)
         }
+        return applied
     }
 }
\ No newline at end of file
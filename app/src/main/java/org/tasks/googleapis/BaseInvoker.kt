@@ -1,7 +1,13 @@
 package org.tasks.googleapis
 
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback
+import com.google.api.client.googleapis.json.GoogleJsonError
+import com.google.api.client.googleapis.json.GoogleJsonResponseException
 import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest
+import com.google.api.client.http.HttpHeaders
 import com.google.api.client.http.HttpResponseException
+import com.google.api.client.http.javanet.NetHttpTransport
+import com.google.api.client.json.gson.GsonFactory
 import com.google.api.client.json.GenericJson
 import com.todoroo.andlib.utility.DateUtilities
 import com.todoroo.astrid.gtasks.api.HttpCredentialsAdapter
@@ -50,6 +56,53 @@ abstract class BaseInvoker(
                 response
             }
 
+    /**
+     * Send [requests] as batch requests of up to [MAX_BATCH_SIZE]. Results are in the same order
+     * as [requests]. A request that fails is returned as a failure instead of being thrown, so
+     * that callers can handle errors for each item
+     */
+    @Throws(IOException::class)
+    protected suspend fun <T> executeBatch(
+        requests: List<AbstractGoogleJsonClientRequest<T>>
+    ): List<Result<T?>> = withContext(Dispatchers.IO) {
+        if (requests.isEmpty()) {
+            return@withContext emptyList()
+        }
+        credentialsAdapter.checkToken()
+        val results = arrayOfNulls<Result<T?>>(requests.size)
+        requests.indices.chunked(MAX_BATCH_SIZE).forEach { executeBatch(requests, it, results) }
+        val unauthorized = results.indices.filter { results[it].isUnauthorized() }
+        if (unauthorized.isNotEmpty()) {
+            credentialsAdapter.invalidateToken()
+            credentialsAdapter.checkToken()
+            unauthorized.chunked(MAX_BATCH_SIZE).forEach { executeBatch(requests, it, results) }
+        }
+        results.map { it ?: Result.failure(IOException("No response in batch")) }
+    }
+
+    private fun <T> executeBatch(
+        requests: List<AbstractGoogleJsonClientRequest<T>>,
+        indices: List<Int>,
+        results: Array<Result<T?>?>,
+    ) {
+        val batch = requests.first().abstractGoogleClient.batch()
+        indices.forEach { i ->
+            Timber.d("batch request: %s", requests[i])
+            requests[i].queue(batch, object : JsonBatchCallback<T>() {
+                override fun onSuccess(response: T?, responseHeaders: HttpHeaders?) {
+                    Timber.d("batch response: %s", prettyPrint(response))
+                    results[i] = Result.success(response)
+                }
+
+                override fun onFailure(e: GoogleJsonError, responseHeaders: HttpHeaders?) {
+                    Timber.e("batch failure: %s", e)
+                    results[i] = Result.failure(e.toException(responseHeaders ?: HttpHeaders()))
+                }
+            })
+        }
+        batch.execute()
+    }
+
     @Throws(IOException::class)
     private fun <T> prettyPrint(`object`: T?): Any? {
         if (BuildConfig.DEBUG) {
@@ -73,6 +126,23 @@ abstract class BaseInvoker(
         }
 
     companion object {
+        /** Maximum number of requests sent in one batch */
+        const val MAX_BATCH_SIZE = 50
         const val APP_NAME = "Tasks/${BuildConfig.VERSION_NAME}"
+
+        /** Thread-safe, shared so that every invoker uses the same keep-alive connections */
+        val TRANSPORT = NetHttpTransport()
+        val JSON_FACTORY: GsonFactory = GsonFactory.getDefaultInstance()
     }
-}
\ No newline at end of file
+}
+
+private fun Result<*>?.isUnauthorized() =
+    (this?.exceptionOrNull() as? GoogleJsonResponseException)?.statusCode == 401
+
+private fun GoogleJsonError.toException(headers: HttpHeaders): IOException {
+    val exception = GoogleJsonResponseException(
+        HttpResponseException.Builder(code, message, headers),
+        this
+    )
+    return if (code == 404) HttpNotFoundException(exception) else exception
+}
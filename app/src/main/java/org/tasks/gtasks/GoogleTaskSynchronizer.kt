@@ -1,17 +1,20 @@
 package org.tasks.gtasks
 
 import android.content.Context
+import androidx.room.withTransaction
 import com.google.api.client.googleapis.json.GoogleJsonResponseException
 import com.google.api.client.util.DateTime
 import com.google.api.services.tasks.model.Task
 import com.google.api.services.tasks.model.TaskList
 import com.google.api.services.tasks.model.Tasks
 import com.todoroo.astrid.api.GtasksFilter
+import com.todoroo.astrid.dao.Database
 import com.todoroo.astrid.dao.TaskDao
 import com.todoroo.astrid.data.Task.Companion.createDueDate
 import com.todoroo.astrid.gtasks.GtasksListService
 import com.todoroo.astrid.gtasks.api.GtasksApiUtilities
 import com.todoroo.astrid.gtasks.api.GtasksInvoker
+import com.todoroo.astrid.gtasks.api.GtasksInvoker.TaskRequest
 import com.todoroo.astrid.gtasks.api.HttpNotFoundException
 import com.todoroo.astrid.service.TaskCreator
 import com.todoroo.astrid.service.TaskCreator.Companion.getDefaultAlarms
@@ -58,12 +61,14 @@ class GoogleTaskSynchronizer @Inject constructor(
         private val taskDeleter: TaskDeleter,
         private val invokers: InvokerFactory,
         private val alarmDao: AlarmDao,
+        private val database: Database,
 ) {
     suspend fun sync(account: CaldavAccount, i: Int) {
         Timber.d("%s: start sync", account)
+        val changed = HashSet<Long>()
         try {
             if (i == 0 || inventory.hasPro) {
-                synchronize(account)
+                synchronize(account, changed)
             } else {
                 account.error = CaldavAccount.ERROR_PAYMENT_REQUIRED
             }
@@ -97,12 +102,16 @@ class GoogleTaskSynchronizer @Inject constructor(
         } finally {
             caldavDao.update(account)
             localBroadcastManager.broadcastRefreshList()
+            if (changed.isNotEmpty()) {
+                localBroadcastManager.broadcastRefresh(changed)
+            }
             Timber.d("%s: end sync", account)
         }
     }
 
+    /** @param changed receives the ids of the tasks that were written */
     @Throws(IOException::class)
-    private suspend fun synchronize(account: CaldavAccount) {
+    private suspend fun synchronize(account: CaldavAccount, changed: MutableSet<Long>) {
         if (!permissionChecker.canAccessAccounts()
                 || googleAccountManager.getAccount(account.username) == null) {
             account.error = context.getString(R.string.cannot_access_account)
@@ -135,18 +144,20 @@ class GoogleTaskSynchronizer @Inject constructor(
                 firebase.reportException(RuntimeException("Empty remote id"))
                 continue
             }
-            fetchAndApplyRemoteChanges(gtasksInvoker, list)
+            fetchAndApplyRemoteChanges(gtasksInvoker, list, changed)
             if (!preferences.isPositionHackEnabled) {
-                googleTaskDao.reposition(caldavDao, list.uuid!!)
+                changed.addAll(googleTaskDao.reposition(caldavDao, database.taskDao, list.uuid!!))
             }
         }
         if (preferences.isPositionHackEnabled) {
             for (list in gtaskLists) {
                 val tasks = fetchPositions(gtasksInvoker, list.id)
-                for (task in tasks) {
-                    googleTaskDao.updatePosition(task.id, task.parent, task.position)
+                database.withTransaction {
+                    for (task in tasks) {
+                        googleTaskDao.updatePosition(task.id, task.parent, task.position)
+                    }
                 }
-                googleTaskDao.reposition(caldavDao, list.id)
+                changed.addAll(googleTaskDao.reposition(caldavDao, database.taskDao, list.id))
             }
         }
 //        account.etag = eTag
@@ -168,33 +179,67 @@ class GoogleTaskSynchronizer @Inject constructor(
         return tasks
     }
 
+    /**
+     * Push local changes using batch requests. Requests that depend on remote ids that haven't
+     * been assigned yet, i.e. a new parent or the previous new sibling, are sent in a later batch.
+     * Failures are handled for each task, the first unexpected error is thrown after everything
+     * else has been pushed
+     */
     @Throws(IOException::class)
     private suspend fun pushLocalChanges(account: CaldavAccount, gtasksInvoker: GtasksInvoker) {
         val tasks = taskDao.getGoogleTasksToPush(account.uuid!!)
-        for (task in tasks) {
-            pushTask(task, gtasksInvoker)
-        }
+        val errors = ArrayList<Throwable>()
+        pushDeletes(tasks, gtasksInvoker, errors)
+        val (creates, updates) = tasks
+                .mapNotNull { toPush(it) }
+                .partition { isNullOrEmpty(it.googleTask.remoteId) }
+        pushCreates(creates, gtasksInvoker, errors)
+        val skipped = pushMoves(
+                updates.filter { !it.task.isDeleted && it.googleTask.isMoved },
+                gtasksInvoker,
+                errors
+        )
+        pushUpdates(updates.filterNot { skipped.contains(it.task.id) }, gtasksInvoker, errors)
+        errors.firstOrNull()?.let { throw it }
     }
 
+    internal class Push(
+            val task: com.todoroo.astrid.data.Task,
+            val googleTask: CaldavTask,
+            val listId: String?,
+            val remoteModel: Task,
+            /** local task directly above this one, or 0 */
+            val previous: Long = 0,
+    )
+
     @Throws(IOException::class)
-    private suspend fun pushTask(task: com.todoroo.astrid.data.Task, gtasksInvoker: GtasksInvoker) {
-        for (deleted in googleTaskDao.getDeletedByTaskId(task.id)) {
-            deleted.remoteId?.let {
-                try {
-                    gtasksInvoker.deleteGtask(deleted.calendar, it)
-                } catch (e: GoogleJsonResponseException) {
-                    when (e.statusCode) {
-                        400 -> Timber.e(e)
-                        else -> throw e
-                    }
-                }
+    private suspend fun pushDeletes(
+            tasks: List<com.todoroo.astrid.data.Task>,
+            gtasksInvoker: GtasksInvoker,
+            errors: MutableList<Throwable>,
+    ) {
+        val (remote, local) = tasks
+                .flatMap { googleTaskDao.getDeletedByTaskId(it.id) }
+                .partition { it.remoteId != null }
+        local.forEach { googleTaskDao.delete(it) }
+        val results = gtasksInvoker.deleteGtasks(remote.map {
+            TaskRequest(it.calendar, Task().setId(it.remoteId))
+        })
+        remote.zip(results).forEach { (deleted, result) ->
+            val error = result.exceptionOrNull()
+            if (error != null && (error as? GoogleJsonResponseException)?.statusCode != 400) {
+                errors.add(error)
+            } else {
+                error?.let { Timber.e(it) }
+                googleTaskDao.delete(deleted)
             }
-            googleTaskDao.delete(deleted)
         }
-        val gtasksMetadata = googleTaskDao.getByTaskId(task.id) ?: return
+    }
+
+    private suspend fun toPush(task: com.todoroo.astrid.data.Task): Push? {
+        val gtasksMetadata = googleTaskDao.getByTaskId(task.id) ?: return null
         val remoteModel = Task()
         var newlyCreated = false
-        val remoteId: String?
         val defaultRemoteList = defaultFilterProvider.defaultList
         var listId = if (defaultRemoteList is GtasksFilter) defaultRemoteList.remoteId else DEFAULT_LIST
         if (isNullOrEmpty(gtasksMetadata.remoteId)) { // Create case
@@ -204,16 +249,15 @@ class GoogleTaskSynchronizer @Inject constructor(
             }
             newlyCreated = true
         } else { // update case
-            remoteId = gtasksMetadata.remoteId
             listId = gtasksMetadata.calendar
-            remoteModel.id = remoteId
+            remoteModel.id = gtasksMetadata.remoteId
         }
 
         // If task was newly created but without a title, don't sync--we're in the middle of
         // creating a task which may end up being cancelled. Also don't sync new but already
         // deleted tasks
         if (newlyCreated && (isNullOrEmpty(task.title) || task.deletionDate > 0)) {
-            return
+            return null
         }
 
         // Update the remote model's changed properties
@@ -232,141 +276,241 @@ class GoogleTaskSynchronizer @Inject constructor(
             remoteModel.completed = null
             remoteModel.status = "needsAction" // $NON-NLS-1$
         }
-        if (newlyCreated) {
-            val parent = task.parent
-            val localParent = if (parent > 0) googleTaskDao.getRemoteId(parent) else null
-            val previous = googleTaskDao.getPrevious(
-                    listId!!, if (isNullOrEmpty(localParent)) 0 else parent, task.order ?: 0)
-            val created: Task? = try {
-                gtasksInvoker.createGtask(listId, remoteModel, localParent, previous)
-            } catch (e: HttpNotFoundException) {
-                gtasksInvoker.createGtask(listId, remoteModel, null, null)
+        val previous = listId
+                ?.let { googleTaskDao.getPreviousTask(it, task.parent, task.order ?: 0) }
+                ?: 0
+        return Push(task, gtasksMetadata, listId, remoteModel, previous)
+    }
+
+    @Throws(IOException::class)
+    private suspend fun pushCreates(
+            creates: List<Push>,
+            gtasksInvoker: GtasksInvoker,
+            errors: MutableList<Throwable>,
+    ) {
+        val failed = HashSet<Long>()
+        var pending = creates
+        while (pending.isNotEmpty()) {
+            val (skip, remaining) = pending.partition { failed.contains(it.task.parent) }
+            skip.forEach { failed.add(it.task.id) }
+            val (batch, waiting) = remaining.nextBatch(waitForParent = true)
+            val requests = batch.map { it.toRequest() }.toMutableList()
+            val results = gtasksInvoker.createGtasks(requests).toMutableList()
+            // parent or previous task was deleted remotely
+            val notFound = results.indices.filter { results[it].exceptionOrNull() is HttpNotFoundException }
+            if (notFound.isNotEmpty()) {
+                gtasksInvoker
+                        .createGtasks(notFound.map { requests[it].copy(parent = null, previous = null) })
+                        .forEachIndexed { i, result -> results[notFound[i]] = result }
             }
-            if (created != null) {
-                // Update the metadata for the newly created task
-                gtasksMetadata.remoteId = created.id
-                gtasksMetadata.calendar = listId
-                setOrderAndParent(gtasksMetadata, created, task)
-            } else {
-                return
+            batch.zip(results).forEach { (push, result) ->
+                result
+                        .onSuccess { created ->
+                            if (created != null) {
+                                // Update the metadata for the newly created task
+                                push.googleTask.remoteId = created.id
+                                push.googleTask.calendar = push.listId
+                                setOrderAndParent(push.googleTask, created, push.task)
+                                push.googleTask.isMoved = false
+                                write(push.task, push.googleTask)
+                            }
+                        }
+                        .onFailure {
+                            errors.add(it)
+                            failed.add(push.task.id)
+                        }
             }
-        } else {
-            try {
-                if (!task.isDeleted && gtasksMetadata.isMoved) {
-                    try {
-                        val parent = task.parent
-                        val localParent = if (parent > 0) googleTaskDao.getRemoteId(parent) else null
-                        val previous = googleTaskDao.getPrevious(
-                                listId!!,
-                                if (localParent.isNullOrBlank()) 0 else parent,
-                                task.order ?: 0)
-                        gtasksInvoker
-                                .moveGtask(listId, remoteModel.id, localParent, previous)
-                                ?.let { setOrderAndParent(gtasksMetadata, it, task) }
-                    } catch (e: GoogleJsonResponseException) {
-                        if (e.statusCode == 400) {
-                            Timber.e(e)
+            pending = waiting
+        }
+    }
+
+    /** @return ids of tasks that should not be updated */
+    @Throws(IOException::class)
+    private suspend fun pushMoves(
+            moves: List<Push>,
+            gtasksInvoker: GtasksInvoker,
+            errors: MutableList<Throwable>,
+    ): Set<Long> {
+        val skipped = HashSet<Long>()
+        var pending = moves
+        while (pending.isNotEmpty()) {
+            val (batch, waiting) = pending.nextBatch(waitForParent = false)
+            val results = gtasksInvoker.moveGtasks(batch.map { it.toRequest() })
+            batch.zip(results).forEach { (push, result) ->
+                result
+                        .onSuccess { moved ->
+                            moved?.let { setOrderAndParent(push.googleTask, it, push.task) }
+                        }
+                        .onFailure {
+                            when {
+                                it is HttpNotFoundException -> {
+                                    googleTaskDao.delete(push.googleTask)
+                                    skipped.add(push.task.id)
+                                }
+                                (it as? GoogleJsonResponseException)?.statusCode == 400 ->
+                                    Timber.e(it)
+                                else -> {
+                                    errors.add(it)
+                                    skipped.add(push.task.id)
+                                }
+                            }
+                        }
+            }
+            pending = waiting
+        }
+        return skipped
+    }
+
+    @Throws(IOException::class)
+    private suspend fun pushUpdates(
+            updates: List<Push>,
+            gtasksInvoker: GtasksInvoker,
+            errors: MutableList<Throwable>,
+    ) {
+        // TODO: don't updateGtask if it was only moved
+        val results = gtasksInvoker.updateGtasks(updates.map { TaskRequest(it.listId, it.remoteModel) })
+        updates.zip(results).forEach { (push, result) ->
+            result
+                    .onSuccess {
+                        push.googleTask.isMoved = false
+                        write(push.task, push.googleTask)
+                    }
+                    .onFailure {
+                        if (it is HttpNotFoundException) {
+                            googleTaskDao.delete(push.googleTask)
                         } else {
-                            throw e
+                            errors.add(it)
                         }
                     }
-                }
-                // TODO: don't updateGtask if it was only moved
-                gtasksInvoker.updateGtask(listId, remoteModel)
-            } catch (e: HttpNotFoundException) {
-                googleTaskDao.delete(gtasksMetadata)
-                return
-            }
         }
-        gtasksMetadata.isMoved = false
-        write(task, gtasksMetadata)
     }
 
+    private suspend fun Push.toRequest(): TaskRequest {
+        val parent = task.parent
+        val localParent = if (parent > 0) googleTaskDao.getRemoteId(parent) else null
+        val previous = googleTaskDao.getPrevious(
+                listId!!, if (isNullOrEmpty(localParent)) 0 else parent, task.order ?: 0)
+        return TaskRequest(listId, remoteModel, localParent, previous)
+    }
+
+    /**
+     * Changes are applied one page at a time, each page in a single transaction. Parents on a
+     * later page are linked up by [GoogleTaskDao.reposition]
+     */
     @Throws(IOException::class)
     private suspend fun fetchAndApplyRemoteChanges(
         gtasksInvoker: GtasksInvoker,
-        list: CaldavCalendar
+        list: CaldavCalendar,
+        changed: MutableSet<Long>,
     ) {
         val listId = list.uuid
         var lastSyncDate = list.lastSync
-        val tasks: MutableList<Task> = ArrayList()
+        val updatedMin = lastSyncDate + 1000L
         var nextPageToken: String? = null
         do {
             val taskList: Tasks = try {
-                gtasksInvoker.getAllGtasksFromListId(listId, lastSyncDate + 1000L, nextPageToken)
+                gtasksInvoker.getAllGtasksFromListId(listId, updatedMin, nextPageToken)
             } catch (e: HttpNotFoundException) {
                 firebase.reportException(e)
                 return
             } ?: break
-
             val items = taskList.items
             if (items != null) {
-                tasks.addAll(items)
+                lastSyncDate = max(lastSyncDate, applyRemoteChanges(listId, items, changed))
             }
             nextPageToken = taskList.nextPageToken
         } while (!isNullOrEmpty(nextPageToken))
-        Collections.sort(tasks, PARENTS_FIRST)
-        for (gtask in tasks) {
-            val remoteId = gtask.id
-            var googleTask = googleTaskDao.getByRemoteId(remoteId)
-            var task: com.todoroo.astrid.data.Task? = null
-            if (googleTask == null) {
-                googleTask = CaldavTask(
-                    task = 0,
-                    calendar = "",
-                    remoteId = null,
-                )
-            } else if (googleTask.task > 0) {
-                task = taskDao.fetch(googleTask.task)
-            }
-            gtask.updated?.let {
-                lastSyncDate = max(lastSyncDate, DateTime(it).value)
-            }
-            val isDeleted = gtask.deleted
-            val isHidden = gtask.hidden
-            if (isDeleted != null && isDeleted) {
-                if (task != null) {
-                    taskDeleter.delete(task)
+        googleTaskListDao.insertOrReplace(
+            list.copy(
+                lastSync = lastSyncDate
+            )
+        )
+    }
+
+    /**
+     * @param changed receives the ids of the tasks that were written
+     * @return most recent update time in [items]
+     */
+    private suspend fun applyRemoteChanges(
+        listId: String?,
+        items: List<Task>,
+        changed: MutableSet<Long>,
+    ): Long {
+        var lastSyncDate = 0L
+        val remoteIds = items.map { it.id }
+        val parentIds = items.mapNotNull { it.parent?.takeIf(String::isNotBlank) }
+        val googleTasks = googleTaskDao
+            .getByRemoteId(remoteIds.plus(parentIds).distinct())
+            .associateByTo(HashMap()) { it.remoteId!! }
+        val parents = googleTasks.mapValuesTo(HashMap()) { it.value.task }
+        val tasks = taskDao
+            .fetch(remoteIds.mapNotNull { googleTasks[it]?.task?.takeIf { id -> id > 0 } })
+            .associateBy { it.id }
+        database.withTransaction {
+            for (gtask in items.sortedWith(PARENTS_FIRST)) {
+                val remoteId = gtask.id
+                val googleTask = googleTasks[remoteId]
+                    ?: CaldavTask(
+                        task = 0,
+                        calendar = "",
+                        remoteId = null,
+                    )
+                var task = googleTask.task.takeIf { it > 0 }?.let { tasks[it] }
+                gtask.updated?.let {
+                    lastSyncDate = max(lastSyncDate, DateTime(it).value)
                 }
-                continue
-            } else if (isHidden != null && isHidden) {
-                if (task == null) {
+                val isDeleted = gtask.deleted
+                val isHidden = gtask.hidden
+                if (isDeleted != null && isDeleted) {
+                    if (task != null) {
+                        taskDeleter.delete(task)
+                    }
                     continue
-                }
-                if (task.isRecurring) {
-                    googleTask.remoteId = ""
+                } else if (isHidden != null && isHidden) {
+                    if (task == null) {
+                        continue
+                    }
+                    if (task.isRecurring) {
+                        googleTask.remoteId = ""
+                    } else {
+                        taskDeleter.delete(task)
+                        continue
+                    }
                 } else {
-                    taskDeleter.delete(task)
-                    continue
+                    if (task == null) {
+                        task = taskCreator.createWithValues("")
+                    }
+                    setOrderAndParent(googleTask, gtask, task, parents)
+                    googleTask.remoteId = gtask.id
                 }
-            } else {
-                if (task == null) {
-                    task = taskCreator.createWithValues("")
+                task.title = getTruncatedValue(task.title, gtask.title, MAX_TITLE_LENGTH)
+                task.completionDate = GtasksApiUtilities.gtasksCompletedTimeToUnixTime(gtask.completed?.let(::DateTime))
+                val dueDate = GtasksApiUtilities.gtasksDueTimeToUnixTime(gtask.due?.let(::DateTime))
+                mergeDates(createDueDate(com.todoroo.astrid.data.Task.URGENCY_SPECIFIC_DAY, dueDate), task)
+                task.notes = getTruncatedValue(task.notes, gtask.notes, MAX_DESCRIPTION_LENGTH)
+                googleTask.calendar = listId
+                if (task.title?.isNotBlank() == true || task.notes?.isNotBlank() == true) {
+                    write(task, googleTask)
+                    parents[remoteId] = task.id
+                    changed.add(task.id)
                 }
-                setOrderAndParent(googleTask, gtask, task)
-                googleTask.remoteId = gtask.id
-            }
-            task.title = getTruncatedValue(task.title, gtask.title, MAX_TITLE_LENGTH)
-            task.completionDate = GtasksApiUtilities.gtasksCompletedTimeToUnixTime(gtask.completed?.let(::DateTime))
-            val dueDate = GtasksApiUtilities.gtasksDueTimeToUnixTime(gtask.due?.let(::DateTime))
-            mergeDates(createDueDate(com.todoroo.astrid.data.Task.URGENCY_SPECIFIC_DAY, dueDate), task)
-            task.notes = getTruncatedValue(task.notes, gtask.notes, MAX_DESCRIPTION_LENGTH)
-            googleTask.calendar = listId
-            if (task.title?.isNotBlank() == true || task.notes?.isNotBlank() == true) {
-                write(task, googleTask)
             }
         }
-        googleTaskListDao.insertOrReplace(
-            list.copy(
-                lastSync = lastSyncDate
-            )
-        )
+        return lastSyncDate
     }
 
-    private suspend fun setOrderAndParent(googleTask: CaldavTask, task: Task, local: com.todoroo.astrid.data.Task) {
+    /** @param parents local task ids by remote id, looked up in the database if not provided */
+    private suspend fun setOrderAndParent(
+        googleTask: CaldavTask,
+        task: Task,
+        local: com.todoroo.astrid.data.Task,
+        parents: Map<String, Long>? = null,
+    ) {
         task.position?.toLongOrNull()?.let { googleTask.remoteOrder = it }
         googleTask.remoteParent = task.parent?.takeIf { it.isNotBlank() }
-        local.parent = googleTask.remoteParent?.let { googleTaskDao.getTask(it) } ?: 0L
+        local.parent = googleTask.remoteParent
+            ?.let { if (parents != null) parents[it] else googleTaskDao.getTask(it) }
+            ?: 0L
     }
 
     private suspend fun write(task: com.todoroo.astrid.data.Task, googleTask: CaldavTask) {
@@ -424,5 +568,20 @@ class GoogleTaskSynchronizer @Inject constructor(
                 if (isNullOrEmpty(newValue)
                         || newValue!!.length < maxLength || isNullOrEmpty(currentValue)
                         || !currentValue!!.startsWith(newValue)) newValue else currentValue
+
+        /**
+         * Split off the pushes that can be sent together. Each push is placed after the task
+         * directly above it, so siblings with different tasks above them share a batch. Requests
+         * in a batch may be applied in any order, so a push waits while the task above it is
+         * still pending, and a run of adjacent new or moved siblings is chained one per batch.
+         * New tasks also wait for their parent to be created
+         */
+        internal fun List<Push>.nextBatch(waitForParent: Boolean): Pair<List<Push>, List<Push>> {
+            val pending = mapTo(HashSet()) { it.task.id }
+            return partition { push ->
+                !pending.contains(push.previous)
+                        && !(waitForParent && pending.contains(push.task.parent))
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package org.tasks.http
+
+import okhttp3.Call
+import okhttp3.Connection
+import okhttp3.EventListener
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.atomic.AtomicInteger
+
+/** Counts how many calls were served by a pooled connection instead of a new one */
+class ConnectionStats : EventListener() {
+    private val acquired = AtomicInteger()
+    private val connected = AtomicInteger()
+
+    override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+        connected.incrementAndGet()
+    }
+
+    override fun connectionAcquired(call: Call, connection: Connection) {
+        acquired.incrementAndGet()
+    }
+
+    val connections: Int
+        get() = connected.get()
+
+    val reused: Int
+        get() = acquired.get() - connected.get()
+}
@@ -5,8 +5,11 @@ import at.bitfire.cert4android.CustomCertManager
 import at.bitfire.dav4jvm.BasicDigestAuthHandler
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
 import net.openid.appauth.AuthState
+import okhttp3.ConnectionPool
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.OkHttpClient
 import okhttp3.internal.tls.OkHostnameVerifier
@@ -20,15 +23,43 @@ import org.tasks.sync.microsoft.MicrosoftService
 import org.tasks.sync.microsoft.requestTokenRefresh
 import retrofit2.Retrofit
 import retrofit2.converter.moshi.MoshiConverterFactory
+import timber.log.Timber
 import javax.inject.Inject
+import javax.inject.Singleton
+import javax.net.ssl.HostnameVerifier
 import javax.net.ssl.SSLContext
+import javax.net.ssl.SSLSocketFactory
 
+/**
+ * Every client shares one connection pool and, for a given [foreground] value, one certificate
+ * manager and socket factory. OkHttp only reuses a pooled connection for an identical TLS
+ * configuration, so sharing these is what lets connections, TLS sessions and HTTP/2 streams
+ * survive from one sync to the next.
+ */
+@Singleton
 class HttpClientFactory @Inject constructor(
     @ApplicationContext private val context: Context,
     private val preferences: Preferences,
     private val interceptor: DebugNetworkInterceptor,
     private val encryption: KeyStoreEncryption,
 ) {
+    private class Trust(
+        val certManager: CustomCertManager,
+        val socketFactory: SSLSocketFactory,
+        val hostnameVerifier: HostnameVerifier,
+    )
+
+    private val connectionPool = ConnectionPool()
+    private val connectionStats = ConnectionStats()
+    private val baseClient: OkHttpClient by lazy {
+        OkHttpClient.Builder()
+            .connectionPool(connectionPool)
+            .eventListener(connectionStats)
+            .build()
+    }
+    private val trustLock = Mutex()
+    private val trust = HashMap<Boolean, Trust>()
+
     suspend fun newClient(foreground: Boolean) = newClient(
         foreground = foreground,
         cookieKey = null,
@@ -55,19 +86,13 @@ class HttpClientFactory @Inject constructor(
         cookieKey: String? = null,
         block: (OkHttpClient.Builder) -> Unit = {}
     ): OkHttpClient {
-        val customCertManager = withContext(Dispatchers.Default) {
-            CustomCertManager(context)
-        }
-        customCertManager.appInForeground = foreground
-        val hostnameVerifier = customCertManager.hostnameVerifier(OkHostnameVerifier)
-        val sslContext = SSLContext.getInstance("TLS")
-        sslContext.init(null, arrayOf(customCertManager), null)
-        val builder = OkHttpClient()
+        val trust = getTrust(foreground)
+        val builder = baseClient
             .newBuilder()
             .followRedirects(false)
             .followSslRedirects(true)
-            .sslSocketFactory(sslContext.socketFactory, customCertManager)
-            .hostnameVerifier(hostnameVerifier)
+            .sslSocketFactory(trust.socketFactory, trust.certManager)
+            .hostnameVerifier(trust.hostnameVerifier)
             .addInterceptor(UserAgentInterceptor)
             .cookieJar(TasksCookieJar(persistor = context.cookiePersistor(cookieKey)))
 
@@ -79,6 +104,43 @@ class HttpClientFactory @Inject constructor(
         return builder.build()
     }
 
+    private suspend fun getTrust(foreground: Boolean): Trust = trustLock.withLock {
+        trust.getOrPut(foreground) {
+            val customCertManager = withContext(Dispatchers.Default) {
+                CustomCertManager(context)
+            }
+            customCertManager.appInForeground = foreground
+            val sslContext = SSLContext.getInstance("TLS")
+            sslContext.init(null, arrayOf(customCertManager), null)
+            Trust(
+                certManager = customCertManager,
+                socketFactory = sslContext.socketFactory,
+                hostnameVerifier = customCertManager.hostnameVerifier(OkHostnameVerifier),
+            )
+        }
+    }
+
+    /**
+     * Drop cached certificate managers and pooled connections, e.g. after certificate trust
+     * has changed. Clients built before this call keep working but will no longer share
+     * connections with new clients
+     */
+    suspend fun invalidate() {
+        trustLock.withLock { trust.clear() }
+        connectionPool.evictAll()
+        Timber.d("Invalidated connection pool")
+    }
+
+    fun logConnectionStats() {
+        Timber.d(
+            "connections: %s opened, %s reused, %s pooled (%s idle)",
+            connectionStats.connections,
+            connectionStats.reused,
+            connectionPool.connectionCount(),
+            connectionPool.idleConnectionCount(),
+        )
+    }
+
     suspend fun getMicrosoftService(account: CaldavAccount): MicrosoftService {
         val authState = encryption.decrypt(account.password)?.let { AuthState.jsonDeserialize(it) }
             ?: throw RuntimeException("Missing credentials")
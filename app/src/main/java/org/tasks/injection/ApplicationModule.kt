@@ -16,6 +16,8 @@ import org.tasks.analytics.Firebase
 import org.tasks.billing.BillingClient
 import org.tasks.billing.BillingClientImpl
 import org.tasks.billing.Inventory
+import org.tasks.caldav.DatabaseVtodoStore
+import org.tasks.caldav.VtodoStore
 import org.tasks.data.*
 import org.tasks.jobs.WorkManager
 import org.tasks.notifications.NotificationDao
@@ -79,6 +81,17 @@ class ApplicationModule {
     @Singleton
     fun getGoogleTaskListDao(db: Database): GoogleTaskListDao = db.googleTaskListDao
 
+    @Provides
+    @Singleton
+    fun getVtodoDao(db: Database): VtodoDao = db.vtodoDao
+
+    @Provides
+    @Singleton
+    fun getFilterCountDao(db: Database): FilterCountDao = db.filterCountDao
+
+    @Provides
+    fun getVtodoStore(store: DatabaseVtodoStore): VtodoStore = store
+
     @Provides
     @Singleton
     fun getCaldavDao(db: Database): CaldavDao = db.caldavDao
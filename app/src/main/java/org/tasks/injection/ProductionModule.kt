@@ -33,6 +33,7 @@ internal class ProductionModule {
     ): Database {
         val builder = Room.databaseBuilder(context, Database::class.java, Database.NAME)
                 .addMigrations(*Migrations.migrations(context, fileStorage))
+                .addCallback(Database.CALLBACK)
         if (!BuildConfig.DEBUG || !preferences.getBoolean(R.string.p_crash_main_queries, false)) {
             builder.allowMainThreadQueries()
         }
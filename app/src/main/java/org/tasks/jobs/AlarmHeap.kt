@@ -0,0 +1,136 @@
+package org.tasks.jobs
+
+/**
+ * Min-heap of [AlarmEntry] ordered by time, with an index from entry to heap slot and from task id
+ * to entries so that add, remove and cancel by task are all O(log n). Equal entries are stored once.
+ * Not thread-safe, callers are expected to synchronize
+ */
+internal class AlarmHeap {
+    private val heap = ArrayList<AlarmEntry>()
+    private val positions = HashMap<AlarmEntry, Int>()
+    private val tasks = HashMap<Long, MutableSet<AlarmEntry>>()
+
+    val size: Int
+        get() = heap.size
+
+    fun isEmpty() = heap.isEmpty()
+
+    fun peek(): AlarmEntry? = heap.firstOrNull()
+
+    operator fun contains(entry: AlarmEntry) = positions.containsKey(entry)
+
+    /** @return false if an equal entry was already queued */
+    fun add(entry: AlarmEntry): Boolean {
+        if (positions.containsKey(entry)) {
+            return false
+        }
+        heap.add(entry)
+        positions[entry] = heap.lastIndex
+        tasks.getOrPut(entry.taskId) { HashSet() }.add(entry)
+        siftUp(heap.lastIndex)
+        return true
+    }
+
+    /** @return false if [entry] was not queued */
+    fun remove(entry: AlarmEntry): Boolean {
+        val index = positions[entry] ?: return false
+        removeAt(index)
+        return true
+    }
+
+    /** @return entries removed for [taskId] */
+    fun removeTask(taskId: Long): List<AlarmEntry> {
+        val entries = tasks[taskId]?.toList() ?: return emptyList()
+        entries.forEach { remove(it) }
+        return entries
+    }
+
+    /** @return entries due before [time], in order */
+    fun before(time: Long): List<AlarmEntry> {
+        val result = ArrayList<AlarmEntry>()
+        val pending = ArrayDeque<Int>()
+        if (heap.isNotEmpty()) {
+            pending.add(0)
+        }
+        while (pending.isNotEmpty()) {
+            val index = pending.removeLast()
+            if (heap[index].time >= time) {
+                continue
+            }
+            result.add(heap[index])
+            val left = 2 * index + 1
+            if (left < heap.size) pending.add(left)
+            if (left + 1 < heap.size) pending.add(left + 1)
+        }
+        return result.sortedWith(ORDER)
+    }
+
+    fun toList(): List<AlarmEntry> = heap.sortedWith(ORDER)
+
+    fun clear() {
+        heap.clear()
+        positions.clear()
+        tasks.clear()
+    }
+
+    private fun removeAt(index: Int) {
+        val entry = heap[index]
+        val last = heap.removeAt(heap.lastIndex)
+        positions.remove(entry)
+        tasks[entry.taskId]?.let {
+            it.remove(entry)
+            if (it.isEmpty()) {
+                tasks.remove(entry.taskId)
+            }
+        }
+        if (index < heap.size) {
+            heap[index] = last
+            positions[last] = index
+            siftDown(index)
+            siftUp(index)
+        }
+    }
+
+    private fun siftUp(start: Int) {
+        var index = start
+        while (index > 0) {
+            val parent = (index - 1) / 2
+            if (ORDER.compare(heap[index], heap[parent]) >= 0) {
+                break
+            }
+            swap(index, parent)
+            index = parent
+        }
+    }
+
+    private fun siftDown(start: Int) {
+        var index = start
+        while (true) {
+            val left = 2 * index + 1
+            if (left >= heap.size) {
+                break
+            }
+            val right = left + 1
+            val child = if (right < heap.size && ORDER.compare(heap[right], heap[left]) < 0) right else left
+            if (ORDER.compare(heap[child], heap[index]) >= 0) {
+                break
+            }
+            swap(index, child)
+            index = child
+        }
+    }
+
+    private fun swap(i: Int, j: Int) {
+        val a = heap[i]
+        val b = heap[j]
+        heap[i] = b
+        heap[j] = a
+        positions[a] = j
+        positions[b] = i
+    }
+
+    companion object {
+        /** total order consistent with [AlarmEntry.equals] */
+        private val ORDER = compareBy<AlarmEntry>({ it.time }, { it.taskId }, { it.id }, { it.type })
+    }
+}
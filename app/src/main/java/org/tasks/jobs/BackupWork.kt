@@ -86,13 +86,29 @@ class BackupWork @AssistedInject constructor(
         private val DOCUMENT_FILE_COMPARATOR = Comparator { d1: DocumentFile, d2: DocumentFile -> d2.lastModified().compareTo(d1.lastModified()) }
 
         fun getDeleteList(fileArray: Array<File>?, keepNewest: Int) =
-                fileArray?.sortedWith(BY_LAST_MODIFIED)?.drop(keepNewest) ?: emptyList()
+                fileArray
+                        ?.sortedWith(BY_LAST_MODIFIED)
+                        ?.let { getDeleteList(it, keepNewest) { file -> file.name } }
+                        ?: emptyList()
 
         private fun getDeleteList(fileArray: Array<DocumentFile>?) =
                 fileArray
                         ?.filter { FILENAME_FILTER(it.name!!) }
                         ?.sortedWith(DOCUMENT_FILE_COMPARATOR)
-                        ?.drop(DAYS_TO_KEEP_BACKUP)
+                        ?.let { getDeleteList(it, DAYS_TO_KEEP_BACKUP) { file -> file.name } }
                         ?: emptyList()
+
+        /**
+         * @param newestFirst backups sorted from newest to oldest
+         * @return backups to delete. The newest [keepNewest] are kept, and if the oldest of those
+         * is a delta then older deltas and the full backup they were based on are kept too
+         */
+        fun <T> getDeleteList(newestFirst: List<T>, keepNewest: Int, name: (T) -> String?): List<T> {
+            var keep = keepNewest.coerceAtMost(newestFirst.size)
+            while (keep in 1 until newestFirst.size && BackupConstants.isDelta(name(newestFirst[keep - 1]))) {
+                keep++
+            }
+            return newestFirst.drop(keep)
+        }
     }
 }
\ No newline at end of file
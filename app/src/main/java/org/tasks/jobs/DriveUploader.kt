@@ -49,7 +49,7 @@ class DriveUploader @AssistedInject constructor(
             if (inputData.getBoolean(EXTRA_PURGE, false)) {
                 drive
                         .getFilesByPrefix(folder.id, "auto.")
-                        .drop(BackupWork.DAYS_TO_KEEP_BACKUP)
+                        .let { BackupWork.getDeleteList(it, BackupWork.DAYS_TO_KEEP_BACKUP) { file -> file.name } }
                         .forEach { drive.delete(it) }
             }
             Result.success()
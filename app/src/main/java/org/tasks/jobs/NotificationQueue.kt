@@ -1,8 +1,5 @@
 package org.tasks.jobs
 
-import com.google.common.collect.Ordering
-import com.google.common.collect.TreeMultimap
-import com.google.common.primitives.Ints
 import org.tasks.preferences.Preferences
 import org.tasks.time.DateTime
 import javax.inject.Inject
@@ -13,10 +10,7 @@ class NotificationQueue @Inject constructor(
     private val preferences: Preferences,
     private val workManager: WorkManager
 ) {
-    private val jobs =
-        TreeMultimap.create<Long, AlarmEntry>(Ordering.natural()) { l, r ->
-            Ints.compare(l.hashCode(), r.hashCode())
-        }
+    private val jobs = AlarmHeap()
 
     @Synchronized
     fun add(entry: AlarmEntry) = add(listOf(entry))
@@ -24,7 +18,18 @@ class NotificationQueue @Inject constructor(
     @Synchronized
     fun add(entries: Iterable<AlarmEntry>) {
         val originalFirstTime = firstTime()
-        entries.forEach { jobs.put(it.time, it) }
+        entries.forEach { jobs.add(it) }
+        if (originalFirstTime != firstTime()) {
+            scheduleNext(true)
+        }
+    }
+
+    /** Replace queued alarms for [taskIds] with [entries], rescheduling at most once */
+    @Synchronized
+    fun replace(taskIds: Iterable<Long>, entries: Iterable<AlarmEntry>) {
+        val originalFirstTime = firstTime()
+        taskIds.forEach { jobs.removeTask(it) }
+        entries.forEach { jobs.add(it) }
         if (originalFirstTime != firstTime()) {
             scheduleNext(true)
         }
@@ -36,9 +41,10 @@ class NotificationQueue @Inject constructor(
         workManager.cancelNotifications()
     }
 
+    @Synchronized
     fun cancelForTask(taskId: Long) {
         val firstTime = firstTime()
-        jobs.values().filter { it.taskId == taskId }.forEach { remove(listOf(it)) }
+        jobs.removeTask(taskId)
         if (firstTime != firstTime()) {
             scheduleNext(true)
         }
@@ -46,15 +52,13 @@ class NotificationQueue @Inject constructor(
 
     @get:Synchronized
     val overdueJobs: List<AlarmEntry>
-        get() = jobs.keySet()
-            .headSet(DateTime().startOfMinute().plusMinutes(1).millis)
-            .flatMap { jobs[it] }
+        get() = jobs.before(DateTime().startOfMinute().plusMinutes(1).millis)
 
     @Synchronized
     fun scheduleNext() = scheduleNext(false)
 
     private fun scheduleNext(cancelCurrent: Boolean) {
-        if (jobs.isEmpty) {
+        if (jobs.isEmpty()) {
             if (cancelCurrent) {
                 workManager.cancelNotifications()
             }
@@ -63,28 +67,25 @@ class NotificationQueue @Inject constructor(
         }
     }
 
-    private fun firstTime() = if (jobs.isEmpty) 0L else jobs.asMap().firstKey()
+    private fun firstTime() = jobs.peek()?.time ?: 0L
 
+    @Synchronized
     fun nextScheduledTime(): Long {
         val next = firstTime()
         return if (next > 0) preferences.adjustForQuietHours(next) else 0
     }
 
-    fun size() = jobs.size()
+    @Synchronized
+    fun size() = jobs.size
 
-    fun getJobs() = jobs.values().toList()
+    @Synchronized
+    fun getJobs() = jobs.toList()
 
-    fun isEmpty() = jobs.isEmpty
+    @Synchronized
+    fun isEmpty() = jobs.isEmpty()
 
     @Synchronized
-    fun remove(entries: List<AlarmEntry>): Boolean {
-        var success = true
-        for (entry in entries) {
-            success = success and (!jobs.containsEntry(entry.time, entry) || jobs.remove(
-                entry.time,
-                entry
-            ))
-        }
-        return success
+    fun remove(entries: List<AlarmEntry>) {
+        entries.forEach { jobs.remove(it) }
     }
-}
\ No newline at end of file
+}
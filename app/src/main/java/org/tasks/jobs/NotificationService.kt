@@ -31,9 +31,7 @@ class NotificationService : InjectingService() {
         AndroidUtilities.assertNotMainThread()
         if (!preferences.isCurrentlyQuietHours) {
             val overdueJobs = notificationQueue.overdueJobs
-            if (!notificationQueue.remove(overdueJobs)) {
-                throw RuntimeException("Failed to remove jobs from queue")
-            }
+            notificationQueue.remove(overdueJobs)
             notifier.triggerNotifications(overdueJobs.map { it.toNotification() })
             overdueJobs
                 .filter { it.type == TYPE_SNOOZE }
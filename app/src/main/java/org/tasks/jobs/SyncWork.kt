@@ -66,7 +66,8 @@ class SyncWork @AssistedInject constructor(
             }
             preferences.setBoolean(syncStatus, true)
         }
-        localBroadcastManager.broadcastRefresh()
+        // synchronizers broadcast the tasks they change, these only update the sync status
+        localBroadcastManager.broadcastRefresh(emptyList())
         try {
             doSync()
             preferences.lastSync = System.currentTimeMillis()
@@ -74,7 +75,7 @@ class SyncWork @AssistedInject constructor(
             firebase.reportException(e)
         } finally {
             preferences.setBoolean(syncStatus, false)
-            localBroadcastManager.broadcastRefresh()
+            localBroadcastManager.broadcastRefresh(emptyList())
         }
         return Result.success()
     }
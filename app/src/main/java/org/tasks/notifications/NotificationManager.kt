@@ -6,13 +6,16 @@ import android.content.Context
 import android.content.Intent
 import androidx.core.app.NotificationCompat
 import com.todoroo.andlib.utility.AndroidUtilities
+import com.todoroo.astrid.data.Task
 import dagger.hilt.android.qualifiers.ApplicationContext
 import org.tasks.LocalBroadcastManager
 import org.tasks.R
 import org.tasks.Strings.isNullOrEmpty
 import org.tasks.data.Alarm
 import org.tasks.data.LocationDao
+import org.tasks.data.Place
 import org.tasks.data.TaskDao
+import org.tasks.db.SuspendDbUtils.chunkedMap
 import org.tasks.filters.NotificationsFilter
 import org.tasks.intents.TaskIntents
 import org.tasks.markdown.MarkdownProvider
@@ -109,11 +112,6 @@ class NotificationManager @Inject constructor(
                 cancelSummaryNotification()
             }
             preferences.bundleNotifications() -> {
-                updateSummary(
-                        notify = false,
-                        nonStop = false,
-                        fiveTimes = false,
-                        newNotifications = emptyList())
                 if (existingNotifications.size == 1) {
                     createNotifications(
                             existingNotifications,
@@ -122,8 +120,14 @@ class NotificationManager @Inject constructor(
                             fiveTimes = false,
                             useGroupKey = true)
                 }
+                // children are built first so that the summary only lists tasks that weren't pruned
                 if (newNotifications.size == 1) {
                     createNotifications(newNotifications, alert, nonstop, fiveTimes, true)
+                    updateSummary(
+                            notify = false,
+                            nonStop = false,
+                            fiveTimes = false,
+                            newNotifications = emptyList())
                 } else {
                     createNotifications(
                             newNotifications,
@@ -139,6 +143,10 @@ class NotificationManager @Inject constructor(
         localBroadcastManager.broadcastRefresh()
     }
 
+    /**
+     * Tasks and places for all [notifications] are loaded up front, and notifications are posted
+     * in order of due date so that the most urgent are posted first
+     */
     private suspend fun createNotifications(
             notifications: List<Notification>,
             alert: Boolean,
@@ -150,23 +158,43 @@ class NotificationManager @Inject constructor(
             Timber.w("Notifications disabled")
             return
         }
+        if (notifications.isEmpty()) {
+            return
+        }
+        val tasks = taskDao.fetch(notifications.map { it.taskId }.distinct()).associateBy { it.id }
+        val places = notifications
+                .mapNotNull { it.location }
+                .distinct()
+                .chunkedMap { locationDao.getPlaces(it) }
+                .associateBy { it.id }
+        val removed = ArrayList<Long>()
+        val notified = ArrayList<Notification>()
         var alert = alert
-        for (notification in notifications) {
-            val builder = getTaskNotification(notification)
+        for (notification in notifications.sortedWith(compareBy(DUE_DATE) { tasks[it.taskId] })) {
+            val builder = getTaskNotification(
+                    notification,
+                    tasks[notification.taskId],
+                    notification.location?.let { places[it] }
+            )
             if (builder == null) {
                 notificationManager.cancel(notification.taskId.toInt())
-                notificationDao.delete(notification.taskId)
+                removed.add(notification.taskId)
             } else {
                 builder
                         .setGroup(if (useGroupKey) GROUP_KEY else notification.taskId.toString())
                         .setGroupAlertBehavior(
                                 if (alert) NotificationCompat.GROUP_ALERT_CHILDREN else NotificationCompat.GROUP_ALERT_SUMMARY)
                 notify(notification.taskId, builder, alert, nonstop, fiveTimes)
-                val reminderTime = DateTime(notification.timestamp).endOfMinute().millis
-                taskDao.setLastNotified(notification.taskId, reminderTime)
+                notified.add(notification)
                 alert = false
             }
         }
+        if (removed.isNotEmpty()) {
+            notificationDao.deleteAll(removed)
+        }
+        notified
+                .groupBy({ DateTime(it.timestamp).endOfMinute().millis }, { it.taskId })
+                .forEach { (reminderTime, ids) -> taskDao.setLastNotified(ids, reminderTime) }
     }
 
     suspend fun notify(
@@ -278,11 +306,21 @@ class NotificationManager @Inject constructor(
         notify(SUMMARY_NOTIFICATION_ID.toLong(), builder, notify, nonStop, fiveTimes)
     }
 
-    suspend fun getTaskNotification(notification: Notification): NotificationCompat.Builder? {
+    suspend fun getTaskNotification(notification: Notification): NotificationCompat.Builder? =
+            getTaskNotification(
+                    notification,
+                    taskDao.fetch(notification.taskId),
+                    notification.location?.let { locationDao.getPlace(it) }
+            )
+
+    fun getTaskNotification(
+            notification: Notification,
+            task: Task?,
+            place: Place?,
+    ): NotificationCompat.Builder? {
         val id = notification.taskId
         val type = notification.type
         val `when` = notification.timestamp
-        val task = taskDao.fetch(id)
         if (task == null) {
             Timber.e("Could not find %s", id)
             return null
@@ -327,7 +365,6 @@ class NotificationManager @Inject constructor(
                 )
         )
         if (type == Alarm.TYPE_GEO_ENTER || type == Alarm.TYPE_GEO_EXIT) {
-            val place = locationDao.getPlace(notification.location!!)
             if (place != null) {
                 builder.setContentText(
                         context.getString(
@@ -405,5 +442,10 @@ class NotificationManager @Inject constructor(
         const val EXTRA_NOTIFICATION_ID = "extra_notification_id"
         const val SUMMARY_NOTIFICATION_ID = 0
         private const val GROUP_KEY = "tasks"
+        /** tasks due soonest first, then tasks without a due date */
+        private val DUE_DATE = compareBy<Task?>(
+                { it?.hasDueDate() != true },
+                { it?.dueDate },
+        )
     }
 }
\ No newline at end of file
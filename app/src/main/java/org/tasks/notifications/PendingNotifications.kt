@@ -0,0 +1,55 @@
+package org.tasks.notifications
+
+/**
+ * Notification updates waiting to be posted. A notification that is replaced or cancelled before it
+ * is posted is dropped, so a burst of updates only posts the latest version of each notification.
+ * Pauses are barriers, updates queued before a pause are never merged with updates after it
+ */
+internal class PendingNotifications<T> {
+    sealed class Op<out T> {
+        class Notify<T>(val id: Int, notification: T) : Op<T>() {
+            var notification: T = notification
+                internal set
+        }
+
+        class Cancel(val id: Int) : Op<Nothing>()
+
+        class Pause(val millis: Long) : Op<Nothing>()
+    }
+
+    private val ops = ArrayDeque<Op<T>>()
+
+    @Synchronized
+    fun notify(id: Int, notification: T) {
+        val pending = ops.lastOrNull { it is Op.Pause || (it is Op.Notify && it.id == id) }
+        if (pending is Op.Notify) {
+            pending.notification = notification
+        } else {
+            ops.addLast(Op.Notify(id, notification))
+        }
+    }
+
+    @Synchronized
+    fun cancel(id: Int) {
+        val barrier = ops.indexOfLast { it is Op.Pause }
+        for (i in ops.lastIndex downTo barrier + 1) {
+            val op = ops[i]
+            if ((op is Op.Notify && op.id == id) || (op is Op.Cancel && op.id == id)) {
+                ops.removeAt(i)
+            }
+        }
+        ops.addLast(Op.Cancel(id))
+    }
+
+    @Synchronized
+    fun pause(millis: Long) {
+        ops.addLast(Op.Pause(millis))
+    }
+
+    @Synchronized
+    fun poll(): Op<T>? = ops.removeFirstOrNull()
+
+    @get:Synchronized
+    val size: Int
+        get() = ops.size
+}
@@ -4,31 +4,56 @@ import android.app.Notification
 import android.content.Context
 import androidx.core.app.NotificationManagerCompat
 import dagger.hilt.android.qualifiers.ApplicationContext
+import org.tasks.notifications.PendingNotifications.Op
+import java.util.concurrent.Executor
 import java.util.concurrent.Executors.newSingleThreadExecutor
 import javax.inject.Inject
 
+/**
+ * Posts notifications no faster than the system allows. Updates that arrive while the throttle is
+ * waiting are coalesced, so notifications that are replaced or cancelled in the meantime are never
+ * posted and don't hold up the rest
+ */
 class ThrottledNotificationManager @Inject constructor(
         @ApplicationContext val context: Context
 ) {
     private val notificationManagerCompat = NotificationManagerCompat.from(context)
     private val executor = newSingleThreadExecutor()
-    private val throttle = Throttle(NOTIFICATIONS_PER_SECOND, executor = executor, tag = "NOTIFY")
+    private val pending = PendingNotifications<Notification>()
+    private val throttle = Throttle(
+            NOTIFICATIONS_PER_SECOND,
+            executor = Executor { it.run() },
+            tag = "NOTIFY"
+    )
 
     fun cancel(id: Int) {
-        executor.execute {
-            notificationManagerCompat.cancel(id)
-        }
+        pending.cancel(id)
+        drain()
     }
 
     fun notify(id: Int, notification: Notification) {
-        throttle.run {
-            notificationManagerCompat.notify(id, notification)
-        }
+        pending.notify(id, notification)
+        drain()
+    }
+
+    fun pause(millis: Long) {
+        pending.pause(millis)
+        drain()
     }
 
-    fun pause(millis: Long) = throttle.pause(millis)
+    private fun drain() = executor.execute {
+        while (true) {
+            when (val op = pending.poll() ?: break) {
+                is Op.Notify -> throttle.run {
+                    notificationManagerCompat.notify(op.id, op.notification)
+                }
+                is Op.Cancel -> notificationManagerCompat.cancel(op.id)
+                is Op.Pause -> Thread.sleep(op.millis)
+            }
+        }
+    }
 
     companion object {
         private const val NOTIFICATIONS_PER_SECOND = 4
     }
-}
\ No newline at end of file
+}
@@ -14,6 +14,7 @@ import org.tasks.R
 import org.tasks.analytics.Constants
 import org.tasks.analytics.Firebase
 import org.tasks.billing.Inventory
+import org.tasks.caldav.RemoteTask
 import org.tasks.caldav.iCalendar
 import org.tasks.data.*
 import org.tasks.data.OpenTaskDao.Companion.filterActive
@@ -149,20 +150,34 @@ class OpenTasksSynchronizer @Inject constructor(
         Timber.d("SYNC $calendar")
 
         val etags = openTaskDao.getEtags(listId)
-        etags.forEach { (uid, sync1, version) ->
-            val caldavTask = caldavDao.getTaskByRemoteId(calendar.uuid!!, uid)
-            val etag = if (account.isEteSync) version else sync1
-            if (caldavTask?.etag == null || caldavTask.etag != etag) {
-                applyChanges(account, calendar, listId, uid, etag, caldavTask)
+        val changed = HashSet<Long>()
+        etags.chunked(BATCH_SIZE).forEach { batch ->
+            val caldavTasks = caldavDao
+                .getCaldavTasksByRemoteId(calendar.uuid!!, batch.map { it.first })
+                .associateBy { it.remoteId }
+            val changes = batch.mapNotNull { (uid, sync1, version) ->
+                val caldavTask = caldavTasks[uid]
+                val etag = if (account.isEteSync) version else sync1
+                if (caldavTask?.etag == null || caldavTask.etag != etag) {
+                    openTaskDao.getTask(listId, uid)?.let {
+                        RemoteTask(caldavTask, it.task!!, null, null, etag)
+                    }
+                } else {
+                    null
+                }
             }
+            changed.addAll(iCalendar.fromVtodos(account, calendar, changes))
         }
         removeDeleted(calendar.uuid!!, etags.map { it.first })
 
         calendar.ctag = ctag
         Timber.d("UPDATE $calendar")
         caldavDao.update(calendar)
+        changed.addAll(caldavDao.getParentChanges(calendar.uuid!!))
         caldavDao.updateParents(calendar.uuid!!)
-        localBroadcastManager.broadcastRefresh()
+        if (changed.isNotEmpty()) {
+            localBroadcastManager.broadcastRefresh(changed)
+        }
     }
 
     private suspend fun removeDeleted(calendar: String, uids: List<String>) {
@@ -220,20 +235,9 @@ class OpenTasksSynchronizer @Inject constructor(
         Timber.d("SENT $caldavTask")
     }
 
-    private suspend fun applyChanges(
-        account: CaldavAccount,
-        calendar: CaldavCalendar,
-        listId: Long,
-        uid: String,
-        etag: String?,
-        existing: CaldavTask?
-    ) {
-        openTaskDao.getTask(listId, uid)?.let {
-            iCalendar.fromVtodo(account, calendar, existing, it.task!!, null, null, etag)
-        }
-    }
-
     companion object {
+        private const val BATCH_SIZE = 100
+
         private val CaldavAccount.isEteSync: Boolean
             get() = uuid?.isEteSync() == true
     }
@@ -11,7 +11,6 @@ import dagger.hilt.android.AndroidEntryPoint
 import kotlinx.coroutines.launch
 import org.tasks.PermissionUtil
 import org.tasks.R
-import org.tasks.caldav.VtodoCache
 import org.tasks.calendars.CalendarEventProvider
 import org.tasks.data.TaskDao
 import org.tasks.etebase.EtebaseLocalCache
@@ -36,7 +35,6 @@ class Advanced : InjectingPreferenceFragment() {
     @Inject lateinit var calendarEventProvider: CalendarEventProvider
     @Inject lateinit var permissionRequester: FragmentPermissionRequestor
     @Inject lateinit var permissionChecker: PermissionChecker
-    @Inject lateinit var vtodoCache: VtodoCache
 
     private lateinit var calendarReminderPreference: SwitchPreferenceCompat
 
@@ -187,7 +185,6 @@ class Advanced : InjectingPreferenceFragment() {
             .setPositiveButton(R.string.EPr_delete_task_data) { _, _ ->
                 val context = requireContext()
                 context.deleteDatabase(database.name)
-                vtodoCache.clear()
                 EtebaseLocalCache.clear(context)
                 restart()
             }
@@ -194,7 +194,7 @@ class Backups : InjectingPreferenceFragment() {
                 if (!("json".equals(extension, ignoreCase = true) || "xml".equals(
                         extension,
                         ignoreCase = true
-                    ))
+                    ) || "gz".equals(extension, ignoreCase = true))
                 ) {
                     context?.toast(R.string.invalid_backup_file)
                 } else {
@@ -40,7 +40,7 @@ class SyncAdapters @Inject constructor(
         val currentState = preferences.getBoolean(R.string.p_sync_ongoing_android, false)
         if (currentState != newState && isOpenTaskSyncEnabled()) {
             preferences.setBoolean(R.string.p_sync_ongoing_android, newState)
-            localBroadcastManager.broadcastRefresh()
+            localBroadcastManager.broadcastRefresh(emptyList())
         }
     }
 
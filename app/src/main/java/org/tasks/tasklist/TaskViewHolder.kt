@@ -60,8 +60,8 @@ class TaskViewHolder internal constructor(
         setOnClickListener { changeDueDate() }
     }
     private val rowBody: ViewGroup = binding.rowBody.apply {
-        setOnClickListener { callback.onClick(this@TaskViewHolder) }
-        setOnLongClickListener { callback.onLongPress(this@TaskViewHolder) }
+        setOnClickListener { onClick() }
+        setOnLongClickListener { onLongPress() }
     }
     private val nameView: TextView = binding.title
     private val description: TextView = binding.description
@@ -139,6 +139,12 @@ class TaskViewHolder internal constructor(
     fun bindView(task: TaskContainer, filter: Filter, sortMode: Int) {
         this.task = task
         indent = task.indent
+        rowBody.isEnabled = !task.isPlaceholder
+        completeBox.visibility = if (task.isPlaceholder) View.INVISIBLE else View.VISIBLE
+        if (task.isPlaceholder) {
+            bindPlaceholder()
+            return
+        }
         markdown.setMarkdown(nameView, task.title)
         setupTitleAndCheckbox()
         setupDueDate(sortMode == SORT_DUE)
@@ -155,19 +161,19 @@ class TaskViewHolder internal constructor(
             linkify.setMovementMethod(
                 nameView,
                 linkClickHandler = { url -> callback.onLinkClicked(this, url) },
-                rowClickHandler = { callback.onClick(this) }
+                rowClickHandler = { onClick() }
             )
             linkify.setMovementMethod(
                 description,
                 linkClickHandler = { url -> callback.onLinkClicked(this, url) },
-                rowClickHandler = { callback.onClick(this) }
+                rowClickHandler = { onClick() }
             )
             if (!markdown.enabled) {
                 Linkify.safeLinkify(nameView)
                 Linkify.safeLinkify(description)
             }
-            nameView.setOnLongClickListener { callback.onLongPress(this) }
-            description.setOnLongClickListener { callback.onLongPress(this) }
+            nameView.setOnLongClickListener { onLongPress() }
+            description.setOnLongClickListener { onLongPress() }
         }
         when {
             chipGroup.visibility == View.VISIBLE -> {
@@ -183,6 +189,23 @@ class TaskViewHolder internal constructor(
         }
     }
 
+    /** blank row with the height of a title, replaced when the task is loaded */
+    private fun bindPlaceholder() {
+        nameView.text = null
+        description.visibility = View.GONE
+        dueDate.visibility = View.GONE
+        chipGroup.setContent {}
+        setBottomPadding(rowPaddingPx, nameView)
+    }
+
+    private fun onClick() {
+        if (!task.isPlaceholder) {
+            callback.onClick(this)
+        }
+    }
+
+    private fun onLongPress() = !task.isPlaceholder && callback.onLongPress(this)
+
     private fun setupTitleAndCheckbox() {
         if (task.isCompleted) {
             nameView.setTextColor(context.getColor(R.color.text_tertiary))
@@ -253,6 +276,9 @@ class TaskViewHolder internal constructor(
     }
 
     private fun onCompleteBoxClick() {
+        if (task.isPlaceholder) {
+            return
+        }
         val newState = completeBox.isChecked
         if (newState != task.isCompleted) {
             callback.onCompletedTask(task, newState)
@@ -263,7 +289,9 @@ class TaskViewHolder internal constructor(
     }
 
     private fun changeDueDate() {
-        callback.onChangeDueDate(task)
+        if (!task.isPlaceholder) {
+            callback.onChangeDueDate(task)
+        }
     }
 
     interface ViewHolderCallbacks {
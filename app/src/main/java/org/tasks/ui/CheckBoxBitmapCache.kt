@@ -0,0 +1,46 @@
+package org.tasks.ui
+
+import android.graphics.Bitmap
+import androidx.annotation.ColorInt
+import androidx.annotation.DrawableRes
+import androidx.collection.LruCache
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Checkbox bitmaps for RemoteViews, shared by every widget. A checkbox only has a few distinct
+ * states, so each bitmap is created once per drawable and tint. Entries are dropped when the
+ * theme changes. Cached bitmaps are shared and must not be modified or recycled
+ */
+@Singleton
+class CheckBoxBitmapCache(maxSize: Int) {
+
+    @Inject constructor() : this(MAX_SIZE)
+
+    private data class Key(@DrawableRes val resId: Int, @ColorInt val tint: Int)
+
+    private val cache = LruCache<Key, Bitmap>(maxSize)
+    private var theme: Any? = null
+
+    /**
+     * @param theme anything that changes how the drawable is rendered, e.g. density or night mode
+     * @return cached bitmap for [resId] tinted with [tint], or a new one from [create]
+     */
+    @Synchronized
+    fun get(theme: Any, @DrawableRes resId: Int, @ColorInt tint: Int, create: () -> Bitmap): Bitmap {
+        if (theme != this.theme) {
+            cache.evictAll()
+            this.theme = theme
+        }
+        val key = Key(resId, tint)
+        return cache[key] ?: create().also { cache.put(key, it) }
+    }
+
+    val size: Int
+        @Synchronized get() = cache.size()
+
+    companion object {
+        /** three drawables times four priorities, with room for a previous tint palette */
+        private const val MAX_SIZE = 32
+    }
+}
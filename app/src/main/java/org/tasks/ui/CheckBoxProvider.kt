@@ -1,6 +1,7 @@
 package org.tasks.ui
 
 import android.content.Context
+import android.content.res.Configuration
 import android.graphics.Bitmap
 import android.graphics.Canvas
 import android.graphics.drawable.Drawable
@@ -14,15 +15,22 @@ import javax.inject.Inject
 
 class CheckBoxProvider @Inject constructor(
     @param:ActivityContext private val context: Context,
-    private val colorProvider: ColorProvider
+    private val colorProvider: ColorProvider,
+    private val bitmapCache: CheckBoxBitmapCache,
 ) {
     fun getCheckBox(task: Task) = getDrawable(task.getCheckboxRes(), task.priority)
 
+    /** @return shared bitmap, must not be modified or recycled */
     fun getWidgetCheckBox(task: Task): Bitmap {
-        val wrapped =
-            DrawableUtil.getWrapped(context, task.getCheckboxRes())
-        DrawableUtil.setTint(wrapped, colorProvider.getPriorityColor(task.priority, false))
-        return convertToBitmap(wrapped)
+        val resId = task.getCheckboxRes()
+        val tint = colorProvider.getPriorityColor(task.priority, false)
+        val configuration = context.resources.configuration
+        val theme = configuration.densityDpi to (configuration.uiMode and Configuration.UI_MODE_NIGHT_MASK)
+        return bitmapCache.get(theme, resId, tint) {
+            val wrapped = DrawableUtil.getWrapped(context, resId)
+            DrawableUtil.setTint(wrapped, tint)
+            convertToBitmap(wrapped)
+        }
     }
 
     private fun getDrawable(@DrawableRes resId: Int, priority: Int): Drawable {
@@ -17,7 +17,13 @@ class ChipListCache @Inject internal constructor(
 
     private val caldavCalendars: MutableMap<String?, CaldavCalendar> = HashMap()
     private val tagDatas: MutableMap<String?, TagFilter> = HashMap()
+
+    /** incremented whenever lists or tags change */
+    @Volatile var version = 0
+        private set
+
     private fun updateCaldavCalendars(updated: List<CaldavCalendar>) {
+        version++
         caldavCalendars.clear()
         for (update in updated) {
             caldavCalendars[update.uuid] = update
@@ -26,6 +32,7 @@ class ChipListCache @Inject internal constructor(
     }
 
     private fun updateTags(updated: List<TagData>) {
+        version++
         tagDatas.clear()
         for (update in updated) {
             tagDatas[update.remoteId] = TagFilter(update)
@@ -5,10 +5,13 @@ import android.content.Context
 import android.content.Intent
 import androidx.lifecycle.ViewModel
 import com.todoroo.andlib.utility.DateUtilities
+import com.todoroo.andlib.utility.DateUtilities.now
+import com.todoroo.astrid.api.AstridApiConstants.EXTRAS_TASK_ID
 import com.todoroo.astrid.api.Filter
 import dagger.hilt.android.lifecycle.HiltViewModel
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.filter
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.update
@@ -16,9 +19,13 @@ import org.tasks.LocalBroadcastManager
 import org.tasks.compose.throttleLatest
 import org.tasks.data.TaskContainer
 import org.tasks.data.TaskDao
+import org.tasks.data.TaskListQuery
 import org.tasks.data.TaskListQuery.getQuery
 import org.tasks.preferences.Preferences
+import timber.log.Timber
 import javax.inject.Inject
+import kotlin.math.max
+import kotlin.math.min
 
 @HiltViewModel
 class TaskListViewModel @Inject constructor(
@@ -30,19 +37,36 @@ class TaskListViewModel @Inject constructor(
     data class State(
         val filter: Filter? = null,
         val now: Long = DateUtilities.now(),
+        val firstVisible: Long = 0,
     )
 
     private val _state = MutableStateFlow(State())
 
+    /** ids of tasks changed since the last query, or null if the next query must start over */
+    private var changes: MutableSet<Long>? = null
+    private var lastState: State? = null
+    private var lastTasks: List<TaskContainer>? = null
+
+    /** layout-only rows for every task in the list when paging, otherwise null */
+    private var entries: List<TaskContainer>? = null
+    private var positions: Map<Long, Int> = emptyMap()
+    private val loaded = HashMap<Long, TaskContainer>()
+
     val tasks: Flow<List<TaskContainer>> =
         _state
             .filter { it.filter != null }
             .throttleLatest(333)
-            .map { taskDao.fetchTasks { getQuery(preferences, it.filter!!) } }
+            .map { fetchTasks(it) }
+            .distinctUntilChanged { old, new -> old === new }
 
     private val refreshReceiver = object : BroadcastReceiver() {
         override fun onReceive(context: Context?, intent: Intent?) {
-            invalidate()
+            val ids = intent?.getSerializableExtra(EXTRAS_TASK_ID) as? ArrayList<Long>
+            if (ids == null) {
+                invalidate()
+            } else {
+                invalidate(ids)
+            }
         }
     }
 
@@ -52,10 +76,171 @@ class TaskListViewModel @Inject constructor(
         }
     }
 
+    /** Used in paging mode to load the rows around the top of the visible range */
+    fun setFirstVisible(taskId: Long) {
+        if (entries != null) {
+            _state.update { it.copy(firstVisible = taskId) }
+        }
+    }
+
     fun invalidate() {
+        synchronized(this) { changes = null }
         _state.update { it.copy(now = DateUtilities.now()) }
     }
 
+    private fun invalidate(ids: List<Long>) {
+        synchronized(this) { changes?.addAll(ids) }
+        _state.update { it.copy(now = DateUtilities.now()) }
+    }
+
+    private suspend fun fetchTasks(state: State): List<TaskContainer> {
+        val filter = state.filter!!
+        val changed = synchronized(this) {
+            changes.also { changes = HashSet() }
+        }
+        val previous = lastState
+        val windowOnly = previous?.copy(firstVisible = state.firstVisible) == state
+        val tasks = when {
+            windowOnly -> if (entries != null) loadWindow(state.firstVisible) else lastTasks!!
+            previous?.filter === filter && changed != null ->
+                lastTasks?.let { applyChanges(filter, it, changed) } ?: query(state)
+            else -> query(state)
+        }
+        lastState = state
+        lastTasks = tasks
+        return tasks
+    }
+
+    /**
+     * Lists that support paging are traversed once with [TaskListQuery.getEntriesQuery]. Small
+     * lists then fetch full rows for every entry, large lists only for a window around
+     * [State.firstVisible]. Headers are still computed by the adapter from the entries, so every
+     * row is kept in memory, but without its title, notes or joined values
+     */
+    private suspend fun query(state: State): List<TaskContainer> {
+        val filter = state.filter!!
+        entries = null
+        positions = emptyMap()
+        loaded.clear()
+        if (!TaskListQuery.supportsPaging(preferences, filter)) {
+            return taskDao.fetchTasks { getQuery(preferences, filter) }
+        }
+        val start = now()
+        val entries = taskDao.fetchTasks { TaskListQuery.getEntriesQuery(preferences, filter) }
+        if (entries.size <= PAGING_THRESHOLD) {
+            val rows = entries.map { it.id }.chunked(FETCH_SIZE).flatMap { ids ->
+                taskDao.fetchTasks { getQuery(ids) }
+            }.associateBy { it.id }
+            return entries.mapNotNull { entry -> rows[entry.id]?.withPlacement(entry) }
+        }
+        entries.forEach { it.isPlaceholder = true }
+        this.entries = entries
+        positions = HashMap<Long, Int>(entries.size).apply {
+            entries.forEachIndexed { index, entry -> put(entry.id, index) }
+        }
+        return loadWindow(state.firstVisible).also {
+            Timber.d("%sms: first page of %s tasks", now() - start, entries.size)
+        }
+    }
+
+    /**
+     * Load the rows around [firstVisible] and drop the ones that have scrolled far away. Rows
+     * that aren't loaded are returned as placeholders, see [TaskContainer.isPlaceholder]
+     */
+    private suspend fun loadWindow(firstVisible: Long): List<TaskContainer> {
+        val entries = entries!!
+        val index = positions[firstVisible] ?: 0
+        val evicted = loaded.keys.removeIf {
+            (positions[it] ?: -1) !in (index - KEEP_BEFORE)..(index + KEEP_AFTER)
+        }
+        val missing = (max(0, index - PAGE_SIZE) until min(entries.size, index + 2 * PAGE_SIZE))
+            .map { entries[it].id }
+            .filterNot { loaded.containsKey(it) }
+        if (missing.isEmpty() && !evicted && lastTasks != null) {
+            return lastTasks!!
+        }
+        missing.chunked(PAGE_SIZE).forEach { ids ->
+            taskDao.fetchTasks { getQuery(ids) }.forEach { task ->
+                positions[task.id]?.let { loaded[task.id] = task.withPlacement(entries[it]) }
+            }
+        }
+        return entries.map { loaded[it.id] ?: it }
+    }
+
+    /**
+     * Re-fetch only the changed rows and patch them into the previous result. Deleted rows are
+     * dropped, and changed tasks that aren't in the list are ignored unless [filter] would show
+     * them at the top level.
+     *
+     * @return null if a change could affect membership, sorting, grouping or hierarchy
+     */
+    private suspend fun applyChanges(
+        filter: Filter,
+        tasks: List<TaskContainer>,
+        changed: Set<Long>,
+    ): List<TaskContainer>? {
+        if (changed.isEmpty()) {
+            return tasks
+        }
+        if (changed.size > MAX_CHANGES) {
+            return null
+        }
+        val listed = tasks.filter { changed.contains(it.id) }.mapTo(HashSet()) { it.id }
+        if (entries != null && !listed.all { loaded.containsKey(it) }) {
+            return null
+        }
+        val updated = taskDao.fetchTasks { getQuery(changed.toList()) }.associateBy { it.id }
+        val removed = changed.filterTo(HashSet()) { updated[it]?.task?.isDeleted != false }
+        val added = changed.filterNot { removed.contains(it) || listed.contains(it) }
+        if (added.isNotEmpty() &&
+            (added.any { updated[it]!!.parent > 0 } || taskDao.count(preferences, filter, added) > 0)) {
+            return null
+        }
+        if (entries != null && listed.any { removed.contains(it) }) {
+            return null
+        }
+        val columns = placementColumns(filter)
+        val result = ArrayList<TaskContainer>(tasks.size)
+        var removedIndent = Int.MAX_VALUE
+        for (original in tasks) {
+            if (original.indent > removedIndent) {
+                if (!removed.contains(original.id)) {
+                    return null
+                }
+                continue
+            }
+            removedIndent = Int.MAX_VALUE
+            if (!changed.contains(original.id)) {
+                result.add(original)
+            } else if (removed.contains(original.id)) {
+                if (original.indent > 0) {
+                    // parent's child count would be stale
+                    return null
+                }
+                removedIndent = original.indent
+            } else {
+                val task = updated[original.id]!!
+                if (columns.any { it(original) != it(task) }) {
+                    return null
+                }
+                result.add(task.withPlacement(original))
+            }
+        }
+        if (entries != null) {
+            result.forEach { if (changed.contains(it.id)) loaded[it.id] = it }
+        }
+        Timber.v("Updated %s rows in place", changed.size)
+        return result
+    }
+
+    /** Values read by the list query for [filter], see [PLACEMENT_COLUMNS] */
+    private fun placementColumns(filter: Filter): List<TaskContainer.() -> Any?> {
+        val sql = getQuery(preferences, filter).joinToString("\n")
+        return PLACEMENT_COLUMNS
+            .filter { (pattern, _) -> pattern.containsMatchIn(sql) }
+            .map { (_, value) -> value }
+    }
+
     init {
         localBroadcastManager.registerRefreshReceiver(refreshReceiver)
     }
@@ -63,4 +248,59 @@ class TaskListViewModel @Inject constructor(
     override fun onCleared() {
         localBroadcastManager.unregisterReceiver(refreshReceiver)
     }
+
+    companion object {
+        private const val MAX_CHANGES = 50
+        private const val PAGING_THRESHOLD = 2000
+        private const val PAGE_SIZE = 100
+        private const val FETCH_SIZE = 500
+        private const val KEEP_BEFORE = 3 * PAGE_SIZE
+        private const val KEEP_AFTER = 4 * PAGE_SIZE
+
+        private fun TaskContainer.withPlacement(other: TaskContainer) = copy(
+            parentComplete = other.parentComplete,
+            children = other.children,
+            sortGroup = other.sortGroup,
+            primarySort = other.primarySort,
+            secondarySort = other.secondarySort,
+            indent = other.indent,
+            targetIndent = other.targetIndent,
+        )
+
+        /**
+         * Columns that a filter, sort or group can read, with the row values they read. Rows are
+         * only patched in place if none of the columns that appear in the list query changed
+         */
+        private val PLACEMENT_COLUMNS = listOf(
+            column("title") { task.title },
+            column("importance") { task.priority },
+            column("dueDate") { task.dueDate },
+            column("hideUntil") { task.hideUntil },
+            column("created") { task.creationDate },
+            column("modified") { task.modificationDate },
+            column("completed") { task.completionDate },
+            column("deleted") { task.deletionDate },
+            column("notes") { task.notes },
+            column("estimatedSeconds") { task.estimatedSeconds },
+            column("elapsedSeconds") { task.elapsedSeconds },
+            column("timerStart") { task.timerStart },
+            column("notificationFlags") { task.ringFlags },
+            column("lastNotified") { task.reminderLast },
+            column("recurrence") { task.recurrence },
+            column("repeat_from") { task.repeatFrom },
+            column("calendarUri") { task.calendarURI },
+            column("remoteId") { task.remoteId },
+            column("collapsed") { task.isCollapsed },
+            column("parent") { task.parent },
+            column("order") { task.order },
+            column("read_only") { task.readOnly },
+            column("tags", "tag_uid") { tagsString },
+            column("cd_calendar", "cdl_\\w+") { caldav },
+            column("cd_remote_parent") { caldavTask?.remoteParent },
+            column("geofences", "places") { location?.place?.uid },
+        )
+
+        private fun column(vararg names: String, value: TaskContainer.() -> Any?) =
+            Regex(names.joinToString("|") { "\\b$it\\b" }) to value
+    }
 }
@@ -10,7 +10,8 @@ import org.tasks.widget.TasksWidget
 import javax.inject.Inject
 
 class AppWidgetManager @Inject constructor(
-        @param:ApplicationContext private val context: Context
+        @param:ApplicationContext private val context: Context,
+        private val widgetDataHub: WidgetDataHub,
 ) {
     private val appWidgetManager: AppWidgetManager? = AppWidgetManager.getInstance(context)
 
@@ -30,6 +31,7 @@ class AppWidgetManager @Inject constructor(
     }
 
     fun updateWidgets() {
+        widgetDataHub.invalidate()
         appWidgetManager?.notifyAppWidgetViewDataChanged(widgetIds, R.id.list_view)
     }
 
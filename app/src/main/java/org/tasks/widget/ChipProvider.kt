@@ -28,6 +28,9 @@ class ChipProvider @Inject constructor(
 ) {
     var isDark = false
 
+    val listVersion: Int
+        get() = chipListCache.version
+
     fun getSubtaskChip(task: TaskContainer): RemoteViews {
         val chip = newChip()
         chip.setTextViewText(
@@ -48,6 +48,7 @@ internal class ScrollableViewsFactory(
     private val localBroadcastManager: LocalBroadcastManager,
     private val markdown: Markdown,
     private val headerFormatter: HeaderFormatter,
+    private val widgetDataHub: WidgetDataHub,
 ) : RemoteViewsFactory {
     private val indentPadding: Int
     private var showDueDates = false
@@ -84,6 +85,9 @@ internal class ScrollableViewsFactory(
     private var isDark = checkIfDark
     private var showFullDate = false
     private var compact = false
+    private val rowCache = WidgetRowCache<RemoteViews>()
+    private var rowSettings: List<Any?> = emptyList()
+    private var dataKey: WidgetDataHub.Key? = null
 
     private val checkIfDark: Boolean
         get() = when (widgetPreferences.themeIndex) {
@@ -97,8 +101,15 @@ internal class ScrollableViewsFactory(
     override fun onDataSetChanged() {
         runBlocking {
             updateSettings()
+            val key = WidgetDataHub.key(widgetPreferences, filter!!)
+            if (key != dataKey) {
+                widgetDataHub.acquire(key)
+                dataKey?.let { widgetDataHub.release(it) }
+                dataKey = key
+            }
+            val containers = widgetDataHub.getTasks(key) { taskDao.fetchTasks { getQuery(filter) } }
             tasks = SectionedDataSource(
-                    taskDao.fetchTasks { getQuery(filter) },
+                    containers,
                     disableGroups,
                     groupMode,
                     collapsed,
@@ -107,10 +118,31 @@ internal class ScrollableViewsFactory(
             if (collapsed.retainAll(tasks.getSectionValues())) {
                 widgetPreferences.setCollapsed(collapsed)
             }
+            updateRowCache(containers)
+        }
+    }
+
+    /** Keep rows whose tasks are unchanged, unless something that affects every row changed */
+    private fun updateRowCache(containers: List<TaskContainer>) {
+        val settings = listOf(
+            isDark, vPad, hPad, handleDueDateClick, showFullTaskTitle, showDescription,
+            showFullDescription, showDueDates, endDueDate, showCheckboxes, textSize,
+            widgetPreferences.filterId, showDividers, disableGroups, showSubtasks, showStartDates,
+            showPlaces, showLists, showTags, showFullDate, groupMode, chipProvider.listVersion,
+            now().startOfDay(),
+        )
+        if (settings != rowSettings) {
+            rowSettings = settings
+            rowCache.clear()
+        } else {
+            rowCache.retain(containers.mapTo(HashSet()) { it.id })
         }
     }
 
-    override fun onDestroy() {}
+    override fun onDestroy() {
+        dataKey?.let { widgetDataHub.release(it) }
+        dataKey = null
+    }
 
     override fun getCount(): Int {
         if (isDark != checkIfDark) {
@@ -183,9 +215,11 @@ internal class ScrollableViewsFactory(
         return row
     }
 
-    private fun buildUpdate(position: Int): RemoteViews? {
+    private fun buildUpdate(position: Int): RemoteViews? =
+            getTask(position)?.let { rowCache.get(it, this::buildRow) }
+
+    private fun buildRow(taskContainer: TaskContainer): RemoteViews? {
         try {
-            val taskContainer = getTask(position) ?: return null
             val task = taskContainer.task
             var textColorTitle = textColorPrimary
             val row = newRemoteView()
@@ -15,6 +15,7 @@ import org.tasks.preferences.DefaultFilterProvider;
 import org.tasks.preferences.Preferences;
 import org.tasks.tasklist.HeaderFormatter;
 import org.tasks.themes.ColorProvider;
+import org.tasks.ui.CheckBoxBitmapCache;
 import org.tasks.ui.CheckBoxProvider;
 
 import java.util.Locale;
@@ -35,6 +36,8 @@ public class ScrollableWidgetUpdateService extends RemoteViewsService {
   @Inject LocalBroadcastManager localBroadcastManager;
   @Inject MarkdownProvider markdownProvider;
   @Inject HeaderFormatter headerFormatter;
+  @Inject CheckBoxBitmapCache checkBoxBitmapCache;
+  @Inject WidgetDataHub widgetDataHub;
 
   @Override
   public void onStart(Intent intent, int startId) {
@@ -63,12 +66,14 @@ public class ScrollableWidgetUpdateService extends RemoteViewsService {
         widgetId,
         taskDao,
         defaultFilterProvider,
-        new CheckBoxProvider(context, new ColorProvider(context, preferences)),
+        new CheckBoxProvider(
+            context, new ColorProvider(context, preferences), checkBoxBitmapCache),
         locale,
         chipProvider,
         localBroadcastManager,
         markdownProvider.markdown(false),
-        headerFormatter
+        headerFormatter,
+        widgetDataHub
     );
   }
 }
@@ -0,0 +1,92 @@
+package org.tasks.widget
+
+import com.todoroo.andlib.utility.DateUtilities.now
+import com.todoroo.astrid.api.Filter
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.tasks.data.TaskContainer
+import org.tasks.preferences.QueryPreferences
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Query results shared by widgets that show the same filter with the same query preferences. Each
+ * key is queried at most once per [invalidate], and results are dropped when the last widget using
+ * a key releases it. Shared results must not be modified
+ */
+@Singleton
+class WidgetDataHub @Inject constructor() {
+
+    data class Key(val sql: String?, val preferences: List<Any?>)
+
+    private class Entry {
+        var references = 0
+        var generation = -1L
+        var fetched = 0L
+        var tasks: List<TaskContainer> = emptyList()
+        val mutex = Mutex()
+    }
+
+    private val entries = HashMap<Key, Entry>()
+    private val generation = AtomicLong()
+
+    /** Called when tasks change, the next request for every key runs its query again */
+    fun invalidate() {
+        generation.incrementAndGet()
+    }
+
+    @Synchronized
+    fun acquire(key: Key) {
+        entries.getOrPut(key) { Entry() }.references++
+    }
+
+    @Synchronized
+    fun release(key: Key) {
+        val entry = entries[key] ?: return
+        if (--entry.references <= 0) {
+            entries.remove(key)
+        }
+    }
+
+    /** @return results for [key], running [fetch] if they are missing or stale */
+    suspend fun getTasks(key: Key, fetch: suspend () -> List<TaskContainer>): List<TaskContainer> {
+        val entry = synchronized(this) { entries[key] } ?: return fetch()
+        return entry.mutex.withLock {
+            val current = generation.get()
+            val now = now()
+            if (entry.generation != current || now - entry.fetched > MAX_AGE) {
+                entry.tasks = fetch()
+                entry.generation = current
+                entry.fetched = now
+            }
+            entry.tasks
+        }
+    }
+
+    val size: Int
+        @Synchronized get() = entries.size
+
+    companion object {
+        /** queries use the current time, so don't share results that are older than this */
+        private const val MAX_AGE = 60_000L
+
+        fun key(preferences: QueryPreferences, filter: Filter) = Key(
+            sql = filter.getSqlQuery(),
+            preferences = listOf(
+                filter.javaClass,
+                preferences.sortMode,
+                preferences.groupMode,
+                preferences.completedMode,
+                preferences.isManualSort,
+                preferences.isAstridSort,
+                preferences.sortAscending,
+                preferences.groupAscending,
+                preferences.completedAscending,
+                preferences.showHidden,
+                preferences.showCompleted,
+                preferences.completedTasksAtBottom,
+            ),
+        )
+    }
+}
@@ -0,0 +1,77 @@
+package org.tasks.widget
+
+import org.tasks.data.Place
+import org.tasks.data.TaskContainer
+
+/**
+ * Rows built for a widget, keyed by task id. A row is reused until its task is modified or
+ * something else shown in the row changes. Callers [clear] the cache when widget settings, list or
+ * tag names, or the current day change
+ */
+internal class WidgetRowCache<T> {
+    private data class Key(
+        val modified: Long,
+        val indent: Int,
+        val children: Int,
+        val collapsed: Boolean,
+        val hidden: Boolean,
+        val overdue: Boolean,
+        val sortGroup: Long?,
+        val tags: String?,
+        val caldav: String?,
+        val place: Place?,
+    )
+
+    private class Entry<T>(val key: Key, val row: T)
+
+    private val rows = HashMap<Long, Entry<T>>()
+
+    var hitCount = 0
+        private set
+
+    var missCount = 0
+        private set
+
+    val size: Int
+        @Synchronized get() = rows.size
+
+    /** @return the cached row for [task], or a new one from [build] if [task] changed */
+    @Synchronized
+    fun get(task: TaskContainer, build: (TaskContainer) -> T?): T? {
+        val key = key(task)
+        rows[task.id]
+            ?.takeIf { it.key == key }
+            ?.let {
+                hitCount++
+                return it.row
+            }
+        missCount++
+        return build(task)?.also { rows[task.id] = Entry(key, it) }
+    }
+
+    /** Drop rows for tasks that are no longer shown */
+    @Synchronized
+    fun retain(taskIds: Set<Long>) {
+        rows.keys.retainAll(taskIds)
+    }
+
+    @Synchronized
+    fun clear() {
+        rows.clear()
+    }
+
+    companion object {
+        private fun key(task: TaskContainer) = Key(
+            modified = task.task.modificationDate,
+            indent = task.indent,
+            children = task.children,
+            collapsed = task.isCollapsed,
+            hidden = task.isHidden,
+            overdue = task.isOverdue,
+            sortGroup = task.sortGroup,
+            tags = task.tagsString,
+            caldav = task.caldav,
+            place = task.location?.place,
+        )
+    }
+}
@@ -21,8 +21,10 @@ import org.tasks.data.Alarm.Companion.TYPE_SNOOZE
 import org.tasks.data.Alarm.Companion.whenDue
 import org.tasks.data.Alarm.Companion.whenOverdue
 import org.tasks.data.Alarm.Companion.whenStarted
+import org.tasks.data.TaskAlarm
 import org.tasks.date.DateTimeUtils.newDateTime
 import org.tasks.date.DateTimeUtils.toDateTime
+import org.tasks.jobs.AlarmEntry
 import org.tasks.makers.AlarmEntryMaker.TIME
 import org.tasks.makers.AlarmEntryMaker.TYPE
 import org.tasks.makers.AlarmEntryMaker.newAlarmEntry
@@ -30,6 +32,7 @@ import org.tasks.makers.TaskMaker.CREATION_TIME
 import org.tasks.makers.TaskMaker.DUE_DATE
 import org.tasks.makers.TaskMaker.DUE_TIME
 import org.tasks.makers.TaskMaker.HIDE_TYPE
+import org.tasks.makers.TaskMaker.ID
 import org.tasks.makers.TaskMaker.REMINDER_LAST
 import org.tasks.makers.TaskMaker.newTask
 import org.tasks.reminders.Random
@@ -358,6 +361,42 @@ class AlarmCalculatorTest {
         }
     }
 
+    @Test
+    fun nextAlarmForEachTask() {
+        val first = newTask(with(ID, 1L))
+        val second = newTask(with(ID, 2L))
+
+        val alarms = alarmCalculator.toAlarmEntries(
+            listOf(
+                TaskAlarm(first, Alarm(1, now.plusDays(2).millis, TYPE_DATE_TIME)),
+                TaskAlarm(second, Alarm(2, now.plusDays(3).millis, TYPE_DATE_TIME)),
+                TaskAlarm(first, Alarm(1, now.plusDays(1).millis, TYPE_DATE_TIME)),
+            )
+        )
+
+        assertEquals(
+            listOf(
+                AlarmEntry(0, 1, now.plusDays(1).millis, TYPE_DATE_TIME),
+                AlarmEntry(0, 2, now.plusDays(3).millis, TYPE_DATE_TIME),
+            ),
+            alarms
+        )
+    }
+
+    @Test
+    fun snoozeIsNextAlarm() {
+        val task = newTask(with(ID, 1L))
+
+        val alarms = alarmCalculator.toAlarmEntries(
+            listOf(
+                TaskAlarm(task, Alarm(1, now.plusDays(1).millis, TYPE_DATE_TIME)),
+                TaskAlarm(task, Alarm(1, now.plusDays(2).millis, TYPE_SNOOZE)),
+            )
+        )
+
+        assertEquals(listOf(AlarmEntry(0, 1, now.plusDays(2).millis, TYPE_SNOOZE)), alarms)
+    }
+
     internal class RandomStub : Random() {
         var seed = 1.0f
 
@@ -53,4 +53,28 @@ class BackupConstantsTest {
                 BackupConstants.getTimestampFromFilename("user.20200910T1503.json")
         )
     }
+
+    @Test
+    fun compressedBackupMatchesFilename() {
+        assertTrue(BackupConstants.isBackupFile("auto.20200910T1503.json.gz"))
+    }
+
+    @Test
+    fun deltaBackupMatchesFilename() {
+        assertTrue(BackupConstants.isBackupFile("auto.20200910T1503.delta.json.gz"))
+        assertTrue(BackupConstants.isDelta("auto.20200910T1503.delta.json.gz"))
+    }
+
+    @Test
+    fun fullBackupIsNotDelta() {
+        assertFalse(BackupConstants.isDelta("auto.20200910T1503.json.gz"))
+    }
+
+    @Test
+    fun getTimestampFromDeltaBackup() {
+        assertEquals(
+                DateTime(2020, 9, 10, 15, 3).millis,
+                BackupConstants.getTimestampFromFilename("auto.20200910T1503.delta.json.gz")
+        )
+    }
 }
@@ -0,0 +1,64 @@
+package org.tasks.caldav
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.tasks.TestUtilities.readFile
+
+class ParsedVtodoCacheTest {
+    private val cache = ParsedVtodoCache(1024 * 1024)
+    private val vtodo = readFile("thunderbird/basic_no_due_date.txt")
+
+    @Test
+    fun parseOncePerVersion() {
+        val first = cache.get("calendar", "1.ics", "etag", vtodo)
+        val second = cache.get("calendar", "1.ics", "etag", vtodo)
+
+        assertSame(first, second)
+        assertEquals(1, cache.hitCount)
+        assertEquals(1, cache.missCount)
+    }
+
+    @Test
+    fun newEtagIsNewVersion() {
+        val first = cache.get("calendar", "1.ics", "etag1", vtodo)
+        val second = cache.get("calendar", "1.ics", "etag2", vtodo)
+
+        assertNotSame(first, second)
+    }
+
+    @Test
+    fun changedSourceIsNewVersion() {
+        val first = cache.get("calendar", "1.ics", "etag", vtodo)
+        val second = cache.get("calendar", "1.ics", "etag", vtodo.replace("Test title", "Other"))
+
+        assertNotSame(first, second)
+        assertEquals("Other", second?.summary)
+    }
+
+    @Test
+    fun putRemoteCopy() {
+        val remote = iCalendar.fromVtodo(vtodo)!!
+
+        cache.put("calendar", "1.ics", "etag", vtodo, remote)
+
+        assertSame(remote, cache.get("calendar", "1.ics", "etag", vtodo))
+    }
+
+    @Test
+    fun blankVtodo() {
+        assertNull(cache.get("calendar", "1.ics", "etag", ""))
+        assertEquals(0, cache.size)
+    }
+
+    @Test
+    fun evictWhenFull() {
+        val cache = ParsedVtodoCache(vtodo.length)
+        cache.get("calendar", "1.ics", "etag", vtodo)
+        cache.get("calendar", "2.ics", "etag", vtodo)
+
+        assertEquals(vtodo.length, cache.size)
+    }
+}
@@ -0,0 +1,32 @@
+package org.tasks.data
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class TaskSearchTest {
+    @Test
+    fun matchWordsAsPhrase() {
+        assertEquals("\"buy milk*\"", TaskSearch.matchQuery("Buy milk"))
+    }
+
+    @Test
+    fun prefixMatchSingleWord() {
+        assertEquals("\"mil*\"", TaskSearch.matchQuery("mil"))
+    }
+
+    @Test
+    fun stripQueryOperators() {
+        assertEquals("\"a b c*\"", TaskSearch.matchQuery("\"a\" -b* (c)"))
+    }
+
+    @Test
+    fun keepNonLatinLetters() {
+        assertEquals("\"über 日本*\"", TaskSearch.matchQuery("über, 日本"))
+    }
+
+    @Test
+    fun noWordsReturnsNull() {
+        assertNull(TaskSearch.matchQuery(" %_- "))
+    }
+}
@@ -0,0 +1,101 @@
+package org.tasks.db
+
+import androidx.sqlite.db.SupportSQLiteProgram
+import com.todoroo.astrid.api.PermaSql
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.verifyNoInteractions
+
+class QueryCompilerTest {
+    private val values = mapOf(PermaSql.VALUE_NOW to 1000L, PermaSql.VALUE_EOD to 2000L)
+    private val program = mock(SupportSQLiteProgram::class.java)
+
+    @Before
+    fun setUp() {
+        QueryCompiler.clear()
+    }
+
+    @Test
+    fun bindStringLiterals() {
+        val query = QueryCompiler.query("SELECT * FROM tasks WHERE title = 'it''s' AND notes = ''", values)
+        query.bindTo(program)
+
+        assertEquals("SELECT * FROM tasks WHERE title = ? AND notes = ?", query.sql)
+        verify(program).bindString(1, "it's")
+        verify(program).bindString(2, "")
+    }
+
+    @Test
+    fun bindPlaceholders() {
+        val query = QueryCompiler.query("SELECT * FROM tasks WHERE hideUntil < NOW() AND dueDate <= EOD()", values)
+        query.bindTo(program)
+
+        assertEquals("SELECT * FROM tasks WHERE hideUntil < ? AND dueDate <= ?", query.sql)
+        verify(program).bindLong(1, 1000L)
+        verify(program).bindLong(2, 2000L)
+    }
+
+    @Test
+    fun sameTextAtDifferentTimes() {
+        val sql = "SELECT * FROM tasks WHERE hideUntil < NOW()"
+        val misses = QueryCompiler.missCount
+        val first = QueryCompiler.query(sql, values)
+        val second = QueryCompiler.query(sql, mapOf(PermaSql.VALUE_NOW to 3000L))
+
+        assertEquals(first.sql, second.sql)
+        assertSame(QueryCompiler.compile(sql), QueryCompiler.compile(sql))
+        assertEquals(misses + 1, QueryCompiler.missCount)
+    }
+
+    @Test
+    fun ignoreQuotedIdentifiers() {
+        val sql = "SELECT \"it's\", `a'b`, [c'd] FROM tasks"
+
+        assertEquals(sql, QueryCompiler.query(sql, values).sql)
+    }
+
+    @Test
+    fun ignoreComments() {
+        val sql = "SELECT * FROM tasks -- don't\n/* NOW() isn't bound */"
+
+        assertEquals(0, QueryCompiler.compile(sql).argumentCount)
+    }
+
+    @Test
+    fun ignorePlaceholderInsideIdentifier() {
+        val sql = "SELECT MYNOW() FROM tasks"
+
+        assertEquals(sql, QueryCompiler.query(sql, values).sql)
+    }
+
+    @Test
+    fun replacePlaceholderInsideLiteral() {
+        val query = QueryCompiler.query("SELECT * FROM tasks WHERE notes LIKE '%NOW()%'", values)
+        query.bindTo(program)
+
+        verify(program).bindString(1, "%1000%")
+    }
+
+    @Test
+    fun inlineSchemaStatements() {
+        val sql = "CREATE TEMPORARY TABLE t (a TEXT DEFAULT 'x')"
+        val query = QueryCompiler.query(sql, values)
+        query.bindTo(program)
+
+        assertEquals(sql, query.sql)
+        verifyNoInteractions(program)
+    }
+
+    @Test
+    fun inlineWhenTooManyArguments() {
+        val sql = "SELECT * FROM tasks WHERE remoteId IN (${(0..1000).joinToString { "'$it'" }}) AND hideUntil < NOW()"
+        val query = QueryCompiler.query(sql, values)
+
+        assertEquals(sql.replace("NOW()", "1000"), query.sql)
+        assertEquals(0, query.argCount)
+    }
+}
@@ -0,0 +1,107 @@
+package org.tasks.jobs
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.Mockito
+import org.tasks.data.Alarm.Companion.TYPE_DATE_TIME
+import org.tasks.data.Alarm.Companion.TYPE_SNOOZE
+import org.tasks.preferences.Preferences
+import java.util.Random
+
+class AlarmHeapTest {
+    private val heap = AlarmHeap()
+
+    @Test
+    fun entriesWithCollidingHashesAreDistinct() {
+        val first = AlarmEntry(0, 31, 1, TYPE_DATE_TIME)
+        val second = AlarmEntry(1, 0, 1, TYPE_DATE_TIME)
+        assertEquals(first.hashCode(), second.hashCode())
+
+        heap.add(first)
+        heap.add(second)
+
+        assertEquals(2, heap.size)
+        assertEquals(setOf(first, second), heap.toList().toSet())
+    }
+
+    @Test
+    fun equalEntriesAreStoredOnce() {
+        assertTrue(heap.add(AlarmEntry(1, 1, 1, TYPE_DATE_TIME)))
+        assertFalse(heap.add(AlarmEntry(1, 1, 1, TYPE_DATE_TIME)))
+
+        assertEquals(1, heap.size)
+    }
+
+    @Test
+    fun peekReturnsEarliest() {
+        heap.add(AlarmEntry(1, 1, 3, TYPE_DATE_TIME))
+        heap.add(AlarmEntry(2, 2, 1, TYPE_DATE_TIME))
+        heap.add(AlarmEntry(3, 3, 2, TYPE_DATE_TIME))
+
+        assertEquals(AlarmEntry(2, 2, 1, TYPE_DATE_TIME), heap.peek())
+    }
+
+    @Test
+    fun removeTaskRemovesAllEntriesForTask() {
+        heap.add(AlarmEntry(1, 1, 1, TYPE_DATE_TIME))
+        heap.add(AlarmEntry(2, 1, 2, TYPE_SNOOZE))
+        heap.add(AlarmEntry(3, 2, 3, TYPE_DATE_TIME))
+
+        assertEquals(2, heap.removeTask(1).size)
+        assertEquals(listOf(AlarmEntry(3, 2, 3, TYPE_DATE_TIME)), heap.toList())
+    }
+
+    @Test
+    fun removeMissingEntry() {
+        heap.add(AlarmEntry(1, 1, 1, TYPE_DATE_TIME))
+
+        assertFalse(heap.remove(AlarmEntry(1, 1, 2, TYPE_DATE_TIME)))
+        assertEquals(1, heap.size)
+    }
+
+    @Test
+    fun emptyHeap() {
+        assertNull(heap.peek())
+        assertTrue(heap.before(Long.MAX_VALUE).isEmpty())
+        assertTrue(heap.removeTask(1).isEmpty())
+    }
+
+    @Test
+    fun beforeReturnsEntriesInOrder() {
+        val random = Random(1234)
+        val entries = (1L..1000L).map {
+            AlarmEntry(it, it, random.nextInt(1000).toLong(), TYPE_DATE_TIME)
+        }
+        entries.forEach { heap.add(it) }
+        entries.filter { it.id % 3 == 0L }.forEach { heap.remove(it) }
+
+        val expected = entries
+            .filter { it.id % 3 != 0L && it.time < 500 }
+            .sortedWith(compareBy({ it.time }, { it.taskId }))
+        assertEquals(expected, heap.before(500))
+    }
+
+    @Test(timeout = 10_000)
+    fun scheduleAndCancel50k() {
+        val queue = NotificationQueue(
+            Mockito.mock(Preferences::class.java),
+            Mockito.mock(WorkManager::class.java)
+        )
+        val random = Random(1234)
+        for (task in 1L..COUNT) {
+            queue.add(AlarmEntry(task, task, random.nextInt().toLong(), TYPE_DATE_TIME))
+        }
+        for (task in 1L..COUNT) {
+            queue.cancelForTask(task)
+        }
+
+        assertTrue(queue.isEmpty())
+    }
+
+    companion object {
+        private const val COUNT = 50_000L
+    }
+}
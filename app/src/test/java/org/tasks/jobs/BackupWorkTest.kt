@@ -38,6 +38,33 @@ class BackupWorkTest {
                 listOf(file1), BackupWork.getDeleteList(arrayOf(file2, file1, file3), 2))
     }
 
+    @Test
+    fun filterIncludesCompressedFiles() {
+        assertTrue(BackupWork.FILE_FILTER.accept(File("/a/b/c/d/auto.20180329T0001.delta.json.gz")))
+    }
+
+    @Test
+    fun keepBaseOfOldestDelta() {
+        val base = newFile("auto.20180325T0000.json.gz")
+        val delta1 = newFile("auto.20180326T0000.delta.json.gz")
+        val delta2 = newFile("auto.20180327T0000.delta.json.gz")
+        val delta3 = newFile("auto.20180328T0000.delta.json.gz")
+        assertEquals(
+                emptyList<Any>(),
+                BackupWork.getDeleteList(arrayOf(delta3, base, delta1, delta2), 2))
+    }
+
+    @Test
+    fun deleteOlderChains() {
+        val oldBase = newFile("auto.20180324T0000.json.gz")
+        val oldDelta = newFile("auto.20180325T0000.delta.json.gz")
+        val base = newFile("auto.20180326T0000.json.gz")
+        val delta = newFile("auto.20180327T0000.delta.json.gz")
+        assertEquals(
+                listOf(oldDelta, oldBase),
+                BackupWork.getDeleteList(arrayOf(oldBase, delta, oldDelta, base), 1))
+    }
+
     companion object {
         private fun newFile(name: String): File {
             val result = Mockito.mock(File::class.java)
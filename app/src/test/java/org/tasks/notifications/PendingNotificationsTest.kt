@@ -0,0 +1,87 @@
+package org.tasks.notifications
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.tasks.notifications.PendingNotifications.Op
+
+class PendingNotificationsTest {
+    private val pending = PendingNotifications<String>()
+
+    @Test
+    fun replacePendingNotification() {
+        pending.notify(1, "first")
+        pending.notify(2, "other")
+        pending.notify(1, "second")
+
+        assertEquals(listOf("notify 1 second", "notify 2 other"), drain())
+    }
+
+    @Test
+    fun cancelDropsPendingNotification() {
+        pending.notify(1, "first")
+        pending.notify(2, "other")
+        pending.cancel(1)
+
+        assertEquals(listOf("notify 2 other", "cancel 1"), drain())
+    }
+
+    @Test
+    fun notifyAfterCancel() {
+        pending.notify(1, "first")
+        pending.cancel(1)
+        pending.notify(1, "second")
+
+        assertEquals(listOf("cancel 1", "notify 1 second"), drain())
+    }
+
+    @Test
+    fun dontMergeAcrossPause() {
+        pending.notify(1, "first")
+        pending.pause(2000)
+        pending.notify(1, "second")
+
+        assertEquals(listOf("notify 1 first", "pause 2000", "notify 1 second"), drain())
+    }
+
+    @Test
+    fun mergeAfterPause() {
+        pending.notify(1, "first")
+        pending.pause(2000)
+        pending.notify(1, "second")
+        pending.notify(1, "third")
+
+        assertEquals(listOf("notify 1 first", "pause 2000", "notify 1 third"), drain())
+    }
+
+    @Test
+    fun dontCancelAcrossPause() {
+        pending.notify(1, "first")
+        pending.pause(2000)
+        pending.notify(1, "second")
+        pending.cancel(1)
+
+        assertEquals(listOf("notify 1 first", "pause 2000", "cancel 1"), drain())
+    }
+
+    @Test
+    fun cancelOnce() {
+        pending.cancel(1)
+        pending.cancel(1)
+
+        assertEquals(listOf("cancel 1"), drain())
+    }
+
+    private fun drain(): List<String> {
+        val result = ArrayList<String>()
+        while (true) {
+            result.add(
+                when (val op = pending.poll() ?: break) {
+                    is Op.Notify -> "notify ${op.id} ${op.notification}"
+                    is Op.Cancel -> "cancel ${op.id}"
+                    is Op.Pause -> "pause ${op.millis}"
+                }
+            )
+        }
+        return result
+    }
+}
@@ -0,0 +1,63 @@
+package org.tasks.ui
+
+import android.graphics.Bitmap
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.mockito.Mockito.mock
+
+class CheckBoxBitmapCacheTest {
+    private val cache = CheckBoxBitmapCache(8)
+
+    @Test
+    fun sameStateReturnsSameBitmap() {
+        val first = cache.get(LIGHT, 1, RED, ::newBitmap)
+        val second = cache.get(LIGHT, 1, RED, ::newBitmap)
+
+        assertSame(first, second)
+    }
+
+    @Test
+    fun differentTintReturnsDifferentBitmap() {
+        val first = cache.get(LIGHT, 1, RED, ::newBitmap)
+        val second = cache.get(LIGHT, 1, BLUE, ::newBitmap)
+
+        assertNotSame(first, second)
+    }
+
+    @Test
+    fun differentDrawableReturnsDifferentBitmap() {
+        val first = cache.get(LIGHT, 1, RED, ::newBitmap)
+        val second = cache.get(LIGHT, 2, RED, ::newBitmap)
+
+        assertNotSame(first, second)
+    }
+
+    @Test
+    fun themeChangeInvalidatesEntries() {
+        val light = cache.get(LIGHT, 1, RED, ::newBitmap)
+        cache.get(LIGHT, 2, RED, ::newBitmap)
+
+        val dark = cache.get(DARK, 1, RED, ::newBitmap)
+
+        assertNotSame(light, dark)
+        assertEquals(1, cache.size)
+    }
+
+    @Test
+    fun bounded() {
+        repeat(20) { cache.get(LIGHT, it, RED, ::newBitmap) }
+
+        assertEquals(8, cache.size)
+    }
+
+    private fun newBitmap(): Bitmap = mock(Bitmap::class.java)
+
+    companion object {
+        private const val LIGHT = "light"
+        private const val DARK = "dark"
+        private const val RED = 0xffff0000.toInt()
+        private const val BLUE = 0xff0000ff.toInt()
+    }
+}
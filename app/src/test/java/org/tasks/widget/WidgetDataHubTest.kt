@@ -0,0 +1,80 @@
+package org.tasks.widget
+
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.tasks.data.TaskContainer
+import org.tasks.makers.TaskContainerMaker.newTaskContainer
+
+class WidgetDataHubTest {
+    private val hub = WidgetDataHub()
+    private var queries = 0
+
+    @Test
+    fun shareResultsForSameKey() = runBlocking {
+        hub.acquire(TODAY)
+        hub.acquire(TODAY)
+
+        val first = hub.getTasks(TODAY, ::fetch)
+        val second = hub.getTasks(TODAY, ::fetch)
+
+        assertSame(first, second)
+        assertEquals(1, queries)
+    }
+
+    @Test
+    fun queryEachKey() = runBlocking {
+        hub.acquire(TODAY)
+        hub.acquire(INBOX)
+
+        hub.getTasks(TODAY, ::fetch)
+        hub.getTasks(INBOX, ::fetch)
+
+        assertEquals(2, queries)
+    }
+
+    @Test
+    fun queryAgainAfterInvalidate() = runBlocking {
+        hub.acquire(TODAY)
+        hub.getTasks(TODAY, ::fetch)
+
+        hub.invalidate()
+        hub.getTasks(TODAY, ::fetch)
+        hub.getTasks(TODAY, ::fetch)
+
+        assertEquals(2, queries)
+    }
+
+    @Test
+    fun releaseWhenLastWidgetRemoved() = runBlocking {
+        hub.acquire(TODAY)
+        hub.acquire(TODAY)
+        hub.getTasks(TODAY, ::fetch)
+
+        hub.release(TODAY)
+        assertEquals(1, hub.size)
+
+        hub.release(TODAY)
+        assertEquals(0, hub.size)
+    }
+
+    @Test
+    fun dontCacheUnacquiredKey() = runBlocking {
+        hub.getTasks(TODAY, ::fetch)
+        hub.getTasks(TODAY, ::fetch)
+
+        assertEquals(2, queries)
+        assertEquals(0, hub.size)
+    }
+
+    private suspend fun fetch(): List<TaskContainer> {
+        queries++
+        return listOf(newTaskContainer())
+    }
+
+    companion object {
+        private val TODAY = WidgetDataHub.Key("today", listOf(1))
+        private val INBOX = WidgetDataHub.Key("inbox", listOf(1))
+    }
+}
@@ -0,0 +1,81 @@
+package org.tasks.widget
+
+import com.natpryce.makeiteasy.MakeItEasy.with
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.tasks.data.TaskContainer
+import org.tasks.makers.TaskMaker.ID
+import org.tasks.makers.TaskMaker.MODIFICATION_TIME
+import org.tasks.makers.TaskMaker.newTask
+import org.tasks.time.DateTime
+
+class WidgetRowCacheTest {
+    private val cache = WidgetRowCache<Any>()
+
+    @Test
+    fun reuseUnchangedRow() {
+        val first = cache.get(newContainer(1, 1), ::build)
+        val second = cache.get(newContainer(1, 1), ::build)
+
+        assertSame(first, second)
+        assertEquals(1, cache.hitCount)
+        assertEquals(1, cache.missCount)
+    }
+
+    @Test
+    fun rebuildModifiedRow() {
+        val first = cache.get(newContainer(1, 1), ::build)
+        val second = cache.get(newContainer(1, 2), ::build)
+
+        assertNotSame(first, second)
+    }
+
+    @Test
+    fun rebuildWhenChildrenChange() {
+        val first = cache.get(newContainer(1, 1), ::build)
+        val second = cache.get(newContainer(1, 1).copy(children = 2), ::build)
+
+        assertNotSame(first, second)
+    }
+
+    @Test
+    fun onlyRebuildChangedRow() {
+        cache.get(newContainer(1, 1), ::build)
+        cache.get(newContainer(2, 1), ::build)
+
+        cache.get(newContainer(1, 1), ::build)
+        cache.get(newContainer(2, 2), ::build)
+
+        assertEquals(1, cache.hitCount)
+        assertEquals(3, cache.missCount)
+    }
+
+    @Test
+    fun retainVisibleRows() {
+        cache.get(newContainer(1, 1), ::build)
+        cache.get(newContainer(2, 1), ::build)
+
+        cache.retain(setOf(2L))
+
+        assertEquals(1, cache.size)
+    }
+
+    @Test
+    fun clearRows() {
+        val first = cache.get(newContainer(1, 1), ::build)
+        cache.clear()
+
+        assertNotSame(first, cache.get(newContainer(1, 1), ::build))
+    }
+
+    private fun build(task: TaskContainer): Any = Any()
+
+    private fun newContainer(id: Long, modified: Int) = TaskContainer(
+        newTask(
+            with(ID, id),
+            with(MODIFICATION_TIME, DateTime(2023, 1, 1, 12, modified)),
+        )
+    )
+}